@@ -15,33 +15,68 @@
  */
 package org.xzk.network_slicing;
 
+import com.google.common.util.concurrent.Striped;
 import org.apache.felix.scr.annotations.*;
+import org.onlab.util.Tools;
+import org.onosproject.cfg.ComponentConfigService;
 import org.onlab.packet.*;
 import org.onosproject.core.ApplicationId;
 import org.onosproject.core.CoreService;
 import org.onosproject.event.Event;
 import org.onosproject.incubator.net.virtual.*;
 import org.onosproject.net.*;
+import org.onosproject.net.device.DeviceEvent;
+import org.onosproject.net.device.DeviceService;
+import org.onosproject.net.driver.DriverService;
+import org.onosproject.net.edge.EdgePortEvent;
+import org.onosproject.net.edge.EdgePortListener;
 import org.onosproject.net.edge.EdgePortService;
 import org.onosproject.net.flow.*;
 import org.onosproject.net.flowobjective.DefaultForwardingObjective;
 import org.onosproject.net.flowobjective.FlowObjectiveService;
 import org.onosproject.net.flowobjective.ForwardingObjective;
+import org.onosproject.net.flowobjective.Objective;
+import org.onosproject.net.flowobjective.ObjectiveContext;
+import org.onosproject.net.flowobjective.ObjectiveError;
+import org.onosproject.net.group.DefaultGroupBucket;
+import org.onosproject.net.group.GroupBucket;
+import org.onosproject.net.group.GroupDescription;
+import org.onosproject.net.group.GroupEvent;
+import org.onosproject.net.group.GroupListener;
+import org.onosproject.net.group.GroupService;
+import org.onosproject.net.link.LinkEvent;
 import org.onosproject.net.packet.*;
 import org.onosproject.net.topology.TopologyEvent;
 import org.onosproject.net.topology.TopologyListener;
 import org.onosproject.net.topology.TopologyService;
+import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xzk.network_slicing.helper.ArpReplyCache;
+import org.xzk.network_slicing.helper.ArpResponder;
+import org.xzk.network_slicing.helper.FailoverGroups;
+import org.xzk.network_slicing.helper.FecLabelTable;
+import org.xzk.network_slicing.helper.ForbiddenTrafficTable;
 import org.xzk.network_slicing.helper.FlowRuleStorage;
+import org.xzk.network_slicing.helper.IngressPortIndex;
+import org.xzk.network_slicing.helper.ShortestPathCache;
+import org.xzk.network_slicing.helper.SliceAclTable;
+import org.xzk.network_slicing.helper.TenantQuotaManager;
+import org.xzk.network_slicing.helper.VirtualNetworkGraph;
+import org.xzk.network_slicing.helper.VirtualHostDirectory;
+import org.xzk.network_slicing.helper.VirtualTopologyCache;
+import org.xzk.network_slicing.helper.VirtualTopologySnapshot;
 import org.xzk.network_slicing.helper.MplsForwardingTable;
+import org.xzk.network_slicing.helper.PacketInRateLimiter;
+import org.xzk.network_slicing.helper.PacketInScheduler;
+import org.xzk.network_slicing.helper.PendingFlowSetups;
 import org.xzk.network_slicing.models.MplsLabelPool;
-import org.xzk.network_slicing.helper.VirtualNetworkGraph;
 import org.xzk.network_slicing.models.*;
 
 import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.stream.StreamSupport;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
 
 @Component(immediate = true)
 public class NetworkSlicing {
@@ -51,10 +86,16 @@ public class NetworkSlicing {
     private ApplicationId appId;
     private VirtualNetworkPacketProcessor virtualNetworkPacketProcessor = new VirtualNetworkPacketProcessor();
     private VirtualNetworkTopologyListener virtualNetworkTopologyListener = new VirtualNetworkTopologyListener();
+    private InternalVirtualNetworkListener virtualNetworkListener = new InternalVirtualNetworkListener();
+    private InternalEdgePortListener edgePortListener = new InternalEdgePortListener();
+    private InternalGroupListener groupListener = new InternalGroupListener();
 
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected CoreService coreService;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected ComponentConfigService cfgService;
+
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected PacketService packetService;
 
@@ -73,32 +114,162 @@ public class NetworkSlicing {
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected EdgePortService edgePortService;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected DeviceService deviceService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected GroupService groupService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected DriverService driverService;
+
+    private static final boolean DEFAULT_BATCH_PATH_INSTALLATION = true;
+    @Property(name = "batchPathInstallation", boolValue = DEFAULT_BATCH_PATH_INSTALLATION,
+            label = "Install the hop rules of a path as one staged FlowRuleOperations batch instead of one objective per hop")
+    private boolean batchPathInstallation = DEFAULT_BATCH_PATH_INSTALLATION;
+
+    private static final boolean DEFAULT_BIDIRECTIONAL_PROVISIONING = false;
+    @Property(name = "bidirectionalProvisioning", boolValue = DEFAULT_BIDIRECTIONAL_PROVISIONING,
+            label = "Provision the reverse LSP on the reversed path together with the first packet of a flow")
+    private boolean bidirectionalProvisioning = DEFAULT_BIDIRECTIONAL_PROVISIONING;
+
+    private static final boolean DEFAULT_FEC_LABEL_AGGREGATION = false;
+    @Property(name = "fecLabelAggregation", boolValue = DEFAULT_FEC_LABEL_AGGREGATION,
+            label = "Allocate labels per egress device (sink trees) and demultiplex by IP destination at the egress")
+    private boolean fecLabelAggregation = DEFAULT_FEC_LABEL_AGGREGATION;
+
+    private static final boolean DEFAULT_REROUTE_ON_FAILURE = true;
+    @Property(name = "rerouteOnFailure", boolValue = DEFAULT_REROUTE_ON_FAILURE,
+            label = "Move flows off failed links, ports and devices make-before-break instead of retracting them")
+    private boolean rerouteOnFailure = DEFAULT_REROUTE_ON_FAILURE;
+
+    private static final boolean DEFAULT_ARP_RESPONDER = true;
+    @Property(name = "arpResponder", boolValue = DEFAULT_ARP_RESPONDER,
+            label = "Answer ARP requests for known hosts and gateways with rules at the edge ports of switches " +
+                    "supporting the Nicira move extensions")
+    private boolean arpResponder = DEFAULT_ARP_RESPONDER;
+
+    private static final int DEFAULT_PACKET_IN_NETWORK_RATE = 2000;
+    @Property(name = "packetInNetworkRate", intValue = DEFAULT_PACKET_IN_NETWORK_RATE,
+            label = "Packet ins processed per second per virtual network, 0 for no limit")
+    private int packetInNetworkRate = DEFAULT_PACKET_IN_NETWORK_RATE;
+
+    private static final int DEFAULT_PACKET_IN_PORT_RATE = 500;
+    @Property(name = "packetInPortRate", intValue = DEFAULT_PACKET_IN_PORT_RATE,
+            label = "Packet ins processed per second per edge port, 0 for no limit")
+    private int packetInPortRate = DEFAULT_PACKET_IN_PORT_RATE;
+
+    private static final int DEFAULT_PACKET_IN_BLOCK_THRESHOLD = 0;
+    @Property(name = "packetInBlockThreshold", intValue = DEFAULT_PACKET_IN_BLOCK_THRESHOLD,
+            label = "Throttled packet ins per second that get an edge port blocked in the switch, 0 to never block")
+    private int packetInBlockThreshold = DEFAULT_PACKET_IN_BLOCK_THRESHOLD;
+
+    private static final int DEFAULT_PACKET_IN_BLOCK_SECONDS = 10;
+    @Property(name = "packetInBlockSeconds", intValue = DEFAULT_PACKET_IN_BLOCK_SECONDS,
+            label = "How long a blocked edge port stays blocked")
+    private int packetInBlockSeconds = DEFAULT_PACKET_IN_BLOCK_SECONDS;
+
+    private static final int DEFAULT_PACKET_IN_WORKERS = 4;
+    @Property(name = "packetInWorkers", intValue = DEFAULT_PACKET_IN_WORKERS,
+            label = "Threads processing the queued packet ins, applied on activation")
+    private int packetInWorkers = DEFAULT_PACKET_IN_WORKERS;
+
+    private static final int DEFAULT_PACKET_IN_QUEUE_SIZE = 1024;
+    @Property(name = "packetInQueueSize", intValue = DEFAULT_PACKET_IN_QUEUE_SIZE,
+            label = "Packet ins queued per virtual network before new ones are dropped, applied on activation")
+    private int packetInQueueSize = DEFAULT_PACKET_IN_QUEUE_SIZE;
+
     // TenantId/ NetworkId <---> IpNetworks/ Gateway
     private final byte[] gatewayMac = {00, 01, 02, 03, 04, 05};
+    private final MacAddress gatewayMacAddress = new MacAddress(gatewayMac);
     private final int DEFAULT_PRIORITY = 100;
 
-    // Tenant's Info
-    public static HashMap<NetworkId, RoutedNetworks> tenantRoutedNetworks;
+    // Egress of a sink tree pops the label, tags the packet with its network and continues here
+    private static final int FEC_DEMUX_TABLE = 1;
+    private static final long FEC_METADATA_MASK = 0xFFFFFFFFFFFFFFFFL;
+
+    // Packets of a flow held back while its rules are installed
+    private static final int MAX_QUEUED_PACKETS = 64;
+    private static final long PENDING_SETUP_TIMEOUT_MS = 5000;
+
+    // Tenant's Info, shared between the packet processor threads and the CLI
+    public static ConcurrentHashMap<NetworkId, RoutedNetworks> tenantRoutedNetworks;
     public static FlowRuleStorage flowRuleStorage;
-    public static HashMap<NetworkId, List<FlowPair>> forbiddenTraffic;
+    public static ForbiddenTrafficTable forbiddenTraffic;
+    public static SliceAclTable sliceAcls;
+    public static ArpResponder arpResponders;
+    private static ArpReplyCache arpReplyCache;
+
+    // Packet in budget of each network and edge port
+    public static PacketInRateLimiter packetInRateLimiter;
+    public static PacketInScheduler packetInScheduler;
+
+    // Ingress port classification
+    public static IngressPortIndex ingressPortIndex;
+    private final Map<NetworkId, TenantId> networkTenants = new ConcurrentHashMap<>();
+
+    // Host lookups per virtual network
+    public static VirtualHostDirectory virtualHostDirectory;
+
+    // Virtual topology and computed paths per network
+    public static VirtualTopologyCache virtualTopologyCache;
+    public static ShortestPathCache shortestPathCache;
 
     // MplsTables
-    public static HashMap<DeviceId, MplsLabelPool> mplsLabelPool;
-    public static HashMap<DeviceId, MplsForwardingTable> mplsForwardingTable;
+    public static ConcurrentHashMap<DeviceId, MplsLabelPool> mplsLabelPool;
+    public static ConcurrentHashMap<DeviceId, MplsForwardingTable> mplsForwardingTable;
+    public static FecLabelTable fecLabelTable;
+
+    // Serializes label distribution within a network, different networks proceed in parallel
+    private static final int NETWORK_LOCK_STRIPES = 64;
+    private final Striped<Lock> networkLocks = Striped.lock(NETWORK_LOCK_STRIPES);
+
+    // Per tenant labels, rules and flows on each device
+    public static TenantQuotaManager tenantQuotaManager;
+
+    // Backup paths of protected networks
+    public static FailoverGroups failoverGroups;
+
+    // Flow setups in flight
+    private static PendingFlowSetups pendingFlowSetups;
 
     @Activate
-    protected void activate() {
+    protected void activate(ComponentContext context) {
         appId = coreService.registerApplication("org.xzk.network_slicing");
-        requestIntercepts();
-        packetService.addProcessor(virtualNetworkPacketProcessor, PacketProcessor.director(2));
-        topologyService.addListener(virtualNetworkTopologyListener);
+        cfgService.registerProperties(getClass());
+        readComponentConfiguration(context);
 
         flowRuleStorage = new FlowRuleStorage();
-        tenantRoutedNetworks = new HashMap<>();
-        forbiddenTraffic = new HashMap<>();
+        tenantRoutedNetworks = new ConcurrentHashMap<>();
+
+        mplsLabelPool = new ConcurrentHashMap<>();
+        mplsForwardingTable = new ConcurrentHashMap<>();
+        fecLabelTable = new FecLabelTable();
+        tenantQuotaManager = new TenantQuotaManager();
+        failoverGroups = new FailoverGroups(groupService, appId);
+        groupService.addListener(groupListener);
+        pendingFlowSetups = new PendingFlowSetups(MAX_QUEUED_PACKETS, PENDING_SETUP_TIMEOUT_MS);
+
+        ingressPortIndex = new IngressPortIndex();
+        virtualHostDirectory = new VirtualHostDirectory(virtualNetworkAdminService,
+                this::hostAdded, this::hostRemoved);
+        forbiddenTraffic = new ForbiddenTrafficTable(flowRuleService, appId, virtualHostDirectory);
+        sliceAcls = new SliceAclTable(flowRuleService, appId, ingressPortIndex);
+        arpResponders = new ArpResponder(flowRuleService, driverService, appId, ingressPortIndex,
+                gatewayMacAddress, arpResponder);
+        arpReplyCache = new ArpReplyCache();
+        packetInRateLimiter = new PacketInRateLimiter(flowRuleService, appId);
+        configurePacketInRateLimiter();
+        packetInScheduler = new PacketInScheduler(packetInWorkers, packetInQueueSize);
+        shortestPathCache = new ShortestPathCache();
+        virtualTopologyCache = new VirtualTopologyCache(shortestPathCache::topologyChanged);
+        virtualNetworkAdminService.addListener(virtualNetworkListener);
+        edgePortService.addListener(edgePortListener);
+        buildIngressPortIndex();
 
-        mplsLabelPool = new HashMap<>();
-        mplsForwardingTable = new HashMap<>();
+        requestIntercepts();
+        packetService.addProcessor(virtualNetworkPacketProcessor, PacketProcessor.director(2));
+        topologyService.addListener(virtualNetworkTopologyListener);
         log.info("Started");
     }
 
@@ -118,22 +289,201 @@ public class NetworkSlicing {
         packetService.cancelPackets(trafficSelector.build(), PacketPriority.REACTIVE, appId);
     }
 
+    // Removes the flow rules of a flow pair, and of its reverse direction if linked, and returns their MPLS labels
+    public static void retractFlowRules(FlowRuleService flowRuleService, NetworkId networkId, FlowPair flowPair) {
+        FlowPair reverseFlowPair = flowRuleStorage.unlinkFlowPair(networkId, flowPair);
+        if (reverseFlowPair != null) {
+            retractFlowRules(flowRuleService, networkId, reverseFlowPair);
+        }
+
+        pendingFlowSetups.removeFinished(new NetworkFlowPair(networkId, flowPair));
+        tenantQuotaManager.release(networkId, flowPair);
+
+        List<FlowRuleInformation> flowRules = flowRuleStorage.deleteFlowRules(networkId, flowPair);
+        if (flowRules == null) return;
+
+        for (FlowRuleInformation f : flowRules) {
+            // Sink tree rules stay as long as another flow uses them
+            if (f.isShared()) continue;
+
+            flowRuleService.removeFlowRules(f.getFlowRule());
+
+            // Return MPLS label if any
+            if (f.getMplsLabel() != null) {
+                mplsLabelPool.get(f.getFlowRuleDeviceId()).returnLabel(f.getMplsLabel().toInt());
+            }
+        }
+
+        for (FecEntry fecEntry : fecLabelTable.release(networkId, flowPair)) {
+            flowRuleService.removeFlowRules(fecEntry.getFlowRule());
+            if (fecEntry.getMplsLabel() != null) {
+                mplsLabelPool.get(fecEntry.getDeviceId()).returnLabel(fecEntry.getMplsLabel().toInt());
+            }
+        }
+
+        failoverGroups.removeGroups(failoverGroups.detachGroups(new NetworkFlowPair(networkId, flowPair)));
+    }
+
+    // Initial walk over the existing edge ports, virtual ports and hosts, afterwards maintained incrementally
+    private void buildIngressPortIndex() {
+        for (ConnectPoint edgePort : edgePortService.getEdgePoints()) {
+            ingressPortIndex.addEdgePort(edgePort);
+        }
+
+        for (TenantId tenantId : virtualNetworkAdminService.getTenantIds()) {
+            for (VirtualNetwork virtualNetwork : virtualNetworkAdminService.getVirtualNetworks(tenantId)) {
+                networkTenants.put(virtualNetwork.id(), tenantId);
+                for (VirtualHost virtualHost : virtualNetworkAdminService.getVirtualHosts(virtualNetwork.id())) {
+                    virtualHostDirectory.addHost(virtualNetwork.id(), virtualHost);
+                    hostAdded(virtualNetwork.id(), virtualHost);
+                }
+                for (VirtualDevice virtualDevice : virtualNetworkAdminService.getVirtualDevices(virtualNetwork.id())) {
+                    for (VirtualPort virtualPort :
+                            virtualNetworkAdminService.getVirtualPorts(virtualNetwork.id(), virtualDevice.id())) {
+                        if (virtualPort.realizedBy() != null) {
+                            ingressPortIndex.bindVirtualPort(virtualNetwork.id(), tenantId,
+                                    new ConnectPoint(virtualDevice.id(), virtualPort.number()),
+                                    virtualPort.realizedBy());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Edge rules that depend on where the hosts of a network are
+    private void hostAdded(NetworkId networkId, VirtualHost virtualHost) {
+        forbiddenTraffic.hostAdded(networkId, virtualHost);
+        arpResponders.hostAdded(networkId, virtualHost);
+    }
+
+    private void hostRemoved(NetworkId networkId, VirtualHost virtualHost) {
+        forbiddenTraffic.hostRemoved(networkId, virtualHost);
+        arpResponders.hostRemoved(networkId, virtualHost);
+    }
+
+    @Modified
+    protected void modified(ComponentContext context) {
+        readComponentConfiguration(context);
+    }
+
+    private void readComponentConfiguration(ComponentContext context) {
+        Dictionary<?, ?> properties = context == null ? null : context.getProperties();
+
+        Boolean batchPathInstallationEnabled = Tools.isPropertyEnabled(properties, "batchPathInstallation");
+        if (batchPathInstallationEnabled != null) {
+            batchPathInstallation = batchPathInstallationEnabled;
+            log.info("Configured. Batch path installation is {}", batchPathInstallation ? "enabled" : "disabled");
+        }
+
+        Boolean bidirectionalProvisioningEnabled = Tools.isPropertyEnabled(properties, "bidirectionalProvisioning");
+        if (bidirectionalProvisioningEnabled != null) {
+            bidirectionalProvisioning = bidirectionalProvisioningEnabled;
+            log.info("Configured. Bidirectional provisioning is {}", bidirectionalProvisioning ? "enabled" : "disabled");
+        }
+
+        Boolean fecLabelAggregationEnabled = Tools.isPropertyEnabled(properties, "fecLabelAggregation");
+        if (fecLabelAggregationEnabled != null) {
+            fecLabelAggregation = fecLabelAggregationEnabled;
+            log.info("Configured. FEC label aggregation is {}", fecLabelAggregation ? "enabled" : "disabled");
+        }
+
+        Boolean rerouteOnFailureEnabled = Tools.isPropertyEnabled(properties, "rerouteOnFailure");
+        if (rerouteOnFailureEnabled != null) {
+            rerouteOnFailure = rerouteOnFailureEnabled;
+            log.info("Configured. Reroute on failure is {}", rerouteOnFailure ? "enabled" : "disabled");
+        }
+
+        Boolean arpResponderEnabled = Tools.isPropertyEnabled(properties, "arpResponder");
+        if (arpResponderEnabled != null) {
+            arpResponder = arpResponderEnabled;
+            if (arpResponders != null) arpResponders.setEnabled(arpResponder);
+            log.info("Configured. ARP responder is {}", arpResponder ? "enabled" : "disabled");
+        }
+
+        Integer packetInNetworkRateConfigured = Tools.getIntegerProperty(properties, "packetInNetworkRate");
+        if (packetInNetworkRateConfigured != null) packetInNetworkRate = packetInNetworkRateConfigured;
+        Integer packetInPortRateConfigured = Tools.getIntegerProperty(properties, "packetInPortRate");
+        if (packetInPortRateConfigured != null) packetInPortRate = packetInPortRateConfigured;
+        Integer packetInBlockThresholdConfigured = Tools.getIntegerProperty(properties, "packetInBlockThreshold");
+        if (packetInBlockThresholdConfigured != null) packetInBlockThreshold = packetInBlockThresholdConfigured;
+        Integer packetInBlockSecondsConfigured = Tools.getIntegerProperty(properties, "packetInBlockSeconds");
+        if (packetInBlockSecondsConfigured != null) packetInBlockSeconds = packetInBlockSecondsConfigured;
+        Integer packetInWorkersConfigured = Tools.getIntegerProperty(properties, "packetInWorkers");
+        if (packetInWorkersConfigured != null && packetInWorkersConfigured > 0) {
+            packetInWorkers = packetInWorkersConfigured;
+        }
+        Integer packetInQueueSizeConfigured = Tools.getIntegerProperty(properties, "packetInQueueSize");
+        if (packetInQueueSizeConfigured != null && packetInQueueSizeConfigured > 0) {
+            packetInQueueSize = packetInQueueSizeConfigured;
+        }
+        if (packetInRateLimiter != null) configurePacketInRateLimiter();
+    }
+
+    private void configurePacketInRateLimiter() {
+        packetInRateLimiter.configure(packetInNetworkRate, packetInPortRate,
+                packetInBlockThreshold, packetInBlockSeconds);
+        log.info("Configured. Packet ins per second: {} per network, {} per port, blocking at {} drops per second",
+                packetInNetworkRate, packetInPortRate, packetInBlockThreshold);
+    }
+
     @Deactivate
     protected void deactivate() {
+        cfgService.unregisterProperties(getClass(), false);
         withdrawIntercepts();
+        packetService.removeProcessor(virtualNetworkPacketProcessor);
+        packetInScheduler.shutdown();
+        topologyService.removeListener(virtualNetworkTopologyListener);
+        virtualNetworkAdminService.removeListener(virtualNetworkListener);
+        edgePortService.removeListener(edgePortListener);
+        groupService.removeListener(groupListener);
         flowRuleService.removeFlowRulesById(appId);
+        failoverGroups.removeAll();
         virtualNetworkPacketProcessor = null;
         virtualNetworkTopologyListener = null;
+        virtualNetworkListener = null;
+        edgePortListener = null;
+        groupListener = null;
 
         flowRuleStorage = null;
         tenantRoutedNetworks = null;
         forbiddenTraffic = null;
+        sliceAcls = null;
+        arpResponders = null;
+        arpReplyCache = null;
+        packetInRateLimiter = null;
+        packetInScheduler = null;
 
         mplsLabelPool = null;
         mplsForwardingTable = null;
+        fecLabelTable = null;
+        tenantQuotaManager = null;
+        failoverGroups = null;
+        pendingFlowSetups = null;
+
+        ingressPortIndex = null;
+        virtualHostDirectory = null;
+        virtualTopologyCache = null;
+        shortestPathCache = null;
+        networkTenants.clear();
         log.info("Stopped");
     }
 
+    // (srcDevice, dstDevice) ---> VirtualLink, for the active links only
+    private Map<DevicePair, Link> getActiveVirtualLinks(NetworkId networkId) {
+
+        // Get all the virtual links available
+        Set<VirtualLink> virtualLinks = virtualNetworkAdminService.getVirtualLinks(networkId);
+
+        Map<DevicePair, Link> links = new HashMap<>();
+        for (VirtualLink virtualLink : virtualLinks) {
+            if (virtualLink.state().equals(VirtualLink.State.ACTIVE)) {
+                links.putIfAbsent(new DevicePair(virtualLink.src().deviceId(), virtualLink.dst().deviceId()), virtualLink);
+            }
+        }
+        return links;
+    }
+
     private class VirtualNetworkPacketProcessor implements PacketProcessor {
 
         @Override
@@ -145,17 +495,34 @@ public class NetworkSlicing {
             InboundPacket inboundPacket = packetContext.inPacket();
             Ethernet ethernetPacket = inboundPacket.parsed();
 
-            // Only process packets coming from the network edge
-            if (!isEdgePort(packetContext)) return;
+            // Only process packets coming from the network edge, on ports bound to a virtual network
+            IngressPortInformation ingressPort = ingressPortIndex.classify(inboundPacket.receivedFrom());
+            if (ingressPort == null) return;
 
             // Do not process null packets
             if (ethernetPacket == null) return;
 
-            // Retrieve TenantId Information
-            TenantId currentTenantId = getTenantId(packetContext);
-
             // Retrieve NetworkId Information
-            NetworkId currentNetworkId = getNetworkId(packetContext);
+            NetworkId currentNetworkId = ingressPort.getNetworkId();
+
+            // Over its budget, the packet is dropped before any work is done for it
+            if (!packetInRateLimiter.tryAcquire(currentNetworkId, inboundPacket.receivedFrom())) {
+                packetContext.block();
+                return;
+            }
+
+            // The packet is this app's from here on, whether it is processed or dropped. The rest runs on the
+            // packet in workers, in the fair share of the network.
+            packetContext.block();
+            if (!packetInScheduler.submit(currentNetworkId, ingressPort.getTenantId(),
+                    () -> processPacket(packetContext, currentNetworkId))) {
+                log.debug("Packet in queue of network {} is full!", currentNetworkId);
+            }
+        }
+
+        private void processPacket(PacketContext packetContext, NetworkId currentNetworkId) {
+            InboundPacket inboundPacket = packetContext.inPacket();
+            Ethernet ethernetPacket = inboundPacket.parsed();
 
             // Register incoming host information
             VirtualHost sourceHost = getSourceHost(
@@ -180,7 +547,16 @@ public class NetworkSlicing {
                     }
 
                     Ip4Address destinationIpAddress = Ip4Address.valueOf(arpPacket.getTargetProtocolAddress());
-                    Ethernet ethernet = ARP.buildArpReply(destinationIpAddress, destinationMacAddress, ethernetPacket);
+                    byte[] arpReply = arpReplyCache.buildReply(
+                            currentNetworkId,
+                            destinationIpAddress,
+                            destinationMacAddress,
+                            ethernetPacket
+                    );
+                    if (arpReply == null) {
+                        arpReply = ARP.buildArpReply(destinationIpAddress, destinationMacAddress, ethernetPacket)
+                                .serialize();
+                    }
 
                     TrafficTreatment.Builder treatment;
                     treatment = DefaultTrafficTreatment.builder();
@@ -188,7 +564,7 @@ public class NetworkSlicing {
                     packetService.emit(new DefaultOutboundPacket(
                             inboundPacket.receivedFrom().deviceId(),
                             treatment.build(),
-                            ByteBuffer.wrap(ethernet.serialize())
+                            ByteBuffer.wrap(arpReply)
                     ));
                     log.info("ARP reply sent!");
                     break;
@@ -207,151 +583,99 @@ public class NetworkSlicing {
                         return;
                     }
 
-                    // Deny certain traffic here
-                    if (isForbidden(currentNetworkId, sourceHost, destinationHost)) {
+                    IPv4 ipPacket = (IPv4) ethernetPacket.getPayload();
+                    FlowPair flowPair = new FlowPair(
+                            IpAddress.valueOf(ipPacket.getSourceAddress()),
+                            IpAddress.valueOf(ipPacket.getDestinationAddress())
+                    );
+
+                    // Deny certain traffic here, normally already dropped at the edge
+                    if (forbiddenTraffic.isForbidden(currentNetworkId, flowPair)) {
                         log.info("Flow is forbidden! Traffic denied!");
                         return;
                     }
+                    if (isDeniedByAcl(currentNetworkId, ipPacket, false)) {
+                        log.info("Flow is denied by the slice ACL!");
+                        return;
+                    }
+                    NetworkFlowPair networkFlowPair = new NetworkFlowPair(currentNetworkId, flowPair);
+
+                    // Only the first packet of a burst sets up the flow, the others wait for it
+                    PendingFlowSetup setup = pendingFlowSetups.newSetup();
+                    PendingFlowSetup inFlight = pendingFlowSetups.putIfAbsent(networkFlowPair, setup);
+                    if (inFlight != null) {
+                        if (!inFlight.enqueue(inboundPacket)) {
+                            packetOut(inFlight, inboundPacket);
+                        }
+                        log.info("Flow setup already in progress!");
+                        return;
+                    }
+                    setup.enqueue(inboundPacket);
 
+                    // Rules of an installed flow got lost in the data plane, start over
+                    if (flowRuleStorage.getFlowRules(currentNetworkId, flowPair) != null) {
+                        retractFlowRules(flowRuleService, currentNetworkId, flowPair);
+                    }
 
+                    boolean isSetUp;
                     if (isHostOnSameDevice(sourceHost, destinationHost)) {
 
-                        forwardToSameDevice(packetContext, sourceHost, destinationHost, isToBeRouted, currentNetworkId);
+                        isSetUp = forwardToSameDevice(networkFlowPair, setup, sourceHost, destinationHost, isToBeRouted);
 
                     } else {
 
-                        forwardToDiffDevice(packetContext, sourceHost, destinationHost, isToBeRouted, currentNetworkId);
+                        isSetUp = forwardToDiffDevice(networkFlowPair, setup, sourceHost, destinationHost, isToBeRouted);
 
                     }
-                    break;
-            }
-        }
-
-        private boolean isEdgePort(PacketContext packetContext) {
-            Iterable<ConnectPoint> edgePorts = edgePortService.getEdgePoints();
-            return StreamSupport
-                    .stream(edgePorts.spliterator(), false)
-                    .anyMatch(packetContext.inPacket().receivedFrom()::equals);
-        }
-
-        private TenantId getTenantId(PacketContext packetContext) {
-            Set<TenantId> tenantIds = virtualNetworkAdminService.getTenantIds();
-            for (TenantId tenantId : tenantIds) {
-                // Get all virtual networks per tenant
-                Set<VirtualNetwork> virtualNetworks =
-                        virtualNetworkAdminService.getVirtualNetworks(tenantId);
-                for (VirtualNetwork virtualNetwork : virtualNetworks) {
-                    // Get all the connect points registered
-                    Set<VirtualDevice> virtualDevices =
-                            virtualNetworkAdminService.getVirtualDevices(virtualNetwork.id());
-                    for (VirtualDevice virtualDevice : virtualDevices) {
-                        Set<VirtualPort> virtualPorts =
-                                virtualNetworkAdminService.getVirtualPorts(virtualNetwork.id(), virtualDevice.id());
-                        for (VirtualPort virtualPort : virtualPorts) {
-                            if (packetContext.inPacket().receivedFrom().equals(virtualPort.realizedBy())) {
-                                return tenantId;
-                            }
-                        }
-                    }
-                }
-            }
-            return null;
-        }
 
-        private NetworkId getNetworkId(PacketContext packetContext) {
-            Set<TenantId> tenantIds = virtualNetworkAdminService.getTenantIds();
-            for (TenantId tenantId : tenantIds) {
-                // Get all virtual networks per tenant
-                Set<VirtualNetwork> virtualNetworks =
-                        virtualNetworkAdminService.getVirtualNetworks(tenantId);
-                for (VirtualNetwork virtualNetwork : virtualNetworks) {
-                    // Get all the connect points registered
-                    Set<VirtualDevice> virtualDevices =
-                            virtualNetworkAdminService.getVirtualDevices(virtualNetwork.id());
-                    for (VirtualDevice virtualDevice : virtualDevices) {
-                        Set<VirtualPort> virtualPorts =
-                                virtualNetworkAdminService.getVirtualPorts(virtualNetwork.id(), virtualDevice.id());
-                        for (VirtualPort virtualPort : virtualPorts) {
-                            if (packetContext.inPacket().receivedFrom().equals(virtualPort.realizedBy())) {
-                                return virtualNetwork.id();
-                            }
-                        }
+                    if (!isSetUp) {
+                        abortFlowSetup(networkFlowPair, setup);
+                    } else if (bidirectionalProvisioning) {
+                        provisionReverseFlow(networkFlowPair, ipPacket, sourceHost, destinationHost, isToBeRouted);
                     }
-                }
+                    break;
             }
-            return null;
         }
 
         private VirtualHost getSourceHost(PacketContext packetContext, NetworkId networkId) {
             InboundPacket inboundPacket = packetContext.inPacket();
             Ethernet ethernetPacket = inboundPacket.parsed();
 
-            MacAddress macAddress;
-            HostId hostId;
-            HostLocation hostLocation;
+            // Check if host already exist
+            VirtualHost virtualHost = virtualHostDirectory.getHost(networkId, ethernetPacket.getSourceMAC());
+            if (virtualHost != null) {
+                // TODO: Check HostLocation
+                return virtualHost;
+            }
+
+            MacAddress macAddress = ethernetPacket.getSourceMAC();
+            HostId hostId = HostId.hostId(macAddress);
+            HostLocation hostLocation = new HostLocation(inboundPacket.receivedFrom(), System.currentTimeMillis());
             Set<IpAddress> ipAddresses = new HashSet<>();
 
             if (ethernetPacket.getEtherType() == Ethernet.TYPE_IPV4) {
                 IPv4 ipPacket = (IPv4) ethernetPacket.getPayload();
-
-                macAddress = ethernetPacket.getSourceMAC();
-                hostId = HostId.hostId(ethernetPacket.getSourceMAC());
-                hostLocation = new HostLocation(inboundPacket.receivedFrom(), System.currentTimeMillis());
                 ipAddresses.add(IpAddress.valueOf(ipPacket.getSourceAddress()));
-
             } else {
                 ARP arpPacket = (ARP) ethernetPacket.getPayload();
-                macAddress = ethernetPacket.getSourceMAC();
-                hostId = HostId.hostId(ethernetPacket.getSourceMAC());
-                hostLocation = new HostLocation(inboundPacket.receivedFrom(), System.currentTimeMillis());
                 ipAddresses.add(IpAddress.valueOf(IpAddress.Version.INET, arpPacket.getSenderProtocolAddress()));
             }
 
-            Set<VirtualHost> virtualHosts = virtualNetworkAdminService.getVirtualHosts(networkId);
-
-            // Check if host already exist
-            for (VirtualHost virtualHost : virtualHosts) {
-                if (virtualHost.id().equals(hostId)) {
-                    // TODO: Check HostLocation
-                    return virtualHost;
-                }
-            }
-
             // TODO: Have to make sure that no duplicate hosts exists
             // If not exist
-            VirtualHost virtualHost = virtualNetworkAdminService.createVirtualHost(
+            virtualHost = virtualNetworkAdminService.createVirtualHost(
                     networkId,
                     hostId,
                     macAddress,
                     VlanId.NONE,
                     hostLocation,
                     ipAddresses);
+            virtualHostDirectory.addHost(networkId, virtualHost);
+            hostAdded(networkId, virtualHost);
 
             return virtualHost;
         }
 
-        private VirtualHost getDestinationHost(MacAddress destinationMacAddress, NetworkId networkId) {
-
-            Set<VirtualHost> virtualHosts = virtualNetworkAdminService.getVirtualHosts(networkId);
-            for (VirtualHost virtualHost : virtualHosts) {
-                if (virtualHost.mac().equals(destinationMacAddress)) {
-                    return virtualHost;
-                }
-            }
-
-            return null;
-        }
-
-        private VirtualHost getDestinationHost(IpAddress ipAddress, NetworkId networkId) {
-            Set<VirtualHost> virtualHosts = virtualNetworkAdminService.getVirtualHosts(networkId);
-            for (VirtualHost virtualHost : virtualHosts) {
-                if (virtualHost.ipAddresses().contains(ipAddress)) {
-                    return virtualHost;
-                }
-            }
-            return null;
-        }
-
         private VirtualHost getDestinationHost(boolean isToBeRouted, Ethernet ethernetPacket, NetworkId networkId) {
             if (isToBeRouted) {
                 log.info("Packet is to be routed!");
@@ -360,17 +684,19 @@ public class NetworkSlicing {
                 IpAddress ipDstAddress = IpAddress.valueOf(
                         ipPacket.getDestinationAddress()
                 );
+
+                // Only towards the routed subnets of the network
+                RoutedNetworks routedNetworks = NetworkSlicing.tenantRoutedNetworks.get(networkId);
+                if (routedNetworks == null || routedNetworks.getRoutedNetwork(ipDstAddress) == null) {
+                    log.debug("No route to destination!");
+                    return null;
+                }
+
                 // Get destination host information
-                return getDestinationHost(
-                        ipDstAddress,
-                        networkId
-                );
+                return virtualHostDirectory.getHost(networkId, ipDstAddress);
             } else {
                 // Get destination host information
-                return getDestinationHost(
-                        ethernetPacket.getDestinationMAC(),
-                        networkId
-                );
+                return virtualHostDirectory.getHost(networkId, ethernetPacket.getDestinationMAC());
             }
         }
 
@@ -380,60 +706,65 @@ public class NetworkSlicing {
             IpAddress destinationIp = IpAddress.valueOf(IpAddress.Version.INET, destinationIpAddress);
 
             // If ARP is for gateway
-            if (NetworkSlicing.tenantRoutedNetworks.containsKey(networkId)) {
-                RoutedNetworks routedNetworks = NetworkSlicing.tenantRoutedNetworks.get(networkId);
-                if (routedNetworks.networkGateway != null) {
-                    for (Map.Entry<IpPrefix, IpAddress> networks : routedNetworks.networkGateway.entrySet()) {
-                        if (destinationIp.equals(networks.getValue())) {
-                            log.info("ARP reply for gateway!");
-                            return new MacAddress(gatewayMac);
-                        }
-                    }
-                }
+            RoutedNetworks routedNetworks = NetworkSlicing.tenantRoutedNetworks.get(networkId);
+            if (routedNetworks != null && routedNetworks.isGateway(destinationIp)) {
+                log.info("ARP reply for gateway!");
+                return gatewayMacAddress;
             }
 
             // If not gateway found, most probably it belongs to a host
-            Set<VirtualHost> virtualHosts = virtualNetworkAdminService.getVirtualHosts(networkId);
-            for (VirtualHost virtualHost : virtualHosts) {
-                if (virtualHost.ipAddresses().contains(
-                        IpAddress.valueOf(IpAddress.Version.INET, destinationIpAddress))) {
-                    log.info("ARP reply for host!");
-                    return virtualHost.mac();
-                }
+            VirtualHost virtualHost = virtualHostDirectory.getHost(networkId, destinationIp);
+            if (virtualHost != null) {
+                log.info("ARP reply for host!");
+                return virtualHost.mac();
             }
 
             return null;
         }
 
-        private boolean isForbidden(NetworkId networkId, VirtualHost sourceHost, VirtualHost destinationHost) {
-
-            IpAddress sourceIp = new ArrayList<>(sourceHost.ipAddresses()).get(0);
-            IpAddress destIP = new ArrayList<>(destinationHost.ipAddresses()).get(0);
-
-            FlowPair flowPair = new FlowPair(sourceIp, destIP);
-
-            if (forbiddenTraffic.containsKey(networkId)) {
-                return forbiddenTraffic.get(networkId).contains(flowPair);
-            }
-            return false;
-        }
-
         private boolean isHostOnSameDevice(VirtualHost sourceHost, VirtualHost destinationHost) {
             return sourceHost.location().deviceId().equals(destinationHost.location().deviceId());
         }
 
+        private ConnectPoint hostPort(VirtualHost virtualHost) {
+            return new ConnectPoint(virtualHost.location().deviceId(), virtualHost.location().port());
+        }
+
         private boolean isToBeRouted(MacAddress destinationMAC) {
-            return destinationMAC.equals(new MacAddress(gatewayMac));
+            return destinationMAC.equals(gatewayMacAddress);
         }
 
-        private void forwardToSameDevice(PacketContext packetContext, VirtualHost sourceHost, VirtualHost destinationHost, boolean isToBeRouted, NetworkId currentNetworkId) {
+        // Normally already dropped at the edge, checked here for packets sent up before the rules landed. The
+        // reverse check classifies the reply the packet would get, with addresses and ports swapped.
+        private boolean isDeniedByAcl(NetworkId networkId, IPv4 ipPacket, boolean reverse) {
+            int srcPort = 0;
+            int dstPort = 0;
+            if (ipPacket.getProtocol() == IPv4.PROTOCOL_TCP) {
+                TCP tcpPacket = (TCP) ipPacket.getPayload();
+                srcPort = tcpPacket.getSourcePort();
+                dstPort = tcpPacket.getDestinationPort();
+            } else if (ipPacket.getProtocol() == IPv4.PROTOCOL_UDP) {
+                UDP udpPacket = (UDP) ipPacket.getPayload();
+                srcPort = udpPacket.getSourcePort();
+                dstPort = udpPacket.getDestinationPort();
+            }
+
+            AclRule rule = reverse
+                    ? sliceAcls.classify(networkId, ipPacket.getDestinationAddress(),
+                            ipPacket.getSourceAddress(), ipPacket.getProtocol(), dstPort, srcPort)
+                    : sliceAcls.classify(networkId, ipPacket.getSourceAddress(),
+                            ipPacket.getDestinationAddress(), ipPacket.getProtocol(), srcPort, dstPort);
+            return rule != null && rule.getAction() == AclRule.Action.DENY;
+        }
+
+        private boolean forwardToSameDevice(NetworkFlowPair networkFlowPair, PendingFlowSetup setup,
+                                            VirtualHost sourceHost, VirtualHost destinationHost, boolean isToBeRouted) {
             TrafficSelector.Builder selector = DefaultTrafficSelector.builder();
             TrafficTreatment.Builder treatment = DefaultTrafficTreatment.builder();
 
-            Ethernet ethernetPacket = packetContext.inPacket().parsed();
-            IPv4 ipPacket = (IPv4) ethernetPacket.getPayload();
+            FlowPair flowPair = networkFlowPair.getFlowPair();
             Ip4Prefix ip4DstPrefix = Ip4Prefix.valueOf(
-                    ipPacket.getDestinationAddress(),
+                    flowPair.getDst().getIp4Address(),
                     Ip4Prefix.MAX_MASK_LENGTH
             );
 
@@ -449,54 +780,230 @@ public class NetworkSlicing {
             if (isToBeRouted) treatment.setEthDst(destinationHost.mac());
             treatment.setOutput(outPort);
 
-            // Build & send forwarding objective
-            sendFlowObjective(currentDeviceId, selector, treatment);
-            log.info("Flow objective sent to device!");
-
-            // Forward out current packet
-            packetOut(packetContext, outPort);
-            log.info("Packet out!");
+            // A single rule and no label on the device
+            if (!tenantQuotaManager.tryAdmit(networkFlowPair.getNetworkId(), flowPair,
+                    Collections.singletonMap(currentDeviceId, new ResourceUsage(0, 1, 1)))) {
+                log.warn("Flow {} rejected, over the quota of the network", networkFlowPair);
+                return false;
+            }
 
-            // Store FlowRule
-            IpAddress src = IpAddress.valueOf(ipPacket.getSourceAddress());
-            IpAddress dst = IpAddress.valueOf(ipPacket.getDestinationAddress());
+            setup.setIngress(currentDeviceId, treatment.build());
+            flowRuleStorage.setFlowPath(networkFlowPair.getNetworkId(), flowPair, new FlowPath(
+                    hostPort(sourceHost), Collections.emptyList(), hostPort(destinationHost), isToBeRouted));
 
-            FlowPair flowPair = new FlowPair(src, dst);
-//            storeFlowRule(src, dst, selector, treatment, currentDeviceId, currentNetworkId);
-            storeFlowRule(flowPair, selector, treatment, null, currentDeviceId, currentNetworkId);
+            // Install & store FlowRule, held back packets are sent out once it is installed
+            FlowInstallation installation = new FlowInstallation(networkFlowPair, setup, 1, batchPathInstallation);
+            installation.addRule(currentDeviceId, selector, treatment, null, true);
+            installation.submit();
+            log.info("Flow rule sent to device!");
+            return true;
         }
 
-        private void forwardToDiffDevice(PacketContext packetContext, VirtualHost sourceHost, VirtualHost destinationHost, boolean isToBeRouted, NetworkId currentNetworkId) {
-            TrafficSelector.Builder selector;
-            TrafficTreatment.Builder treatment;
+        // Sets up destination ---> source right away, so the reply does not go through the controller again
+        private void provisionReverseFlow(NetworkFlowPair networkFlowPair, IPv4 ipPacket, VirtualHost sourceHost,
+                                          VirtualHost destinationHost, boolean isToBeRouted) {
+            NetworkId currentNetworkId = networkFlowPair.getNetworkId();
+            FlowPair flowPair = networkFlowPair.getFlowPair();
+            FlowPair reverseFlowPair = new FlowPair(flowPair.getDst(), flowPair.getSrc());
+            NetworkFlowPair reverseNetworkFlowPair = new NetworkFlowPair(currentNetworkId, reverseFlowPair);
+
+            // A reply that would be denied is left to the controller, which drops it
+            if (forbiddenTraffic.isForbidden(currentNetworkId, reverseFlowPair)) return;
+            if (isDeniedByAcl(currentNetworkId, ipPacket, true)) return;
+
+            // Reverse direction already installed, or being set up by a packet of its own
+            if (flowRuleStorage.getFlowRules(currentNetworkId, reverseFlowPair) != null) return;
+            PendingFlowSetup reverseSetup = pendingFlowSetups.newSetup();
+            if (pendingFlowSetups.putIfAbsent(reverseNetworkFlowPair, reverseSetup) != null) return;
+
+            // A routed flow is routed back as well, towards the MAC of the source host
+            boolean isSetUp;
+            if (isHostOnSameDevice(sourceHost, destinationHost)) {
+                isSetUp = forwardToSameDevice(reverseNetworkFlowPair, reverseSetup,
+                        destinationHost, sourceHost, isToBeRouted);
+            } else {
+                isSetUp = forwardToDiffDevice(reverseNetworkFlowPair, reverseSetup,
+                        destinationHost, sourceHost, isToBeRouted,
+                        getReversePath(currentNetworkId, sourceHost, destinationHost));
+            }
+
+            if (isSetUp) {
+                flowRuleStorage.linkFlowPairs(currentNetworkId, flowPair, reverseFlowPair);
+            } else {
+                abortFlowSetup(reverseNetworkFlowPair, reverseSetup);
+            }
+        }
 
+        private boolean forwardToDiffDevice(NetworkFlowPair networkFlowPair, PendingFlowSetup setup,
+                                            VirtualHost sourceHost, VirtualHost destinationHost, boolean isToBeRouted) {
             // Path computation here
             log.info("Path Computation");
-            ArrayList<DeviceId> pathNodes = getForwardPathIfPossible(
-                    currentNetworkId,
+            List<Link> pathLinks = getForwardPathIfPossible(
+                    networkFlowPair.getNetworkId(),
                     sourceHost,
                     destinationHost
             );
+            return forwardToDiffDevice(networkFlowPair, setup, sourceHost, destinationHost, isToBeRouted, pathLinks);
+        }
 
-            // Display path
-            for (DeviceId deviceId : pathNodes) log.info(deviceId.toString());
-            if (pathNodes.isEmpty()) {
-                log.info("Unable to find valid path!");
-                return;
-            }
+        private boolean forwardToDiffDevice(NetworkFlowPair networkFlowPair, PendingFlowSetup setup,
+                                            VirtualHost sourceHost, VirtualHost destinationHost, boolean isToBeRouted,
+                                            List<Link> pathLinks) {
+            NetworkId currentNetworkId = networkFlowPair.getNetworkId();
 
-            List<Link> pathLinks = getForwardPathLinks(currentNetworkId, pathNodes);
+            // Display path
             for (Link link : pathLinks) log.info(link.src().toString() + " " + link.dst().toString());
 
             if (pathLinks.isEmpty()) {
                 log.info("Unable to find valid path!");
-                return;
+                return false;
             }
 
             List<InOutPort> inOutPorts = extractInOutPorts(pathLinks, sourceHost, destinationHost);
+            List<Link> backupLinks = getBackupPath(currentNetworkId, sourceHost, destinationHost, pathLinks,
+                    Collections.emptySet(), Collections.emptySet());
 
             log.info("Distributing labels!");
 
+            Lock networkLock = networkLocks.get(currentNetworkId);
+            networkLock.lock();
+            try {
+                if (!tenantQuotaManager.tryAdmit(currentNetworkId, networkFlowPair.getFlowPair(),
+                        estimateDemand(sourceHost, destinationHost, inOutPorts, backupLinks))) {
+                    log.warn("Flow {} rejected, over the quota of the network", networkFlowPair);
+                    return false;
+                }
+
+                // Sink tree rules and failover groups go in through flow rules
+                FlowInstallation installation = new FlowInstallation(networkFlowPair, setup, inOutPorts.size(),
+                        batchPathInstallation || fecLabelAggregation || !backupLinks.isEmpty());
+                installPath(networkFlowPair, setup, sourceHost, destinationHost, isToBeRouted,
+                        pathLinks, backupLinks, inOutPorts, Collections.emptySet(), Collections.emptySet(),
+                        installation);
+            } catch (IllegalStateException e) {
+                // Out of labels on one of the hops, give back what was taken so far
+                log.warn("Unable to distribute labels for {}: {}", networkFlowPair, e.getMessage());
+                retractFlowRules(flowRuleService, currentNetworkId, networkFlowPair.getFlowPair());
+                return false;
+            } finally {
+                networkLock.unlock();
+            }
+            return true;
+        }
+
+        // Make-before-break: the new LSP goes in first, the ingress rule is then replaced in place and the old
+        // hop rules and labels are retired last, all within one staged batch. False if the flow cannot be moved.
+        private boolean rerouteFlow(NetworkFlowPair networkFlowPair, Set<DevicePair> avoidedEdges,
+                                    Set<DeviceId> avoidedDevices) {
+            NetworkId currentNetworkId = networkFlowPair.getNetworkId();
+            FlowPair flowPair = networkFlowPair.getFlowPair();
+
+            FlowPath flowPath = flowRuleStorage.getFlowPath(currentNetworkId, flowPair);
+            VirtualHost sourceHost = virtualHostDirectory.getHost(currentNetworkId, flowPair.getSrc());
+            VirtualHost destinationHost = virtualHostDirectory.getHost(currentNetworkId, flowPair.getDst());
+            if (flowPath == null || sourceHost == null || destinationHost == null) return false;
+
+            // Only the path in between can change, the hosts must still be where the flow was set up
+            if (!flowPath.getSource().equals(hostPort(sourceHost)) ||
+                    !flowPath.getDestination().equals(hostPort(destinationHost)) ||
+                    isHostOnSameDevice(sourceHost, destinationHost) ||
+                    avoidedDevices.contains(sourceHost.location().deviceId()) ||
+                    avoidedDevices.contains(destinationHost.location().deviceId())) {
+                return false;
+            }
+
+            List<Link> pathLinks = getPathAvoiding(currentNetworkId, sourceHost, destinationHost,
+                    avoidedEdges, avoidedDevices);
+            if (pathLinks.isEmpty()) {
+                log.info("No path around the failure for {}", networkFlowPair);
+                return false;
+            }
+            List<InOutPort> inOutPorts = extractInOutPorts(pathLinks, sourceHost, destinationHost);
+            List<Link> backupLinks = getBackupPath(currentNetworkId, sourceHost, destinationHost, pathLinks,
+                    avoidedEdges, avoidedDevices);
+
+            // Packets punted meanwhile are held back until the new path is in place
+            pendingFlowSetups.removeFinished(networkFlowPair);
+            PendingFlowSetup setup = pendingFlowSetups.newSetup();
+            if (pendingFlowSetups.putIfAbsent(networkFlowPair, setup) != null) return false;
+
+            Lock networkLock = networkLocks.get(currentNetworkId);
+            networkLock.lock();
+            try {
+                if (!tenantQuotaManager.tryAdmit(currentNetworkId, flowPair,
+                        estimateDemand(sourceHost, destinationHost, inOutPorts, backupLinks))) {
+                    log.warn("Reroute of {} rejected, over the quota of the network", networkFlowPair);
+                    abortFlowSetup(networkFlowPair, setup);
+                    return false;
+                }
+
+                // Taken out of the storage only, the old rules keep forwarding until the switch over
+                List<FlowRuleInformation> oldRules = flowRuleStorage.deleteFlowRules(currentNetworkId, flowPair);
+                if (oldRules == null) {
+                    abortFlowSetup(networkFlowPair, setup);
+                    return false;
+                }
+
+                List<FlowRuleInformation> retiredRules = new ArrayList<>();
+                for (FlowRuleInformation f : oldRules) {
+                    if (!f.isShared()) retiredRules.add(f);
+                }
+                for (FecEntry fecEntry : fecLabelTable.release(currentNetworkId, flowPair)) {
+                    retiredRules.add(new FlowRuleInformation(fecEntry.getFlowRule(), fecEntry.getMplsLabel()));
+                }
+
+                FlowInstallation installation = new FlowInstallation(networkFlowPair, setup, inOutPorts.size(), true);
+                installation.retire(retiredRules, failoverGroups.detachGroups(networkFlowPair));
+                try {
+                    installPath(networkFlowPair, setup, sourceHost, destinationHost, flowPath.isRouted(),
+                            pathLinks, backupLinks, inOutPorts, avoidedEdges, avoidedDevices, installation);
+                } catch (IllegalStateException e) {
+                    // Out of labels on the new path, the flow is dropped altogether
+                    log.warn("Unable to distribute labels for {}: {}", networkFlowPair, e.getMessage());
+                    installation.releaseRetired(true);
+                    retractFlowRules(flowRuleService, currentNetworkId, flowPair);
+                    abortFlowSetup(networkFlowPair, setup);
+                    return false;
+                }
+            } finally {
+                networkLock.unlock();
+            }
+            log.info("Flow {} rerouted", networkFlowPair);
+            return true;
+        }
+
+        private void installPath(NetworkFlowPair networkFlowPair, PendingFlowSetup setup,
+                                 VirtualHost sourceHost, VirtualHost destinationHost, boolean isToBeRouted,
+                                 List<Link> pathLinks, List<Link> backupLinks, List<InOutPort> inOutPorts,
+                                 Set<DevicePair> avoidedEdges, Set<DeviceId> avoidedDevices,
+                                 FlowInstallation installation) {
+            flowRuleStorage.setFlowPath(networkFlowPair.getNetworkId(), networkFlowPair.getFlowPair(), new FlowPath(
+                    hostPort(sourceHost), pathLinks, hostPort(destinationHost), isToBeRouted, backupLinks));
+            if (!backupLinks.isEmpty()) {
+                distributeProtectedLabels(networkFlowPair, setup, sourceHost, destinationHost, isToBeRouted,
+                        inOutPorts, extractInOutPorts(backupLinks, sourceHost, destinationHost), installation);
+            } else if (fecLabelAggregation) {
+                distributeFecLabels(networkFlowPair, setup, sourceHost, destinationHost, isToBeRouted,
+                        pathLinks, inOutPorts, avoidedEdges, avoidedDevices, installation);
+            } else {
+                distributeLabels(networkFlowPair, setup, sourceHost, destinationHost, isToBeRouted,
+                        inOutPorts, installation);
+            }
+
+            // Egress and LSRs first, the ingress rule only once the rest of the path is in place
+            installation.submit();
+        }
+
+        private void distributeLabels(NetworkFlowPair networkFlowPair, PendingFlowSetup setup,
+                                      VirtualHost sourceHost, VirtualHost destinationHost,
+                                      boolean isToBeRouted, List<InOutPort> inOutPorts,
+                                      FlowInstallation installation) {
+            TrafficSelector.Builder selector;
+            TrafficTreatment.Builder treatment;
+
+            FlowPair flowPair = networkFlowPair.getFlowPair();
+            NetworkId currentNetworkId = networkFlowPair.getNetworkId();
+
             // Initialize MplsLabelPool
             initializeMplsLabelPool(inOutPorts);
             initializeMplsForwardingTables(inOutPorts);
@@ -506,18 +1013,11 @@ public class NetworkSlicing {
             MplsLabel previousLabel = null;
 
             // Extract Destination IP
-            Ethernet ethernetPacket = packetContext.inPacket().parsed();
-            IPv4 ipPacket = (IPv4) ethernetPacket.getPayload();
             Ip4Prefix ip4DstPrefix = Ip4Prefix.valueOf(
-                    ipPacket.getDestinationAddress(),
+                    flowPair.getDst().getIp4Address(),
                     Ip4Prefix.MAX_MASK_LENGTH
             );
 
-            IpAddress src = IpAddress.valueOf(ipPacket.getSourceAddress());
-            IpAddress dst = IpAddress.valueOf(ipPacket.getDestinationAddress());
-
-            FlowPair flowPair = new FlowPair(src, dst);
-
             for (int i = inOutPorts.size() - 1; i >= 0; i--) {
                 selector = DefaultTrafficSelector.builder();
                 treatment = DefaultTrafficTreatment.builder();
@@ -535,7 +1035,7 @@ public class NetworkSlicing {
 
                         currentLabel = MplsLabel.mplsLabel(mplsLabelPool
                                 .get(currentDeviceId)
-                                .getNextLabel()
+                                .getNextLabel(currentNetworkId)
                         );
                     } else {
                         currentLabel = mplsForwardingTable.get(currentDeviceId).getMplsLabel(
@@ -556,7 +1056,7 @@ public class NetworkSlicing {
 
                     previousLabel = currentLabel;
 
-                    storeFlowRule(flowPair, selector, treatment, currentLabel, currentDeviceId, currentNetworkId);
+                    installation.addRule(currentDeviceId, selector, treatment, currentLabel, false);
                 } else if (currentDeviceId.equals(sourceHost.location().deviceId())) {
                     // Originating Switch
                     log.info("Flow installing for originating switch");
@@ -575,7 +1075,9 @@ public class NetworkSlicing {
                     treatment.setMpls(previousLabel);
                     treatment.setOutput(outPort);
 
-                    storeFlowRule(flowPair, selector, treatment, null, currentDeviceId, currentNetworkId);
+                    setup.setIngress(currentDeviceId, treatment.build());
+
+                    installation.addRule(currentDeviceId, selector, treatment, null, true);
                 } else {
                     // LSRs
                     log.info("Flow installing for LSRs");
@@ -583,7 +1085,7 @@ public class NetworkSlicing {
                             currentNetworkId, destinationHost.id()) == null) {
                         currentLabel = MplsLabel.mplsLabel(mplsLabelPool
                                 .get(currentDeviceId)
-                                .getNextLabel()
+                                .getNextLabel(currentNetworkId)
                         );
                     } else {
                         currentLabel = mplsForwardingTable.get(currentDeviceId).getMplsLabel(
@@ -602,62 +1104,388 @@ public class NetworkSlicing {
 
                     previousLabel = currentLabel;
 
-                    storeFlowRule(flowPair, selector, treatment, currentLabel, currentDeviceId, currentNetworkId);
+                    installation.addRule(currentDeviceId, selector, treatment, currentLabel, false);
+                }
+                log.info("Flow rule prepared for device!" + currentDeviceId.toString());
+            }
+        }
+
+        // Primary LSP plus a link disjoint backup LSP from the ingress, both with labels of their own. Fast failover
+        // groups switch over in the data plane: the ingress onto the backup LSP when its own link fails, a transit
+        // hop back towards the ingress on a return label (crankback) when the link after it fails.
+        private void distributeProtectedLabels(NetworkFlowPair networkFlowPair, PendingFlowSetup setup,
+                                               VirtualHost sourceHost, VirtualHost destinationHost,
+                                               boolean isToBeRouted, List<InOutPort> inOutPorts,
+                                               List<InOutPort> backupInOutPorts, FlowInstallation installation) {
+            TrafficSelector.Builder selector;
+            TrafficTreatment.Builder treatment;
+
+            FlowPair flowPair = networkFlowPair.getFlowPair();
+            NetworkId currentNetworkId = networkFlowPair.getNetworkId();
+            int hops = inOutPorts.size();
+
+            initializeMplsLabelPool(inOutPorts);
+            initializeMplsLabelPool(backupInOutPorts);
+
+            Ip4Prefix ip4DstPrefix = Ip4Prefix.valueOf(
+                    flowPair.getDst().getIp4Address(),
+                    Ip4Prefix.MAX_MASK_LENGTH
+            );
+
+            // Backup LSP first, anything failing over needs it in place
+            MplsLabel backupLabel = null;
+            for (int i = backupInOutPorts.size() - 1; i >= 1; i--) {
+                selector = DefaultTrafficSelector.builder();
+                treatment = DefaultTrafficTreatment.builder();
+
+                InOutPort hop = backupInOutPorts.get(i);
+                MplsLabel currentLabel = allocateLabel(hop.getDeviceId(), currentNetworkId);
+
+                selector.matchInPort(hop.getInPort());
+                selector.matchEthType(Ethernet.MPLS_UNICAST);
+                selector.matchMplsLabel(currentLabel);
+
+                if (backupLabel == null) {
+                    selector.matchMplsBos(true);
+                    treatment.popMpls(new EthType(Ethernet.TYPE_IPV4));
+                } else {
+                    treatment.setMpls(backupLabel);
                 }
+                treatment.setOutput(hop.getOutPort());
 
-                // Build & send forwarding objective
-                sendFlowObjective(currentDeviceId, selector, treatment);
-                log.info("Flow objective sent to device!" + currentDeviceId.toString());
+                installation.addRule(hop.getDeviceId(), selector, treatment, currentLabel, false);
+                backupLabel = currentLabel;
             }
 
-            // Forward out current packet
-            packetOut(packetContext, inOutPorts.get(0).outPort);
-            log.info("Packet out!");
+            // Primary labels on every hop but the ingress, return labels on every hop before the last transit hop
+            MplsLabel[] labels = new MplsLabel[hops];
+            MplsLabel[] returnLabels = new MplsLabel[hops];
+            for (int i = hops - 1; i >= 1; i--) {
+                labels[i] = allocateLabel(inOutPorts.get(i).getDeviceId(), currentNetworkId);
+            }
+            for (int i = hops - 3; i >= 0; i--) {
+                returnLabels[i] = allocateLabel(inOutPorts.get(i).getDeviceId(), currentNetworkId);
+            }
+
+            // Crankback: back up the primary path, onto the backup LSP at the ingress
+            for (int i = hops - 3; i >= 0; i--) {
+                selector = DefaultTrafficSelector.builder();
+                treatment = DefaultTrafficTreatment.builder();
+
+                InOutPort hop = inOutPorts.get(i);
+                selector.matchInPort(hop.getOutPort());
+                selector.matchEthType(Ethernet.MPLS_UNICAST);
+                selector.matchMplsLabel(returnLabels[i]);
+
+                if (i == 0) {
+                    treatment.setMpls(backupLabel);
+                    treatment.setOutput(backupInOutPorts.get(0).getOutPort());
+                } else {
+                    treatment.setMpls(returnLabels[i - 1]);
+                    treatment.setOutput(hop.getInPort());
+                }
+
+                installation.addRule(hop.getDeviceId(), selector, treatment, returnLabels[i], false);
+            }
+
+            // Terminating Switch
+            InOutPort egress = inOutPorts.get(hops - 1);
+            selector = DefaultTrafficSelector.builder();
+            treatment = DefaultTrafficTreatment.builder();
+
+            selector.matchInPort(egress.getInPort());
+            selector.matchEthType(Ethernet.MPLS_UNICAST);
+            selector.matchMplsBos(true);
+            selector.matchMplsLabel(labels[hops - 1]);
+
+            treatment.popMpls(new EthType(Ethernet.TYPE_IPV4));
+            treatment.setOutput(egress.getOutPort());
+
+            installation.addRule(egress.getDeviceId(), selector, treatment, labels[hops - 1], false);
+
+            // LSRs
+            for (int i = hops - 2; i >= 1; i--) {
+                selector = DefaultTrafficSelector.builder();
+                treatment = DefaultTrafficTreatment.builder();
+
+                InOutPort hop = inOutPorts.get(i);
+                GroupDescription group = failoverGroups.buildGroup(hop.getDeviceId(), Arrays.asList(
+                        failoverBucket(labels[i + 1], hop.getOutPort(), hop.getOutPort()),
+                        failoverBucket(returnLabels[i - 1], PortNumber.IN_PORT, hop.getInPort())));
+                installation.addGroup(group);
+
+                selector.matchInPort(hop.getInPort());
+                selector.matchEthType(Ethernet.MPLS_UNICAST);
+                selector.matchMplsLabel(labels[i]);
+
+                treatment.group(FailoverGroups.groupId(group));
+
+                installation.addRule(hop.getDeviceId(), selector, treatment, labels[i], false);
+            }
+
+            // Originating Switch
+            InOutPort ingress = inOutPorts.get(0);
+            GroupDescription group = failoverGroups.buildGroup(ingress.getDeviceId(), Arrays.asList(
+                    failoverBucket(labels[1], ingress.getOutPort(), ingress.getOutPort()),
+                    failoverBucket(backupLabel, backupInOutPorts.get(0).getOutPort(),
+                            backupInOutPorts.get(0).getOutPort())));
+            installation.addGroup(group);
+
+            selector = DefaultTrafficSelector.builder();
+            treatment = DefaultTrafficTreatment.builder();
+
+            selector.matchInPort(ingress.getInPort());
+            selector.matchIPDst(ip4DstPrefix);
+            selector.matchEthType(Ethernet.TYPE_IPV4);
+
+            if (isToBeRouted) {
+                treatment.setEthDst(destinationHost.mac());
+            }
+            treatment.pushMpls();
+            treatment.group(FailoverGroups.groupId(group));
+
+            setup.setIngress(ingress.getDeviceId(), treatment.build());
+            installation.addRule(ingress.getDeviceId(), selector, treatment, null, true);
+        }
+
+        private GroupBucket failoverBucket(MplsLabel mplsLabel, PortNumber outPort, PortNumber watchPort) {
+            TrafficTreatment treatment = DefaultTrafficTreatment.builder()
+                    .setMpls(mplsLabel)
+                    .setOutput(outPort)
+                    .build();
+            return DefaultGroupBucket.createFailoverGroupBucket(treatment, watchPort, null);
         }
 
-        // Custom implementation of path computation
-        private ArrayList<DeviceId> getForwardPathIfPossible(NetworkId networkId, VirtualHost sourceHost, VirtualHost destinationHost) {
+        private MplsLabel allocateLabel(DeviceId deviceId, NetworkId networkId) {
+            return MplsLabel.mplsLabel(mplsLabelPool.get(deviceId).getNextLabel(networkId));
+        }
+
+        // Labels identify the egress device instead of the destination host. Hops already on the sink tree
+        // towards the egress are reused, so only the branch up to the first such hop is installed.
+        private void distributeFecLabels(NetworkFlowPair networkFlowPair, PendingFlowSetup setup,
+                                         VirtualHost sourceHost, VirtualHost destinationHost,
+                                         boolean isToBeRouted, List<Link> pathLinks, List<InOutPort> inOutPorts,
+                                         Set<DevicePair> avoidedEdges, Set<DeviceId> avoidedDevices,
+                                         FlowInstallation installation) {
+            TrafficSelector.Builder selector;
+            TrafficTreatment.Builder treatment;
+
+            FlowPair flowPair = networkFlowPair.getFlowPair();
+            NetworkId currentNetworkId = networkFlowPair.getNetworkId();
+            DeviceId egressDeviceId = destinationHost.location().deviceId();
+
+            initializeMplsLabelPool(inOutPorts);
+
+            Ip4Prefix ip4DstPrefix = Ip4Prefix.valueOf(
+                    flowPair.getDst().getIp4Address(),
+                    Ip4Prefix.MAX_MASK_LENGTH
+            );
+
+            // Demultiplexing by IP destination at the egress, shared by all flows towards the host
+            if (fecLabelTable.acquireDemuxEntry(currentNetworkId, flowPair) == null) {
+                selector = DefaultTrafficSelector.builder();
+                selector.matchMetadata(currentNetworkId.id());
+                selector.matchEthType(Ethernet.TYPE_IPV4);
+                selector.matchIPDst(ip4DstPrefix);
+
+                treatment = DefaultTrafficTreatment.builder();
+                treatment.setOutput(destinationHost.location().port());
+
+                FlowRule flowRule = installation.buildRule(egressDeviceId, FEC_DEMUX_TABLE, selector, treatment);
+                installation.install(flowRule, false);
+                fecLabelTable.addDemuxEntry(currentNetworkId, flowPair,
+                        new FecEntry(egressDeviceId, egressDeviceId, null, null, flowRule));
+            }
+
+            // First hop after the ingress that is already on the sink tree
+            int spliceIndex = inOutPorts.size();
+            List<FecEntry> branch = Collections.emptyList();
+            for (int i = 1; i < inOutPorts.size(); i++) {
+                branch = fecLabelTable.acquireBranch(
+                        currentNetworkId, flowPair, egressDeviceId, inOutPorts.get(i).getDeviceId(),
+                        avoidedEdges, avoidedDevices);
+                if (!branch.isEmpty()) {
+                    spliceIndex = i;
+                    break;
+                }
+            }
+
+            // Egress first, like the rest of the rules of a flow
+            for (int i = branch.size() - 1; i >= 0; i--) {
+                installation.recordShared(branch.get(i).getFlowRule(), branch.get(i).getMplsLabel());
+            }
+
+            // Past the splice point packets follow the sink tree, which may leave the computed path
+            if (!branch.isEmpty()) {
+                List<Link> forwardedLinks = new ArrayList<>(pathLinks.subList(0, spliceIndex));
+                for (FecEntry fecEntry : branch) {
+                    if (fecEntry.getNextHopLink() != null) forwardedLinks.add(fecEntry.getNextHopLink());
+                }
+                flowRuleStorage.setFlowPath(currentNetworkId, flowPair, new FlowPath(
+                        hostPort(sourceHost), forwardedLinks, hostPort(destinationHost), isToBeRouted));
+            }
+
+            MplsLabel nextLabel = branch.isEmpty() ? null : branch.get(0).getMplsLabel();
+
+            for (int i = spliceIndex - 1; i >= 1; i--) {
+                selector = DefaultTrafficSelector.builder();
+                treatment = DefaultTrafficTreatment.builder();
+
+                DeviceId currentDeviceId = inOutPorts.get(i).getDeviceId();
+                MplsLabel currentLabel = MplsLabel.mplsLabel(mplsLabelPool
+                        .get(currentDeviceId)
+                        .getNextLabel(currentNetworkId)
+                );
 
-            // Get all the virtual links available
-            Set<VirtualLink> virtualLinks = virtualNetworkAdminService.getVirtualLinks(networkId);
+                // No in port match, so that flows coming from any upstream hop merge here
+                selector.matchEthType(Ethernet.MPLS_UNICAST);
+                selector.matchMplsLabel(currentLabel);
 
-            // Construct Graph
-            VirtualNetworkGraph virtualNetworkGraph = new VirtualNetworkGraph();
-            for (VirtualLink virtualLink : virtualLinks) {
-                if (virtualLink.state().equals(VirtualLink.State.ACTIVE)) {
-                    virtualNetworkGraph.addEdge(virtualLink.src().deviceId(), virtualLink.dst().deviceId());
+                if (nextLabel == null) {
+                    // Terminating Switch
+                    selector.matchMplsBos(true);
+                    treatment.popMpls(new EthType(Ethernet.TYPE_IPV4));
+                    treatment.writeMetadata(currentNetworkId.id(), FEC_METADATA_MASK);
+                    treatment.transition(FEC_DEMUX_TABLE);
+                } else {
+                    // LSRs
+                    treatment.setMpls(nextLabel);
+                    treatment.setOutput(inOutPorts.get(i).getOutPort());
                 }
+
+                FlowRule flowRule = installation.buildRule(currentDeviceId, 0, selector, treatment);
+                installation.recordShared(flowRule, currentLabel);
+                installation.install(flowRule, false);
+                fecLabelTable.addEntry(currentNetworkId, flowPair, new FecEntry(currentDeviceId, egressDeviceId,
+                        nextLabel == null ? null : pathLinks.get(i), currentLabel, flowRule));
+
+                nextLabel = currentLabel;
+            }
+
+            // Originating Switch, still one rule per flow
+            selector = DefaultTrafficSelector.builder();
+            treatment = DefaultTrafficTreatment.builder();
+            DeviceId ingressDeviceId = inOutPorts.get(0).getDeviceId();
+
+            selector.matchInPort(inOutPorts.get(0).getInPort());
+            selector.matchIPDst(ip4DstPrefix);
+            selector.matchEthType(Ethernet.TYPE_IPV4);
+
+            if (isToBeRouted) {
+                treatment.setEthDst(destinationHost.mac());
             }
+            treatment.pushMpls();
+            treatment.setMpls(nextLabel);
+            treatment.setOutput(inOutPorts.get(0).getOutPort());
 
-            // If it's A->B->C, it will return C, B, A. Order is reversed
-            ArrayList<DeviceId> computedPath = virtualNetworkGraph.bfsForShortestPath(sourceHost.location().deviceId(),
-                    destinationHost.location().deviceId());
-            Collections.reverse(computedPath);
-            return computedPath;
+            setup.setIngress(ingressDeviceId, treatment.build());
+            installation.addRule(ingressDeviceId, selector, treatment, null, true);
         }
 
-        // Get Links in the path
-        private List<Link> getForwardPathLinks(NetworkId networkId, ArrayList<DeviceId> deviceIds) {
-            List<Link> links = new LinkedList<>();
+        // Custom implementation of path computation, returns the links from source to destination device
+        private List<Link> getForwardPathIfPossible(NetworkId networkId, VirtualHost sourceHost, VirtualHost destinationHost) {
 
-            // Get all the virtual links available
-            Set<VirtualLink> virtualLinks = virtualNetworkAdminService.getVirtualLinks(networkId);
+            // Graph is only rebuilt after the virtual links have changed, which also invalidates cached paths
+            VirtualTopologySnapshot topologySnapshot = virtualTopologyCache.getSnapshot(
+                    networkId,
+                    NetworkSlicing.this::getActiveVirtualLinks
+            );
 
-            for (int i = 0; i < deviceIds.size() - 1; i++) {
-                for (VirtualLink virtualLink : virtualLinks) {
-                    if (virtualLink.state().equals(VirtualLink.State.ACTIVE)) {
-                        if (virtualLink.src().deviceId().equals(deviceIds.get(i)) &&
-                                virtualLink.dst().deviceId().equals(deviceIds.get(i + 1))) {
-                            links.add(virtualLink);
-                        }
-                    }
+            DevicePair devicePair = new DevicePair(
+                    sourceHost.location().deviceId(),
+                    destinationHost.location().deviceId()
+            );
+            List<Link> cachedPath = shortestPathCache.getPath(networkId, devicePair);
+            if (cachedPath != null) return cachedPath;
+
+            VirtualNetworkGraph graph = topologySnapshot.getGraph();
+            int[] computedPath = graph.shortestPath(
+                    graph.indexOf(devicePair.getSrc()),
+                    graph.indexOf(devicePair.getDst())
+            );
+
+            List<Link> pathLinks = resolveLinks(topologySnapshot, computedPath);
+            shortestPathCache.putPath(networkId, devicePair, pathLinks, topologySnapshot.getVersion());
+            return pathLinks;
+        }
+
+        // Shortest path around failed links and devices, which the snapshot may still list as active. Not cached.
+        private List<Link> getPathAvoiding(NetworkId networkId, VirtualHost sourceHost, VirtualHost destinationHost,
+                                           Set<DevicePair> avoidedEdges, Set<DeviceId> avoidedDevices) {
+            VirtualTopologySnapshot topologySnapshot = virtualTopologyCache.getSnapshot(
+                    networkId,
+                    NetworkSlicing.this::getActiveVirtualLinks
+            );
+
+            VirtualNetworkGraph graph = topologySnapshot.getGraph();
+            int[] computedPath = graph.shortestPath(
+                    graph.indexOf(sourceHost.location().deviceId()),
+                    graph.indexOf(destinationHost.location().deviceId()),
+                    avoidedEdges,
+                    avoidedDevices
+            );
+            return resolveLinks(topologySnapshot, computedPath);
+        }
+
+        // Link disjoint from the primary path in both directions, empty if the network is not protected or there
+        // is no such path. Sink trees are shared between flows and are never protected.
+        private List<Link> getBackupPath(NetworkId networkId, VirtualHost sourceHost, VirtualHost destinationHost,
+                                         List<Link> pathLinks, Set<DevicePair> avoidedEdges,
+                                         Set<DeviceId> avoidedDevices) {
+            if (fecLabelAggregation || !failoverGroups.isProtected(networkId)) return Collections.emptyList();
+
+            Set<DevicePair> primaryEdges = new HashSet<>(avoidedEdges);
+            for (Link link : pathLinks) {
+                primaryEdges.add(new DevicePair(link.src().deviceId(), link.dst().deviceId()));
+                primaryEdges.add(new DevicePair(link.dst().deviceId(), link.src().deviceId()));
+            }
+
+            List<Link> backupLinks = getPathAvoiding(networkId, sourceHost, destinationHost,
+                    primaryEdges, avoidedDevices);
+            if (backupLinks.isEmpty()) {
+                log.info("No link disjoint backup path from {} to {}",
+                        sourceHost.location().deviceId(), destinationHost.location().deviceId());
+            }
+            return backupLinks;
+        }
+
+        // Resolve the links hop by hop through the link index of the same snapshot
+        private List<Link> resolveLinks(VirtualTopologySnapshot topologySnapshot, int[] computedPath) {
+            VirtualNetworkGraph graph = topologySnapshot.getGraph();
+            List<Link> pathLinks = new ArrayList<>(Math.max(computedPath.length - 1, 0));
+            for (int i = 0; i < computedPath.length - 1; i++) {
+                pathLinks.add(topologySnapshot.getLink(
+                        graph.deviceAt(computedPath[i]),
+                        graph.deviceAt(computedPath[i + 1])
+                ));
+            }
+            return pathLinks;
+        }
+
+        // Reverse links of the path from source to destination, or the shortest path back if one of them is missing
+        private List<Link> getReversePath(NetworkId networkId, VirtualHost sourceHost, VirtualHost destinationHost) {
+            List<Link> forwardPath = getForwardPathIfPossible(networkId, sourceHost, destinationHost);
+            VirtualTopologySnapshot topologySnapshot = virtualTopologyCache.getSnapshot(
+                    networkId,
+                    NetworkSlicing.this::getActiveVirtualLinks
+            );
+
+            List<Link> reversePath = new ArrayList<>(forwardPath.size());
+            for (int i = forwardPath.size() - 1; i >= 0; i--) {
+                Link reverseLink = topologySnapshot.getLink(
+                        forwardPath.get(i).dst().deviceId(),
+                        forwardPath.get(i).src().deviceId()
+                );
+                if (reverseLink == null) {
+                    return getForwardPathIfPossible(networkId, destinationHost, sourceHost);
                 }
+                reversePath.add(reverseLink);
             }
-            return links;
+            return reversePath;
         }
 
         private List<InOutPort> extractInOutPorts(List<Link> links, VirtualHost sourceHost, VirtualHost destinationHost) {
-            List<InOutPort> inOutPorts = new LinkedList<>();
+            List<InOutPort> inOutPorts = new ArrayList<>(links.size() + 1);
             for (int i = 0; i < links.size(); i++) {
 
                 if (i == 0) {
@@ -686,50 +1514,232 @@ public class NetworkSlicing {
             return inOutPorts;
         }
 
+        // Worst case of a path: a rule on every hop and a label on every hop but the ingress
+        private Map<DeviceId, ResourceUsage> estimateDemand(List<InOutPort> inOutPorts) {
+            Map<DeviceId, ResourceUsage> demand = new HashMap<>();
+            for (int i = 0; i < inOutPorts.size(); i++) {
+                demand.computeIfAbsent(inOutPorts.get(i).getDeviceId(), k -> new ResourceUsage())
+                        .add(new ResourceUsage(i == 0 ? 0 : 1, 1, 1));
+            }
+            return demand;
+        }
+
+        // Protected paths add the backup hops and the return rules of the crankback
+        private Map<DeviceId, ResourceUsage> estimateDemand(VirtualHost sourceHost, VirtualHost destinationHost,
+                                                            List<InOutPort> inOutPorts, List<Link> backupLinks) {
+            Map<DeviceId, ResourceUsage> demand = estimateDemand(inOutPorts);
+            if (backupLinks.isEmpty()) return demand;
+
+            List<InOutPort> backupInOutPorts = extractInOutPorts(backupLinks, sourceHost, destinationHost);
+            for (int i = 1; i < backupInOutPorts.size(); i++) {
+                demand.computeIfAbsent(backupInOutPorts.get(i).getDeviceId(), k -> new ResourceUsage())
+                        .add(new ResourceUsage(1, 1, 0));
+            }
+            for (int i = 0; i < inOutPorts.size() - 2; i++) {
+                demand.get(inOutPorts.get(i).getDeviceId()).add(new ResourceUsage(1, 1, 0));
+            }
+            return demand;
+        }
+
         private void initializeMplsLabelPool(List<InOutPort> inOutPorts) {
             for (InOutPort inOutPort : inOutPorts) {
-                if (!mplsLabelPool.containsKey(inOutPort.getDeviceId())) {
-                    mplsLabelPool.put(inOutPort.getDeviceId(), new MplsLabelPool());
-                }
+                mplsLabelPool.computeIfAbsent(inOutPort.getDeviceId(), k -> new MplsLabelPool());
             }
         }
 
         private void initializeMplsForwardingTables(List<InOutPort> inOutPorts) {
             for (InOutPort inOutPort : inOutPorts) {
-                if (!mplsForwardingTable.containsKey(inOutPort.getDeviceId())) {
-                    mplsForwardingTable.put(inOutPort.getDeviceId(), new MplsForwardingTable());
-                }
+                mplsForwardingTable.computeIfAbsent(inOutPort.getDeviceId(), k -> new MplsForwardingTable());
             }
         }
 
-        private void sendFlowObjective(DeviceId deviceId, TrafficSelector.Builder selector, TrafficTreatment.Builder treatment) {
+        private void sendFlowObjective(DeviceId deviceId, TrafficSelector.Builder selector, TrafficTreatment.Builder treatment,
+                                       NetworkFlowPair networkFlowPair, PendingFlowSetup setup) {
             ForwardingObjective forwardingObjective = DefaultForwardingObjective.builder()
                     .withSelector(selector.build())
                     .withTreatment(treatment.build())
                     .withPriority(DEFAULT_PRIORITY)
                     .fromApp(appId)
                     .withFlag(ForwardingObjective.Flag.VERSATILE)
-                    .add();
+                    .add(new ObjectiveContext() {
+                        @Override
+                        public void onSuccess(Objective objective) {
+                            if (setup.ruleInstalled()) {
+                                completeFlowSetup(setup);
+                            }
+                        }
+
+                        @Override
+                        public void onError(Objective objective, ObjectiveError error) {
+                            log.warn("Flow objective failed on {}: {}", deviceId, error);
+                            abortFlowSetup(networkFlowPair, setup);
+
+                            // The other hops may be installed, the flow is retracted and the next packet starts over
+                            retractFlowRules(flowRuleService,
+                                    networkFlowPair.getNetworkId(), networkFlowPair.getFlowPair());
+                        }
+                    });
             flowObjectiveService.forward(deviceId, forwardingObjective);
         }
 
-        // Sends a packet out the specified port.
-        private void packetOut(PacketContext packetContext, PortNumber portNumber) {
-            packetContext.treatmentBuilder().setOutput(portNumber);
-            packetContext.send();
+        // Sends out the held back packets through the ingress treatment of the flow
+        private void completeFlowSetup(PendingFlowSetup setup) {
+            for (InboundPacket inboundPacket : setup.finish()) {
+                packetOut(setup, inboundPacket);
+            }
+            log.info("Packet out!");
         }
 
-        // New FlowRuleStorageMechanism
-        private void storeFlowRule(FlowPair flowPair, TrafficSelector.Builder selector, TrafficTreatment.Builder treatment, MplsLabel mplsLabel, DeviceId deviceId, NetworkId networkId) {
-            FlowRule flowRule = DefaultFlowRule.builder()
-                    .withSelector(selector.build())
-                    .withTreatment(treatment.build())
-                    .withPriority(DEFAULT_PRIORITY)
-                    .withHardTimeout(FlowRule.MAX_TIMEOUT)
-                    .fromApp(appId)
-                    .forDevice(deviceId)
-                    .build();
-            flowRuleStorage.addFlowRule(networkId, flowPair, flowRule, mplsLabel);
+        // Drops the held back packets, the next packet of the flow starts a new setup
+        private void abortFlowSetup(NetworkFlowPair networkFlowPair, PendingFlowSetup setup) {
+            pendingFlowSetups.remove(networkFlowPair, setup);
+            setup.finish();
+        }
+
+        // Sends a packet out as if it had been handled by the ingress rule of the flow
+        private void packetOut(PendingFlowSetup setup, InboundPacket inboundPacket) {
+            if (setup.getIngressDeviceId() == null) return;
+            packetService.emit(new DefaultOutboundPacket(
+                    setup.getIngressDeviceId(),
+                    setup.getIngressTreatment(),
+                    ByteBuffer.wrap(inboundPacket.parsed().serialize())
+            ));
+        }
+
+        // Hop rules of one flow, added from egress to ingress. The stored rules are the ones installed
+        // when batching, otherwise each hop goes out as its own forwarding objective.
+        // Rules of a previous path of the flow can be retired in a last stage, after the ingress switched over.
+        class FlowInstallation {
+            private final NetworkFlowPair networkFlowPair;
+            private final PendingFlowSetup setup;
+            private final boolean batch;
+            private final FlowRuleOperations.Builder operations;
+            private int batchedRules;
+
+            private List<FlowRuleInformation> retiredRules = Collections.emptyList();
+            private List<GroupDescription> retiredGroups = Collections.emptyList();
+            private final List<GroupDescription> groups = new ArrayList<>();
+            private final Set<FlowId> installedRules = new HashSet<>();
+            private final Set<DeviceLabel> installedLabels = new HashSet<>();
+
+            FlowInstallation(NetworkFlowPair networkFlowPair, PendingFlowSetup setup, int numberOfRules, boolean batch) {
+                this.networkFlowPair = networkFlowPair;
+                this.setup = setup;
+                this.batch = batch;
+                this.operations = FlowRuleOperations.builder();
+                if (!batch) setup.expectRules(numberOfRules);
+            }
+
+            void addRule(DeviceId deviceId, TrafficSelector.Builder selector, TrafficTreatment.Builder treatment,
+                         MplsLabel mplsLabel, boolean isIngress) {
+                FlowRule flowRule = buildRule(deviceId, 0, selector, treatment);
+                flowRuleStorage.addFlowRule(
+                        networkFlowPair.getNetworkId(), networkFlowPair.getFlowPair(), flowRule, mplsLabel);
+                if (mplsLabel != null) installedLabels.add(new DeviceLabel(deviceId, mplsLabel));
+
+                if (batch) {
+                    install(flowRule, isIngress);
+                } else {
+                    sendFlowObjective(deviceId, selector, treatment, networkFlowPair, setup);
+                }
+            }
+
+            FlowRule buildRule(DeviceId deviceId, int tableId, TrafficSelector.Builder selector,
+                               TrafficTreatment.Builder treatment) {
+                return DefaultFlowRule.builder()
+                        .withSelector(selector.build())
+                        .withTreatment(treatment.build())
+                        .withPriority(DEFAULT_PRIORITY)
+                        .makePermanent()
+                        .fromApp(appId)
+                        .forDevice(deviceId)
+                        .forTable(tableId)
+                        .build();
+            }
+
+            // Sink tree rule the flow depends on, kept for the path display and topology checks only
+            void recordShared(FlowRule flowRule, MplsLabel mplsLabel) {
+                flowRuleStorage.addSharedFlowRule(
+                        networkFlowPair.getNetworkId(), networkFlowPair.getFlowPair(), flowRule, mplsLabel);
+                if (mplsLabel != null) installedLabels.add(new DeviceLabel(flowRule.deviceId(), mplsLabel));
+            }
+
+            void install(FlowRule flowRule, boolean isIngress) {
+                if (isIngress && batchedRules > 0) operations.newStage();
+                operations.add(flowRule);
+                installedRules.add(flowRule.id());
+                batchedRules++;
+            }
+
+            // Batch mode only, rules referring to a group go out once the group is added
+            void addGroup(GroupDescription group) {
+                groups.add(group);
+            }
+
+            // Batch mode only, the old rules and groups must be out of the flow storage already
+            void retire(List<FlowRuleInformation> oldRules, List<GroupDescription> oldGroups) {
+                this.retiredRules = oldRules;
+                this.retiredGroups = oldGroups;
+            }
+
+            // Old rules and labels the new path does not reuse. A rule with the same match on the same device,
+            // like the ingress rule, was overwritten by the new one and must stay.
+            void releaseRetired(boolean removeRules) {
+                for (FlowRuleInformation f : retiredRules) {
+                    if (removeRules && !installedRules.contains(f.getFlowRule().id())) {
+                        flowRuleService.removeFlowRules(f.getFlowRule());
+                    }
+                    if (f.getMplsLabel() != null &&
+                            !installedLabels.contains(new DeviceLabel(f.getFlowRuleDeviceId(), f.getMplsLabel()))) {
+                        mplsLabelPool.get(f.getFlowRuleDeviceId()).returnLabel(f.getMplsLabel().toInt());
+                    }
+                }
+                failoverGroups.removeGroups(retiredGroups);
+            }
+
+            void submit() {
+                if (!batch) return;
+
+                boolean retiring = false;
+                for (FlowRuleInformation f : retiredRules) {
+                    if (installedRules.contains(f.getFlowRule().id())) continue;
+                    if (!retiring) {
+                        operations.newStage();
+                        retiring = true;
+                    }
+                    operations.remove(f.getFlowRule());
+                }
+
+                FlowRuleOperations flowRuleOperations = operations.build(new FlowRuleOperationsContext() {
+                    @Override
+                    public void onSuccess(FlowRuleOperations ops) {
+                        releaseRetired(false);
+                        completeFlowSetup(setup);
+                    }
+
+                    @Override
+                    public void onError(FlowRuleOperations ops) {
+                        fail();
+                    }
+                });
+
+                if (groups.isEmpty()) {
+                    flowRuleService.apply(flowRuleOperations);
+                } else {
+                    failoverGroups.addGroups(networkFlowPair, groups,
+                            () -> flowRuleService.apply(flowRuleOperations), this::fail);
+                }
+            }
+
+            private void fail() {
+                log.warn("Flow rule installation failed for {}", networkFlowPair);
+                abortFlowSetup(networkFlowPair, setup);
+
+                // Part of the path may be installed, and neither path can be trusted after a failed reroute or a
+                // missing group. The flow is retracted and the next packet starts over.
+                releaseRetired(true);
+                retractFlowRules(flowRuleService, networkFlowPair.getNetworkId(), networkFlowPair.getFlowPair());
+            }
         }
 
         class InOutPort {
@@ -771,57 +1781,252 @@ public class NetworkSlicing {
         @Override
         public void event(TopologyEvent topologyEvent) {
 
-            Set<DeviceId> affectedDevices = new HashSet<>();
-
             log.info(topologyEvent.toString());
-            for (Event e : topologyEvent.reasons()) {
-                DefaultLink affectedLink = (DefaultLink) e.subject();
-                affectedDevices.add(affectedLink.src().deviceId());
-                affectedDevices.add(affectedLink.dst().deviceId());
+
+            // Virtual link states follow the underlying topology
+            virtualTopologyCache.invalidateAll();
+
+            if (topologyEvent.reasons() == null) return;
+
+            Set<LinkKey> failedLinks = new HashSet<>();
+            Set<DeviceId> failedDevices = new HashSet<>();
+            Set<ConnectPoint> failedPorts = new HashSet<>();
+            for (Event reason : topologyEvent.reasons()) {
+                if (reason instanceof LinkEvent) {
+                    collectLinkFailures((LinkEvent) reason, failedLinks);
+                } else if (reason instanceof DeviceEvent) {
+                    collectDeviceFailures((DeviceEvent) reason, failedDevices, failedPorts);
+                }
             }
 
-            // Display affected devices
-            log.info("Topology change detected!");
-            log.info("Affected devices: ");
-            for (DeviceId affectedDevice : affectedDevices) {
-                log.info(affectedDevice.toString());
+            // Only the flows forwarded over what went down, found through the flow indexes
+            Set<NetworkFlowPair> affectedFlows = new HashSet<>();
+            for (LinkKey linkKey : failedLinks) {
+                affectedFlows.addAll(flowRuleStorage.getFlowsByLink(linkKey));
+            }
+            for (DeviceId deviceId : failedDevices) {
+                affectedFlows.addAll(flowRuleStorage.getFlowsByDevice(deviceId));
+            }
+            for (ConnectPoint connectPoint : failedPorts) {
+                affectedFlows.addAll(flowRuleStorage.getFlowsByPort(connectPoint));
             }
 
-            Set<DeviceId> devicesInFlow = new HashSet<>();
-            Set<FlowPair> toBeDeleted = new HashSet<>();
+            log.info("Topology change detected! Flows affected: {}", affectedFlows.size());
 
-            HashMap<NetworkId, HashMap<FlowPair, List<FlowRuleInformation>>> allFlows = NetworkSlicing.flowRuleStorage.getAllFlows();
-            for (Map.Entry<NetworkId, HashMap<FlowPair, List<FlowRuleInformation>>> a : allFlows.entrySet()) {
+            Map<NetworkId, Set<DevicePair>> failedEdges = new HashMap<>();
+            for (NetworkFlowPair networkFlowPair : affectedFlows) {
+                if (rerouteOnFailure && !isOnFailedHostPort(networkFlowPair, failedPorts)) {
+                    Set<DevicePair> avoidedEdges = failedEdges.computeIfAbsent(networkFlowPair.getNetworkId(),
+                            k -> getFailedEdges(k, failedLinks, failedPorts));
+                    if (virtualNetworkPacketProcessor.rerouteFlow(networkFlowPair, avoidedEdges, failedDevices)) {
+                        continue;
+                    }
+                }
 
-                for (Map.Entry<FlowPair, List<FlowRuleInformation>> b : a.getValue().entrySet()) {
+                // Retract flow rules
+                retractFlowRules(flowRuleService, networkFlowPair.getNetworkId(), networkFlowPair.getFlowPair());
+            }
+        }
+
+        private void collectLinkFailures(LinkEvent event, Set<LinkKey> failedLinks) {
+            Link link = event.subject();
+            if (event.type() == LinkEvent.Type.LINK_REMOVED ||
+                    (event.type() == LinkEvent.Type.LINK_UPDATED && link.state() == Link.State.INACTIVE)) {
+                failedLinks.add(LinkKey.linkKey(link));
+            }
+        }
 
-                    List<FlowRuleInformation> flowRulesList = b.getValue();
-                    // Iterate over all flow rule to extract device ID
-                    for (FlowRuleInformation f : flowRulesList) {
-                        devicesInFlow.add(f.getFlowRuleDeviceId());
+        private void collectDeviceFailures(DeviceEvent event, Set<DeviceId> failedDevices, Set<ConnectPoint> failedPorts) {
+            DeviceId deviceId = event.subject().id();
+            switch (event.type()) {
+                case DEVICE_REMOVED:
+                    failedDevices.add(deviceId);
+                    break;
+                case DEVICE_AVAILABILITY_CHANGED:
+                    if (!deviceService.isAvailable(deviceId)) {
+                        failedDevices.add(deviceId);
                     }
-                    // If affected by topology change, mark as to be deleted
-                    if (devicesInFlow.containsAll(affectedDevices)) {
-                        toBeDeleted.add(b.getKey());
+                    break;
+                case PORT_REMOVED:
+                    failedPorts.add(new ConnectPoint(deviceId, event.port().number()));
+                    break;
+                case PORT_UPDATED:
+                    if (!event.port().isEnabled()) {
+                        failedPorts.add(new ConnectPoint(deviceId, event.port().number()));
                     }
-                    devicesInFlow.clear();
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        // A flow whose host port went down has nowhere to go
+        private boolean isOnFailedHostPort(NetworkFlowPair networkFlowPair, Set<ConnectPoint> failedPorts) {
+            FlowPath flowPath = flowRuleStorage.getFlowPath(networkFlowPair.getNetworkId(), networkFlowPair.getFlowPair());
+            return flowPath == null ||
+                    failedPorts.contains(flowPath.getSource()) || failedPorts.contains(flowPath.getDestination());
+        }
+
+        // Virtual links of the network over a failed link or port
+        private Set<DevicePair> getFailedEdges(NetworkId networkId, Set<LinkKey> failedLinks,
+                                               Set<ConnectPoint> failedPorts) {
+            VirtualTopologySnapshot topologySnapshot = virtualTopologyCache.getSnapshot(
+                    networkId,
+                    NetworkSlicing.this::getActiveVirtualLinks
+            );
+
+            Set<DevicePair> edges = new HashSet<>();
+            for (DevicePair edge : topologySnapshot.getEdges()) {
+                Link link = topologySnapshot.getLink(edge.getSrc(), edge.getDst());
+                if (failedLinks.contains(LinkKey.linkKey(link)) ||
+                        failedPorts.contains(link.src()) || failedPorts.contains(link.dst())) {
+                    edges.add(edge);
                 }
+            }
+            return edges;
+        }
+    }
 
-                for (FlowPair flowPair : toBeDeleted) {
-                    // Retract flow rules
-                    List<FlowRuleInformation> flowRuleInformations = NetworkSlicing.flowRuleStorage.getFlowRules(a.getKey(), flowPair);
-                    for (FlowRuleInformation flowRuleInfo : flowRuleInformations) {
-                        flowRuleService.removeFlowRules(flowRuleInfo.getFlowRule());
+    // Releases the rules waiting for the failover groups of a flow
+    private class InternalGroupListener implements GroupListener {
 
-                        // Return MPLS Label if any
-                        DeviceId currentDevice = flowRuleInfo.getFlowRuleDeviceId();
-                        if (flowRuleInfo.getMplsLabel() != null) {
-                            NetworkSlicing.mplsLabelPool.get(currentDevice).returnLabel(flowRuleInfo.getMplsLabel().toInt());
-                        }
+        @Override
+        public void event(GroupEvent event) {
+            switch (event.type()) {
+                case GROUP_ADDED:
+                    failoverGroups.groupAdded(event.subject().appCookie());
+                    break;
+                case GROUP_ADD_FAILED:
+                    failoverGroups.groupFailed(event.subject().appCookie());
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private class InternalVirtualNetworkListener implements VirtualNetworkListener {
+
+        @Override
+        public void event(VirtualNetworkEvent event) {
+            NetworkId networkId = event.subject();
+            switch (event.type()) {
+                case VIRTUAL_PORT_ADDED:
+                case VIRTUAL_PORT_UPDATED:
+                    ConnectPoint realizedBy = event.virtualPort().realizedBy();
+                    // A port realized by another ConnectPoint leaves the old one behind
+                    ConnectPoint previous = ingressPortIndex.bindVirtualPort(networkId, getTenantId(networkId),
+                            virtualPortOf(event), realizedBy);
+                    if (previous != null) packetInRateLimiter.removePort(previous);
+                    if (realizedBy != null || previous != null) {
+                        sliceAcls.recompile(networkId);
+                        arpResponders.refresh(networkId);
+                    }
+                    break;
+                case VIRTUAL_PORT_REMOVED:
+                    // Unbinds the ConnectPoint that realized the port last, which the event may no longer carry
+                    ConnectPoint removed = ingressPortIndex.bindVirtualPort(networkId, null,
+                            virtualPortOf(event), null);
+                    if (removed == null && event.virtualPort().realizedBy() != null) {
+                        removed = event.virtualPort().realizedBy();
+                        ingressPortIndex.unbindPort(removed);
+                    }
+                    if (removed != null) {
+                        packetInRateLimiter.removePort(removed);
+                        sliceAcls.recompile(networkId);
+                        arpResponders.refresh(networkId);
+                    }
+                    // Links attached to the port are removed along with it
+                    virtualTopologyCache.invalidate(networkId);
+                    break;
+                case VIRTUAL_DEVICE_REMOVED:
+                    ingressPortIndex.unbindDevice(networkId, event.virtualDevice().id());
+                    sliceAcls.recompile(networkId);
+                    arpResponders.refresh(networkId);
+                    virtualTopologyCache.invalidate(networkId);
+                    break;
+                case NETWORK_REMOVED:
+                    retractNetwork(networkId);
+                    tenantRoutedNetworks.remove(networkId);
+                    ingressPortIndex.unbindNetwork(networkId);
+                    virtualHostDirectory.removeNetwork(networkId);
+                    forbiddenTraffic.removeNetwork(networkId);
+                    sliceAcls.removeNetwork(networkId);
+                    arpResponders.removeNetwork(networkId);
+                    arpReplyCache.removeNetwork(networkId);
+                    packetInRateLimiter.removeNetwork(networkId);
+                    packetInScheduler.removeNetwork(networkId);
+                    virtualTopologyCache.removeNetwork(networkId);
+                    shortestPathCache.removeNetwork(networkId);
+                    networkTenants.remove(networkId);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        // Rules of the network are not removed along with it. Flows set up meanwhile hold the network lock.
+        private void retractNetwork(NetworkId networkId) {
+            Lock networkLock = networkLocks.get(networkId);
+            networkLock.lock();
+            try {
+                Map<FlowPair, List<FlowRuleInformation>> flows = flowRuleStorage.getAllFlowsPerNetwork(networkId);
+                if (flows != null) {
+                    for (FlowPair flowPair : new ArrayList<>(flows.keySet())) {
+                        retractFlowRules(flowRuleService, networkId, flowPair);
                     }
-                    NetworkSlicing.flowRuleStorage.deleteFlowRules(a.getKey(), flowPair);
                 }
-                toBeDeleted = new HashSet<>();
+                tenantQuotaManager.removeNetwork(networkId);
+            } finally {
+                networkLock.unlock();
+            }
+        }
+
+        private ConnectPoint virtualPortOf(VirtualNetworkEvent event) {
+            return new ConnectPoint(event.virtualPort().element().id(), event.virtualPort().number());
+        }
+
+        // Only walks the tenants the first time a network is seen
+        private TenantId getTenantId(NetworkId networkId) {
+            TenantId cached = networkTenants.get(networkId);
+            if (cached != null) return cached;
+
+            for (TenantId tenantId : virtualNetworkAdminService.getTenantIds()) {
+                for (VirtualNetwork virtualNetwork : virtualNetworkAdminService.getVirtualNetworks(tenantId)) {
+                    if (virtualNetwork.id().equals(networkId)) {
+                        networkTenants.put(networkId, tenantId);
+                        return tenantId;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    private class InternalEdgePortListener implements EdgePortListener {
+
+        @Override
+        public void event(EdgePortEvent event) {
+            switch (event.type()) {
+                case EDGE_PORT_ADDED:
+                    ingressPortIndex.addEdgePort(event.subject());
+                    refreshEdgeRules(event.subject());
+                    break;
+                case EDGE_PORT_REMOVED:
+                    ingressPortIndex.removeEdgePort(event.subject());
+                    refreshEdgeRules(event.subject());
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        // ACL drop rules and ARP responders of the network the port is bound to follow its edge ports
+        private void refreshEdgeRules(ConnectPoint connectPoint) {
+            IngressPortInformation info = ingressPortIndex.get(connectPoint);
+            if (info != null && info.isBound()) {
+                sliceAcls.recompile(info.getNetworkId());
+                arpResponders.refresh(info.getNetworkId());
             }
         }
     }
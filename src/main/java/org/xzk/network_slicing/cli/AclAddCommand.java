@@ -0,0 +1,88 @@
+package org.xzk.network_slicing.cli;
+
+import org.apache.karaf.shell.commands.Argument;
+import org.apache.karaf.shell.commands.Command;
+import org.onlab.packet.IPv4;
+import org.onlab.packet.Ip4Prefix;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.xzk.network_slicing.NetworkSlicing;
+import org.xzk.network_slicing.models.AclRule;
+
+@Command(scope = "onos", name = "ns-add-acl",
+        description = "Appends an entry to the ACL of a virtual network, the first matching entry wins")
+public class AclAddCommand extends AbstractShellCommand {
+
+    @Argument(index = 0, name = "networkId", description = "Network ID",
+            required = true, multiValued = false)
+    Long networkId = null;
+
+    @Argument(index = 1, name = "srcPrefix", description = "Source prefix, e.g. 10.0.0.0/24",
+            required = true, multiValued = false)
+    String srcPrefix = null;
+
+    @Argument(index = 2, name = "dstPrefix", description = "Destination prefix, e.g. 10.0.1.0/24",
+            required = true, multiValued = false)
+    String dstPrefix = null;
+
+    @Argument(index = 3, name = "protocol", description = "any, tcp, udp, icmp or an IP protocol number",
+            required = true, multiValued = false)
+    String protocol = null;
+
+    @Argument(index = 4, name = "srcPorts", description = "any, a port or a range like 1000-2000",
+            required = true, multiValued = false)
+    String srcPorts = null;
+
+    @Argument(index = 5, name = "dstPorts", description = "any, a port or a range like 1000-2000",
+            required = true, multiValued = false)
+    String dstPorts = null;
+
+    @Argument(index = 6, name = "action", description = "allow or deny",
+            required = true, multiValued = false)
+    String action = null;
+
+    @Override
+    protected void execute() {
+        try {
+            int[] srcRange = parsePorts(srcPorts);
+            int[] dstRange = parsePorts(dstPorts);
+            AclRule rule = NetworkSlicing.sliceAcls.addRule(NetworkId.networkId(networkId),
+                    Ip4Prefix.valueOf(srcPrefix), Ip4Prefix.valueOf(dstPrefix), parseProtocol(protocol),
+                    srcRange[0], srcRange[1], dstRange[0], dstRange[1],
+                    AclRule.Action.valueOf(action.toUpperCase()));
+            print("ACL entry " + rule.getId() + " added successfully! " +
+                    NetworkSlicing.sliceAcls.getInstalledRuleCount(NetworkId.networkId(networkId)) +
+                    " drop rules installed");
+        } catch (IllegalArgumentException e) {
+            print("ACL entry not added: " + e.getMessage());
+        }
+    }
+
+    private static byte parseProtocol(String protocol) {
+        switch (protocol.toLowerCase()) {
+            case "any":
+                return AclRule.ANY_PROTOCOL;
+            case "tcp":
+                return IPv4.PROTOCOL_TCP;
+            case "udp":
+                return IPv4.PROTOCOL_UDP;
+            case "icmp":
+                return IPv4.PROTOCOL_ICMP;
+            default:
+                int number = Integer.parseInt(protocol);
+                if (number < 1 || number > 255) throw new IllegalArgumentException("Invalid protocol " + protocol);
+                return (byte) number;
+        }
+    }
+
+    private static int[] parsePorts(String ports) {
+        if (ports.equalsIgnoreCase("any")) return new int[]{AclRule.MIN_PORT, AclRule.MAX_PORT};
+
+        int dash = ports.indexOf('-');
+        if (dash < 0) {
+            int port = Integer.parseInt(ports);
+            return new int[]{port, port};
+        }
+        return new int[]{Integer.parseInt(ports.substring(0, dash)), Integer.parseInt(ports.substring(dash + 1))};
+    }
+}
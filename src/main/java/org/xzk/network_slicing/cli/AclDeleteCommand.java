@@ -0,0 +1,29 @@
+package org.xzk.network_slicing.cli;
+
+import org.apache.karaf.shell.commands.Argument;
+import org.apache.karaf.shell.commands.Command;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.xzk.network_slicing.NetworkSlicing;
+
+@Command(scope = "onos", name = "ns-delete-acl",
+        description = "Deletes an entry from the ACL of a virtual network")
+public class AclDeleteCommand extends AbstractShellCommand {
+
+    @Argument(index = 0, name = "networkId", description = "Network ID",
+            required = true, multiValued = false)
+    Long networkId = null;
+
+    @Argument(index = 1, name = "aclId", description = "ACL entry ID",
+            required = true, multiValued = false)
+    Integer aclId = null;
+
+    @Override
+    protected void execute() {
+        if (NetworkSlicing.sliceAcls.removeRule(NetworkId.networkId(networkId), aclId)) {
+            print("ACL entry deleted successfully!");
+        } else {
+            print("ACL entry does not exist!");
+        }
+    }
+}
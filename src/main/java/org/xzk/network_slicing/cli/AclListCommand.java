@@ -0,0 +1,40 @@
+package org.xzk.network_slicing.cli;
+
+import org.apache.karaf.shell.commands.Argument;
+import org.apache.karaf.shell.commands.Command;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.xzk.network_slicing.NetworkSlicing;
+import org.xzk.network_slicing.models.AclRule;
+
+import java.util.List;
+
+@Command(scope = "onos", name = "ns-list-acl",
+        description = "Lists the ACL of a virtual network in match order")
+public class AclListCommand extends AbstractShellCommand {
+
+    @Argument(index = 0, name = "networkId", description = "Network ID",
+            required = true, multiValued = false)
+    Long networkId = null;
+
+    @Override
+    protected void execute() {
+
+        NetworkId netId = NetworkId.networkId(networkId);
+
+        List<AclRule> rules = NetworkSlicing.sliceAcls.getRules(netId);
+        if (rules.isEmpty()) {
+            return;
+        }
+
+        print("========== ACL (NetworkID = " + netId + ") ==========");
+        for (AclRule rule : rules) {
+            print(rule.getId() + " " + rule.getSrcPrefix() + " " + rule.getDstPrefix() + " " +
+                    (rule.getProtocol() == AclRule.ANY_PROTOCOL ? "any" : Integer.toString(rule.getProtocol() & 0xFF)) +
+                    " " + rule.getSrcPortMin() + "-" + rule.getSrcPortMax() +
+                    " " + rule.getDstPortMin() + "-" + rule.getDstPortMax() +
+                    " " + rule.getAction());
+        }
+        print("Drop rules installed: " + NetworkSlicing.sliceAcls.getInstalledRuleCount(netId));
+    }
+}
@@ -5,13 +5,9 @@ import org.apache.karaf.shell.commands.Command;
 import org.onlab.packet.IpAddress;
 import org.onosproject.cli.AbstractShellCommand;
 import org.onosproject.incubator.net.virtual.NetworkId;
-import org.onosproject.net.DeviceId;
 import org.onosproject.net.flow.FlowRuleService;
 import org.xzk.network_slicing.NetworkSlicing;
 import org.xzk.network_slicing.models.FlowPair;
-import org.xzk.network_slicing.models.FlowRuleInformation;
-
-import java.util.List;
 
 @Command(scope = "onos", name = "ns-delete-flow",
         description = "Deletes flow given source and destination")
@@ -37,18 +33,12 @@ public class FlowDeleteCommand extends AbstractShellCommand {
         IpAddress dst = IpAddress.valueOf(dstIp);
 
         FlowPair flowPair = new FlowPair(src, dst);
-        List<FlowRuleInformation> flowRules = NetworkSlicing.flowRuleStorage.getFlowRules(netId, flowPair);
-        for (FlowRuleInformation f : flowRules) {
-            flowRuleService.removeFlowRules(f.getFlowRule());
-
-            DeviceId currentDeviceId = f.getFlowRuleDeviceId();
-            // Return MPLS label if any
-            if (f.getMplsLabel() != null) {
-                NetworkSlicing.mplsLabelPool.get(currentDeviceId).returnLabel(f.getMplsLabel().toInt());
-            }
+        if (NetworkSlicing.flowRuleStorage.getFlowRules(netId, flowPair) == null) {
+            print("Flow does not exists!");
+            return;
         }
 
-        NetworkSlicing.flowRuleStorage.deleteFlowRules(netId, flowPair);
+        NetworkSlicing.retractFlowRules(flowRuleService, netId, flowPair);
         print("Flow successfully removed!");
     }
 }
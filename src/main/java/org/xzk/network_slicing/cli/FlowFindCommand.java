@@ -0,0 +1,81 @@
+package org.xzk.network_slicing.cli;
+
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.MplsLabel;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.LinkKey;
+import org.xzk.network_slicing.NetworkSlicing;
+import org.xzk.network_slicing.helper.FlowRuleStorage;
+import org.xzk.network_slicing.models.FlowPair;
+import org.xzk.network_slicing.models.NetworkFlowPair;
+
+import java.util.Set;
+
+@Command(scope = "onos", name = "ns-find-flow",
+        description = "Finds the installed flows using a device, a link, a label or a host")
+public class FlowFindCommand extends AbstractShellCommand {
+
+    @Option(name = "-d", aliases = "--device", description = "Device ID, together with --label for a label",
+            required = false, multiValued = false)
+    String deviceId = null;
+
+    @Option(name = "-l", aliases = "--label", description = "MPLS label on the device",
+            required = false, multiValued = false)
+    Integer label = null;
+
+    @Option(name = "-k", aliases = "--link", description = "Link as srcDevice/port-dstDevice/port",
+            required = false, multiValued = false)
+    String link = null;
+
+    @Option(name = "-n", aliases = "--network", description = "Network ID, together with --host",
+            required = false, multiValued = false)
+    Long networkId = null;
+
+    @Option(name = "-i", aliases = "--host", description = "Host IP address",
+            required = false, multiValued = false)
+    String hostIp = null;
+
+    @Override
+    protected void execute() {
+        FlowRuleStorage flowRuleStorage = NetworkSlicing.flowRuleStorage;
+
+        try {
+            if (hostIp != null && networkId != null) {
+                Set<FlowPair> flows = flowRuleStorage.getFlowsByHost(
+                        NetworkId.networkId(networkId), IpAddress.valueOf(hostIp));
+                for (FlowPair flowPair : flows) {
+                    print(flowPair.getSrc().toString() + " --> " + flowPair.getDst().toString());
+                }
+            } else if (link != null) {
+                String[] connectPoints = link.split("-", 2);
+                print(flows(flowRuleStorage.getFlowsByLink(LinkKey.linkKey(
+                        ConnectPoint.deviceConnectPoint(connectPoints[0]),
+                        ConnectPoint.deviceConnectPoint(connectPoints[1])))));
+            } else if (deviceId != null && label != null) {
+                print(flows(flowRuleStorage.getFlowsByLabel(DeviceId.deviceId(deviceId), MplsLabel.mplsLabel(label))));
+            } else if (deviceId != null) {
+                print(flows(flowRuleStorage.getFlowsByDevice(DeviceId.deviceId(deviceId))));
+            } else {
+                print("Specify a device, a link, a label or a network and host!");
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            error(e.toString());
+        }
+    }
+
+    private String flows(Set<NetworkFlowPair> networkFlowPairs) {
+        StringBuilder sb = new StringBuilder();
+        for (NetworkFlowPair networkFlowPair : networkFlowPairs) {
+            if (sb.length() > 0) sb.append("\n");
+            sb.append("NetworkID = " + networkFlowPair.getNetworkId() + " " +
+                    networkFlowPair.getFlowPair().getSrc().toString() + " --> " +
+                    networkFlowPair.getFlowPair().getDst().toString());
+        }
+        return sb.toString();
+    }
+}
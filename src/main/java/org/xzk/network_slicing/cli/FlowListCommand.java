@@ -23,7 +23,7 @@ public class FlowListCommand extends AbstractShellCommand {
     protected void execute() {
 
         NetworkId netId = NetworkId.networkId(networkId);
-        HashMap<FlowPair, List<FlowRuleInformation>> flows = NetworkSlicing.flowRuleStorage.getAllFlowsPerNetwork(netId);
+        Map<FlowPair, List<FlowRuleInformation>> flows = NetworkSlicing.flowRuleStorage.getAllFlowsPerNetwork(netId);
 
         print("========== Installed Flows (NetworkID = " + networkId + ") ==========");
 
@@ -5,14 +5,9 @@ import org.apache.karaf.shell.commands.Command;
 import org.onlab.packet.IpAddress;
 import org.onosproject.cli.AbstractShellCommand;
 import org.onosproject.incubator.net.virtual.NetworkId;
-import org.onosproject.net.DeviceId;
 import org.onosproject.net.flow.FlowRuleService;
 import org.xzk.network_slicing.NetworkSlicing;
 import org.xzk.network_slicing.models.FlowPair;
-import org.xzk.network_slicing.models.FlowRuleInformation;
-
-import java.util.LinkedList;
-import java.util.List;
 
 @Command(scope = "onos", name = "ns-add-forbidden-Traffic",
         description = "Adds a forbidden flow to be blocked")
@@ -42,41 +37,16 @@ public class ForbiddenTrafficAddCommand extends AbstractShellCommand {
         FlowPair flowPair1 = new FlowPair(host1, host2);
         FlowPair flowPair2 = new FlowPair(host2, host1);
 
-        if (!NetworkSlicing.forbiddenTraffic.containsKey(netId)) {
-            NetworkSlicing.forbiddenTraffic.put(netId, new LinkedList<>());
-        }
-        NetworkSlicing.forbiddenTraffic.get(netId).add(flowPair1);
-        NetworkSlicing.forbiddenTraffic.get(netId).add(flowPair2);
+        // Drop rules go to the edge devices of both hosts
+        NetworkSlicing.forbiddenTraffic.add(netId, host1, host2);
 
         print("Forbidden traffic entry added successfully!");
 
-        try {
-            List<FlowRuleInformation> flowRules1 = NetworkSlicing.flowRuleStorage.getFlowRules(netId, flowPair1);
-            for (FlowRuleInformation f : flowRules1) {
-                flowRuleService.removeFlowRules(f.getFlowRule());
-
-                DeviceId currentDeviceId = f.getFlowRuleDeviceId();
-                // Return MPLS label if any
-                if (f.getMplsLabel() != null) {
-                    NetworkSlicing.mplsLabelPool.get(currentDeviceId).returnLabel(f.getMplsLabel().toInt());
-                }
-            }
-
-            List<FlowRuleInformation> flowRules2 = NetworkSlicing.flowRuleStorage.getFlowRules(netId, flowPair2);
-            for (FlowRuleInformation f : flowRules2) {
-                flowRuleService.removeFlowRules(f.getFlowRule());
-
-                DeviceId currentDeviceId = f.getFlowRuleDeviceId();
-                // Return MPLS label if any
-                if (f.getMplsLabel() != null) {
-                    NetworkSlicing.mplsLabelPool.get(currentDeviceId).returnLabel(f.getMplsLabel().toInt());
-                }
-            }
-            NetworkSlicing.flowRuleStorage.deleteFlowRules(netId, flowPair1);
-            NetworkSlicing.flowRuleStorage.deleteFlowRules(netId, flowPair2);
+        if (NetworkSlicing.flowRuleStorage.getFlowRules(netId, flowPair1) != null ||
+                NetworkSlicing.flowRuleStorage.getFlowRules(netId, flowPair2) != null) {
+            NetworkSlicing.retractFlowRules(flowRuleService, netId, flowPair1);
+            NetworkSlicing.retractFlowRules(flowRuleService, netId, flowPair2);
             print("Flows invalidated!");
-        } catch (NullPointerException e) {
-            // Do nothing
         }
     }
 }
@@ -6,9 +6,6 @@ import org.onlab.packet.IpAddress;
 import org.onosproject.cli.AbstractShellCommand;
 import org.onosproject.incubator.net.virtual.NetworkId;
 import org.xzk.network_slicing.NetworkSlicing;
-import org.xzk.network_slicing.models.FlowPair;
-
-import java.util.NoSuchElementException;
 
 @Command(scope = "onos", name = "ns-delete-forbidden-Traffic",
         description = "Deletes a forbidden flow within a specific virtual network")
@@ -33,18 +30,9 @@ public class ForbiddenTrafficDeleteCommand extends AbstractShellCommand {
         IpAddress host1 = IpAddress.valueOf(host1Ip);
         IpAddress host2 = IpAddress.valueOf(host2Ip);
 
-        FlowPair flowPair1 = new FlowPair(host1, host2);
-        FlowPair flowPair2 = new FlowPair(host2, host1);
-
-        try {
-            if (NetworkSlicing.forbiddenTraffic.containsKey(netId)) {
-                NetworkSlicing.forbiddenTraffic.get(netId).remove(flowPair1);
-                NetworkSlicing.forbiddenTraffic.get(netId).remove(flowPair2);
-                print("Forbidden traffic removed!");
-            } else {
-                print("Forbidden traffic does not exists!");
-            }
-        } catch (NoSuchElementException e) {
+        if (NetworkSlicing.forbiddenTraffic.remove(netId, host1, host2)) {
+            print("Forbidden traffic removed!");
+        } else {
             print("Forbidden traffic does not exists!");
         }
 
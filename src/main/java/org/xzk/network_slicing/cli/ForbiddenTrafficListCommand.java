@@ -7,7 +7,7 @@ import org.onosproject.incubator.net.virtual.NetworkId;
 import org.xzk.network_slicing.NetworkSlicing;
 import org.xzk.network_slicing.models.FlowPair;
 
-import java.util.List;
+import java.util.Set;
 
 @Command(scope = "onos", name = "ns-list-forbidden-Traffic",
         description = "List forbidden flows within a specific virtual network")
@@ -22,8 +22,8 @@ public class ForbiddenTrafficListCommand extends AbstractShellCommand {
 
         NetworkId netId = NetworkId.networkId(networkId);
 
-        List<FlowPair> flowPairs = NetworkSlicing.forbiddenTraffic.get(netId);
-        if (flowPairs == null) {
+        Set<FlowPair> flowPairs = NetworkSlicing.forbiddenTraffic.getForbiddenPairs(netId);
+        if (flowPairs.isEmpty()) {
             return;
         }
 
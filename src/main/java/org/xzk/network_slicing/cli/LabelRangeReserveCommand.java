@@ -0,0 +1,51 @@
+package org.xzk.network_slicing.cli;
+
+import org.apache.karaf.shell.commands.Argument;
+import org.apache.karaf.shell.commands.Command;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.net.DeviceId;
+import org.xzk.network_slicing.NetworkSlicing;
+import org.xzk.network_slicing.models.MplsLabelPool;
+
+@Command(scope = "onos", name = "ns-reserve-labels",
+        description = "Reserves an MPLS label range on a device, for a virtual network or for static labels")
+public class LabelRangeReserveCommand extends AbstractShellCommand {
+
+    @Argument(index = 0, name = "deviceId", description = "Device ID",
+            required = true, multiValued = false)
+    String deviceId = null;
+
+    @Argument(index = 1, name = "from", description = "First label of the range",
+            required = true, multiValued = false)
+    Integer from = null;
+
+    @Argument(index = 2, name = "to", description = "Last label of the range",
+            required = true, multiValued = false)
+    Integer to = null;
+
+    @Argument(index = 3, name = "networkId", description = "Network ID, static labels if omitted",
+            required = false, multiValued = false)
+    Long networkId = null;
+
+    @Override
+    protected void execute() {
+        if (from < MplsLabelPool.MIN_LABEL || to > MplsLabelPool.MAX_LABEL || from > to) {
+            print("Invalid label range!");
+            return;
+        }
+
+        MplsLabelPool labelPool = NetworkSlicing.mplsLabelPool
+                .computeIfAbsent(DeviceId.deviceId(deviceId), k -> new MplsLabelPool());
+
+        boolean isReserved = networkId == null ?
+                labelPool.reserveStaticRange(from, to) :
+                labelPool.reserveNetworkRange(NetworkId.networkId(networkId), from, to);
+
+        if (isReserved) {
+            print("Label range reserved successfully!");
+        } else {
+            print("Label range overlaps labels in use or an existing reservation!");
+        }
+    }
+}
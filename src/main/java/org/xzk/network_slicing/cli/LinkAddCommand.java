@@ -12,6 +12,7 @@ import org.onosproject.net.DeviceId;
 import org.onosproject.net.Link;
 import org.onosproject.net.PortNumber;
 import org.onosproject.net.link.LinkService;
+import org.xzk.network_slicing.NetworkSlicing;
 
 import java.util.Set;
 
@@ -55,6 +56,7 @@ public class LinkAddCommand extends AbstractShellCommand {
 
                 virtualNetworkAdminService.createVirtualLink(NetworkId.networkId(networkId), src, dst);
                 virtualNetworkAdminService.createVirtualLink(NetworkId.networkId(networkId), dst, src);
+                NetworkSlicing.virtualTopologyCache.invalidate(NetworkId.networkId(networkId));
                 print("Link added!");
             } else {
                 print("Link does not exists!");
@@ -0,0 +1,36 @@
+package org.xzk.network_slicing.cli;
+
+import org.apache.karaf.shell.commands.Command;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.incubator.net.virtual.TenantId;
+import org.xzk.network_slicing.NetworkSlicing;
+import org.xzk.network_slicing.models.PacketInCounters;
+
+import java.util.Map;
+
+@Command(scope = "onos", name = "ns-packet-in-stats",
+        description = "Shows the packet ins accepted, throttled, queued and dropped per virtual network and the tenant weights")
+public class PacketInStatsCommand extends AbstractShellCommand {
+
+    @Override
+    protected void execute() {
+        Map<NetworkId, long[]> queueStats = NetworkSlicing.packetInScheduler.getQueueStats();
+        for (Map.Entry<NetworkId, PacketInCounters> entry :
+                NetworkSlicing.packetInRateLimiter.getCounters().entrySet()) {
+            PacketInCounters counters = entry.getValue();
+            long[] queue = queueStats.getOrDefault(entry.getKey(), new long[2]);
+            print("NetworkID = " + entry.getKey() +
+                    " accepted=" + counters.getAccepted() +
+                    " networkThrottled=" + counters.getNetworkThrottled() +
+                    " portThrottled=" + counters.getPortThrottled() +
+                    " portsBlocked=" + counters.getPortsBlocked() +
+                    " queued=" + queue[0] +
+                    " queueDropped=" + queue[1]);
+        }
+
+        for (Map.Entry<TenantId, Integer> entry : NetworkSlicing.packetInScheduler.getWeights().entrySet()) {
+            print("TenantID = " + entry.getKey() + " weight=" + entry.getValue());
+        }
+    }
+}
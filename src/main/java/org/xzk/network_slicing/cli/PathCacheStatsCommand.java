@@ -0,0 +1,26 @@
+package org.xzk.network_slicing.cli;
+
+import org.apache.karaf.shell.commands.Command;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.xzk.network_slicing.NetworkSlicing;
+import org.xzk.network_slicing.helper.ShortestPathCache;
+
+@Command(scope = "onos", name = "ns-path-cache-stats",
+        description = "Displays the shortest path cache statistics")
+public class PathCacheStatsCommand extends AbstractShellCommand {
+
+    @Override
+    protected void execute() {
+        ShortestPathCache shortestPathCache = NetworkSlicing.shortestPathCache;
+
+        print("========== Path Cache ==========");
+        print("Hits: " + shortestPathCache.getHits());
+        print("Misses: " + shortestPathCache.getMisses());
+        print("Invalidated paths: " + shortestPathCache.getInvalidations());
+
+        for (NetworkId networkId : shortestPathCache.getNetworkIds()) {
+            print("NetworkID = " + networkId + " Cached paths: " + shortestPathCache.getCachedPathCount(networkId));
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.xzk.network_slicing.cli;
+
+import org.apache.karaf.shell.commands.Argument;
+import org.apache.karaf.shell.commands.Command;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.xzk.network_slicing.NetworkSlicing;
+
+@Command(scope = "onos", name = "ns-set-protection",
+        description = "Enables or disables link disjoint backup paths with fast failover for new flows of a virtual network")
+public class PathProtectionSetCommand extends AbstractShellCommand {
+
+    @Argument(index = 0, name = "networkId", description = "Network ID",
+            required = true, multiValued = false)
+    Long networkId = null;
+
+    @Argument(index = 1, name = "enabled", description = "true or false",
+            required = true, multiValued = false)
+    Boolean enabled = null;
+
+    @Override
+    protected void execute() {
+        NetworkSlicing.failoverGroups.setProtected(NetworkId.networkId(networkId), enabled);
+        print("Path protection " + (enabled ? "enabled" : "disabled") + " for network " + networkId + "!");
+    }
+}
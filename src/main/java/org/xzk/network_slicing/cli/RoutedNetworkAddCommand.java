@@ -40,10 +40,10 @@ public class RoutedNetworkAddCommand extends AbstractShellCommand {
 
         if (routedNetworkAddress != null && gatewayAddress != null) {
             if (routedNetworkAddress.contains(gatewayAddress)) {
-                if (!NetworkSlicing.tenantRoutedNetworks.containsKey(_networkId)) {
-                    NetworkSlicing.tenantRoutedNetworks.put(_networkId, new RoutedNetworks());
-                }
-                NetworkSlicing.tenantRoutedNetworks.get(_networkId).networkGateway.put(routedNetworkAddress, gatewayAddress);
+                NetworkSlicing.tenantRoutedNetworks
+                        .computeIfAbsent(_networkId, k -> new RoutedNetworks())
+                        .addRoute(routedNetworkAddress, gatewayAddress);
+                NetworkSlicing.arpResponders.gatewayAdded(_networkId, gatewayAddress);
                 print("Routed network entry added successfully!");
             } else {
                 print("Gateway does not belong to the specified network!");
@@ -0,0 +1,50 @@
+package org.xzk.network_slicing.cli;
+
+import org.apache.karaf.shell.commands.Argument;
+import org.apache.karaf.shell.commands.Command;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.IpPrefix;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.xzk.network_slicing.NetworkSlicing;
+import org.xzk.network_slicing.models.RoutedNetworks;
+
+@Command(scope = "onos", name = "ns-delete-routed-network",
+        description = "Deletes a routed network from a virtual network")
+public class RoutedNetworkDeleteCommand extends AbstractShellCommand {
+
+    @Argument(index = 0, name = "networkId", description = "Network ID",
+            required = true, multiValued = false)
+    Long networkId = null;
+
+    @Argument(index = 1, name = "networkCidr", description = "Routed Network in CIDR Notation",
+            required = true, multiValued = false)
+    String networkCidr = null;
+
+    @Override
+    protected void execute() {
+        NetworkId _networkId = NetworkId.networkId(networkId);
+        IpPrefix routedNetworkAddress = null;
+
+        try {
+            routedNetworkAddress = IpPrefix.valueOf(networkCidr);
+        } catch (IllegalArgumentException e) {
+            error(e.toString());
+        }
+
+        if (routedNetworkAddress != null) {
+            RoutedNetworks routedNetworks = NetworkSlicing.tenantRoutedNetworks.get(_networkId);
+            IpAddress gatewayAddress = routedNetworks == null ? null : routedNetworks.getGateway(routedNetworkAddress);
+            if (gatewayAddress != null && routedNetworks.removeRoute(routedNetworkAddress)) {
+                // The gateway may still serve another routed network
+                if (!routedNetworks.isGateway(gatewayAddress)) {
+                    NetworkSlicing.arpResponders.gatewayRemoved(_networkId, gatewayAddress);
+                }
+                NetworkSlicing.tenantRoutedNetworks.computeIfPresent(_networkId, (k, v) -> v.isEmpty() ? null : v);
+                print("Routed network entry deleted successfully!");
+            } else {
+                print("Routed network entry not found!");
+            }
+        }
+    }
+}
@@ -12,7 +12,7 @@ import org.xzk.network_slicing.models.RoutedNetworks;
 import java.util.Map;
 
 @Command(scope = "onos", name = "ns-list-routed-network",
-        description = "Adds a routed network to a virtual network")
+        description = "Lists the routed networks of a virtual network and their gateways")
 public class RoutedNetworkListCommand extends AbstractShellCommand {
 
     @Argument(index = 0, name = "networkId", description = "Network ID",
@@ -22,12 +22,10 @@ public class RoutedNetworkListCommand extends AbstractShellCommand {
     @Override
     protected void execute() {
         NetworkId _networkId = NetworkId.networkId(networkId);
-        if (NetworkSlicing.tenantRoutedNetworks.containsKey(_networkId)) {
-            RoutedNetworks routedNetworks = NetworkSlicing.tenantRoutedNetworks.get(_networkId);
-            if (routedNetworks.networkGateway != null) {
-                for (Map.Entry<IpPrefix, IpAddress> networks : routedNetworks.networkGateway.entrySet()) {
-                    print("Network Address: " + networks.getKey().toString() + " Gateway: " + networks.getValue().toString());
-                }
+        RoutedNetworks routedNetworks = NetworkSlicing.tenantRoutedNetworks.get(_networkId);
+        if (routedNetworks != null) {
+            for (Map.Entry<IpPrefix, IpAddress> networks : routedNetworks.getRoutes().entrySet()) {
+                print("Network Address: " + networks.getKey().toString() + " Gateway: " + networks.getValue().toString());
             }
         }
     }
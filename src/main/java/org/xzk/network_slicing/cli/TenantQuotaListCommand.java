@@ -0,0 +1,39 @@
+package org.xzk.network_slicing.cli;
+
+import org.apache.karaf.shell.commands.Argument;
+import org.apache.karaf.shell.commands.Command;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.net.DeviceId;
+import org.xzk.network_slicing.NetworkSlicing;
+import org.xzk.network_slicing.helper.TenantQuotaManager;
+import org.xzk.network_slicing.models.ResourceUsage;
+import org.xzk.network_slicing.models.TenantQuota;
+
+import java.util.Map;
+
+@Command(scope = "onos", name = "ns-list-quota",
+        description = "Lists the quota, usage per device and admission counters of a virtual network")
+public class TenantQuotaListCommand extends AbstractShellCommand {
+
+    @Argument(index = 0, name = "networkId", description = "Network ID",
+            required = true, multiValued = false)
+    Long networkId = null;
+
+    @Override
+    protected void execute() {
+        NetworkId _networkId = NetworkId.networkId(networkId);
+        TenantQuotaManager tenantQuotaManager = NetworkSlicing.tenantQuotaManager;
+
+        print("========== Quota (NetworkID = " + networkId + ") ==========");
+
+        TenantQuota quota = tenantQuotaManager.getQuota(_networkId);
+        print("Quota: " + (quota == null ? "none" : quota.toString()));
+        print("Admitted flows: " + tenantQuotaManager.getAdmitted(_networkId));
+        print("Rejected flows: " + tenantQuotaManager.getRejected(_networkId));
+
+        for (Map.Entry<DeviceId, ResourceUsage> entry : tenantQuotaManager.getUsage(_networkId).entrySet()) {
+            print(entry.getKey().toString() + " " + entry.getValue().toString());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.xzk.network_slicing.cli;
+
+import org.apache.karaf.shell.commands.Argument;
+import org.apache.karaf.shell.commands.Command;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.xzk.network_slicing.NetworkSlicing;
+import org.xzk.network_slicing.models.TenantQuota;
+
+@Command(scope = "onos", name = "ns-set-quota",
+        description = "Sets the per device label, rule and flow quota of a virtual network, 0 means unlimited")
+public class TenantQuotaSetCommand extends AbstractShellCommand {
+
+    @Argument(index = 0, name = "networkId", description = "Network ID",
+            required = true, multiValued = false)
+    Long networkId = null;
+
+    @Argument(index = 1, name = "maxLabels", description = "Maximum MPLS labels per device",
+            required = true, multiValued = false)
+    Integer maxLabels = null;
+
+    @Argument(index = 2, name = "maxRules", description = "Maximum flow rules per device",
+            required = true, multiValued = false)
+    Integer maxRules = null;
+
+    @Argument(index = 3, name = "maxFlows", description = "Maximum flows crossing a device",
+            required = true, multiValued = false)
+    Integer maxFlows = null;
+
+    @Override
+    protected void execute() {
+        NetworkId _networkId = NetworkId.networkId(networkId);
+
+        if (maxLabels == 0 && maxRules == 0 && maxFlows == 0) {
+            NetworkSlicing.tenantQuotaManager.removeQuota(_networkId);
+            print("Quota removed!");
+        } else {
+            NetworkSlicing.tenantQuotaManager.setQuota(_networkId, new TenantQuota(maxLabels, maxRules, maxFlows));
+            print("Quota set successfully!");
+        }
+    }
+}
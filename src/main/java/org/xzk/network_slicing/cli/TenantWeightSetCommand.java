@@ -0,0 +1,30 @@
+package org.xzk.network_slicing.cli;
+
+import org.apache.karaf.shell.commands.Argument;
+import org.apache.karaf.shell.commands.Command;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.incubator.net.virtual.TenantId;
+import org.xzk.network_slicing.NetworkSlicing;
+
+@Command(scope = "onos", name = "ns-set-tenant-weight",
+        description = "Sets how many packet ins the networks of a tenant may process per scheduling round")
+public class TenantWeightSetCommand extends AbstractShellCommand {
+
+    @Argument(index = 0, name = "tenantId", description = "Tenant ID",
+            required = true, multiValued = false)
+    String tenantId = null;
+
+    @Argument(index = 1, name = "weight", description = "Packet ins per round, at least 1",
+            required = true, multiValued = false)
+    Integer weight = null;
+
+    @Override
+    protected void execute() {
+        try {
+            NetworkSlicing.packetInScheduler.setWeight(TenantId.tenantId(tenantId), weight);
+            print("Tenant weight set successfully!");
+        } catch (IllegalArgumentException e) {
+            print(e.getMessage());
+        }
+    }
+}
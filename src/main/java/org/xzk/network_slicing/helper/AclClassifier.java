@@ -0,0 +1,99 @@
+package org.xzk.network_slicing.helper;
+
+import org.xzk.network_slicing.models.AclRule;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Hierarchical trie over an ordered ACL: a binary trie on the source prefixes, where every node ending a source
+// prefix holds a binary trie on the destination prefixes of its entries. A lookup walks the source address and,
+// at each source prefix on the way, the destination address, then checks protocol and ports of the entries
+// found. The first entry in list order wins. At most 33 x 33 trie steps, whatever the number of entries.
+// Built once per ACL change and read-only afterwards.
+public class AclClassifier {
+
+    private final Node root;
+
+    public AclClassifier(List<AclRule> rules) {
+        root = new Node();
+        for (int order = 0; order < rules.size(); order++) {
+            AclRule rule = rules.get(order);
+
+            Node srcNode = walk(root, rule.getSrcAddress(), rule.getSrcLength());
+            if (srcNode.dstTrie == null) srcNode.dstTrie = new Node();
+
+            Node dstNode = walk(srcNode.dstTrie, rule.getDstAddress(), rule.getDstLength());
+            if (dstNode.entries == null) dstNode.entries = new ArrayList<>();
+
+            // Added in list order, so the entries of a node stay sorted
+            dstNode.entries.add(new Entry(order, rule));
+        }
+    }
+
+    // First matching entry, or null if none matches
+    public AclRule classify(int srcAddress, int dstAddress, byte protocol, int srcPort, int dstPort) {
+        Entry best = null;
+
+        Node srcNode = root;
+        for (int bit = 0; srcNode != null; bit++) {
+            if (srcNode.dstTrie != null) {
+                best = classifyDst(srcNode.dstTrie, dstAddress, protocol, srcPort, dstPort, best);
+            }
+            if (bit == 32) break;
+            srcNode = isSet(srcAddress, bit) ? srcNode.one : srcNode.zero;
+        }
+        return best == null ? null : best.rule;
+    }
+
+    private static Entry classifyDst(Node dstNode, int dstAddress, byte protocol, int srcPort, int dstPort,
+                                     Entry best) {
+        for (int bit = 0; dstNode != null; bit++) {
+            if (dstNode.entries != null) {
+                for (Entry entry : dstNode.entries) {
+                    if (best != null && entry.order >= best.order) break;
+                    if (entry.rule.matchesTransport(protocol, srcPort, dstPort)) {
+                        best = entry;
+                        break;
+                    }
+                }
+            }
+            if (bit == 32) break;
+            dstNode = isSet(dstAddress, bit) ? dstNode.one : dstNode.zero;
+        }
+        return best;
+    }
+
+    private static Node walk(Node node, int address, int length) {
+        for (int bit = 0; bit < length; bit++) {
+            if (isSet(address, bit)) {
+                if (node.one == null) node.one = new Node();
+                node = node.one;
+            } else {
+                if (node.zero == null) node.zero = new Node();
+                node = node.zero;
+            }
+        }
+        return node;
+    }
+
+    private static boolean isSet(int address, int bit) {
+        return ((address >>> (31 - bit)) & 1) != 0;
+    }
+
+    private static class Node {
+        private Node zero;
+        private Node one;
+        private Node dstTrie;
+        private List<Entry> entries;
+    }
+
+    private static class Entry {
+        private final int order;
+        private final AclRule rule;
+
+        Entry(int order, AclRule rule) {
+            this.order = order;
+            this.rule = rule;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.xzk.network_slicing.helper;
+
+import org.onlab.packet.ARP;
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.MacAddress;
+import org.onosproject.incubator.net.virtual.NetworkId;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Serialized ARP replies per (NetworkId, target IP). Only the requester's addresses differ between two replies
+// for the same target, so they are copied into a copy of the template instead of building and serializing a
+// new Ethernet/ ARP packet for every request. A template is rebuilt when the target's MAC address changes.
+public class ArpReplyCache {
+
+    private static final int MAC_LENGTH = 6;
+    private static final int IP4_LENGTH = 4;
+
+    // Untagged Ethernet header followed by the ARP payload
+    private static final int ETH_DST_OFFSET = 0;
+    private static final int ETH_SRC_OFFSET = 6;
+    private static final int THA_OFFSET = 32;
+    private static final int TPA_OFFSET = 38;
+    private static final int REPLY_LENGTH = 42;
+
+    private final ConcurrentHashMap<NetworkId, ConcurrentHashMap<Ip4Address, byte[]>> templates;
+
+    public ArpReplyCache() {
+        this.templates = new ConcurrentHashMap<>();
+    }
+
+    // Reply from the target to the sender of the request, null if the request is not a plain untagged IPv4 ARP
+    public byte[] buildReply(NetworkId networkId, Ip4Address target, MacAddress targetMac, Ethernet request) {
+        if (request.getVlanID() != Ethernet.VLAN_UNTAGGED) return null;
+
+        ARP arpRequest = (ARP) request.getPayload();
+        byte[] senderMac = arpRequest.getSenderHardwareAddress();
+        byte[] senderIp = arpRequest.getSenderProtocolAddress();
+        if (senderMac.length != MAC_LENGTH || senderIp.length != IP4_LENGTH) return null;
+
+        byte[] template = getTemplate(networkId, target, targetMac);
+
+        // The emit is asynchronous, so every reply gets its own buffer
+        byte[] reply = Arrays.copyOf(template, REPLY_LENGTH);
+        System.arraycopy(request.getSourceMACAddress(), 0, reply, ETH_DST_OFFSET, MAC_LENGTH);
+        System.arraycopy(senderMac, 0, reply, THA_OFFSET, MAC_LENGTH);
+        System.arraycopy(senderIp, 0, reply, TPA_OFFSET, IP4_LENGTH);
+        return reply;
+    }
+
+    public void removeNetwork(NetworkId networkId) {
+        templates.remove(networkId);
+    }
+
+    private byte[] getTemplate(NetworkId networkId, Ip4Address target, MacAddress targetMac) {
+        ConcurrentHashMap<Ip4Address, byte[]> networkTemplates =
+                templates.computeIfAbsent(networkId, k -> new ConcurrentHashMap<>());
+
+        byte[] targetMacBytes = targetMac.toBytes();
+        byte[] template = networkTemplates.get(target);
+        if (template == null || !hasSource(template, targetMacBytes)) {
+            template = newTemplate(target, targetMacBytes);
+            networkTemplates.put(target, template);
+        }
+        return template;
+    }
+
+    private static boolean hasSource(byte[] template, byte[] mac) {
+        for (int i = 0; i < MAC_LENGTH; i++) {
+            if (template[ETH_SRC_OFFSET + i] != mac[i]) return false;
+        }
+        return true;
+    }
+
+    private static byte[] newTemplate(Ip4Address target, byte[] targetMac) {
+        ByteBuffer buffer = ByteBuffer.allocate(REPLY_LENGTH);
+        buffer.put(new byte[MAC_LENGTH]);
+        buffer.put(targetMac);
+        buffer.putShort(Ethernet.TYPE_ARP);
+
+        buffer.putShort(ARP.HW_TYPE_ETHERNET);
+        buffer.putShort(ARP.PROTO_TYPE_IP);
+        buffer.put((byte) MAC_LENGTH);
+        buffer.put((byte) IP4_LENGTH);
+        buffer.putShort(ARP.OP_REPLY);
+        buffer.put(targetMac);
+        buffer.putInt(target.toInt());
+        return buffer.array();
+    }
+}
@@ -0,0 +1,289 @@
+package org.xzk.network_slicing.helper;
+
+import org.onlab.packet.ARP;
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.MacAddress;
+import org.onlab.util.ItemNotFoundException;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.incubator.net.virtual.VirtualHost;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.behaviour.ExtensionTreatmentResolver;
+import org.onosproject.net.driver.DriverHandler;
+import org.onosproject.net.driver.DriverService;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleService;
+import org.onosproject.net.flow.TrafficSelector;
+import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.flow.instructions.ExtensionTreatment;
+import org.onosproject.net.flow.instructions.ExtensionTreatmentType.ExtensionTreatmentTypes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.onosproject.net.flow.instructions.ExtensionTreatmentType.ExtensionTreatmentTypes.NICIRA_MOV_ARP_SHA_TO_THA;
+import static org.onosproject.net.flow.instructions.ExtensionTreatmentType.ExtensionTreatmentTypes.NICIRA_MOV_ARP_SPA_TO_TPA;
+import static org.onosproject.net.flow.instructions.ExtensionTreatmentType.ExtensionTreatmentTypes.NICIRA_MOV_ETH_SRC_TO_DST;
+
+// Answers ARP requests for known hosts and gateways in the switches. Each edge port bound to a network gets one
+// rule per known IPv4 target, turning the request into a reply sent back out of the port. Requests for unknown
+// targets still go up to the controller.
+//
+// Plain OpenFlow can set but not copy header fields, so the reply moves the sender addresses of the request into
+// its destination and target fields with the Nicira move extensions. Only switches whose driver resolves them
+// get responder rules, the others keep sending ARP requests to the controller. Gratuitous ARPs and address
+// conflict probes are never answered in the switch and still reach the controller, which sees host moves.
+public class ArpResponder {
+
+    // Above the ARP intercept of the packet service
+    public static final int ARP_RESPONDER_PRIORITY = 900;
+    // Above the responder rules, sends gratuitous ARPs and probes to the controller
+    public static final int ARP_PUNT_PRIORITY = ARP_RESPONDER_PRIORITY + 1;
+
+    private static final Ip4Address UNSPECIFIED_ADDRESS = Ip4Address.valueOf(0);
+
+    // Reply destination and target fields from the request's source and sender ones, in this order
+    private static final ExtensionTreatmentTypes[] MOVES = {
+            NICIRA_MOV_ETH_SRC_TO_DST, NICIRA_MOV_ARP_SHA_TO_THA, NICIRA_MOV_ARP_SPA_TO_TPA};
+
+    private final FlowRuleService flowRuleService;
+    private final DriverService driverService;
+    private final ApplicationId appId;
+    private final IngressPortIndex ingressPortIndex;
+    private final MacAddress gatewayMac;
+
+    private final ConcurrentHashMap<NetworkId, NetworkTargets> networkTargets;
+    private volatile boolean enabled;
+
+    public ArpResponder(FlowRuleService flowRuleService, DriverService driverService, ApplicationId appId,
+                        IngressPortIndex ingressPortIndex, MacAddress gatewayMac, boolean enabled) {
+        this.flowRuleService = flowRuleService;
+        this.driverService = driverService;
+        this.appId = appId;
+        this.ingressPortIndex = ingressPortIndex;
+        this.gatewayMac = gatewayMac;
+        this.enabled = enabled;
+        this.networkTargets = new ConcurrentHashMap<>();
+    }
+
+    public void hostAdded(NetworkId networkId, VirtualHost virtualHost) {
+        for (IpAddress ipAddress : virtualHost.ipAddresses()) {
+            if (ipAddress.isIp4()) addTarget(networkId, ipAddress.getIp4Address(), virtualHost.mac());
+        }
+    }
+
+    public void gatewayAdded(NetworkId networkId, IpAddress gateway) {
+        if (gateway.isIp4()) addTarget(networkId, gateway.getIp4Address(), gatewayMac);
+    }
+
+    public void hostRemoved(NetworkId networkId, VirtualHost virtualHost) {
+        for (IpAddress ipAddress : virtualHost.ipAddresses()) {
+            if (ipAddress.isIp4()) removeTarget(networkId, ipAddress.getIp4Address(), virtualHost.mac());
+        }
+    }
+
+    // Only once no routed network of the virtual network uses the gateway any more
+    public void gatewayRemoved(NetworkId networkId, IpAddress gateway) {
+        if (gateway.isIp4()) removeTarget(networkId, gateway.getIp4Address(), gatewayMac);
+    }
+
+    // Edge ports of the network changed
+    public synchronized void refresh(NetworkId networkId) {
+        NetworkTargets targets = networkTargets.get(networkId);
+        if (targets == null || !enabled) return;
+
+        List<ConnectPoint> edgePorts = ingressPortIndex.getEdgePorts(networkId);
+        Map<DeviceId, ExtensionTreatment[]> moves = resolveMoves(edgePorts);
+        installProbeRules(targets, edgePorts, moves);
+        for (Map.Entry<Ip4Address, MacAddress> target : targets.macs.entrySet()) {
+            install(targets, target.getKey(), target.getValue(), edgePorts, moves);
+        }
+    }
+
+    // Disabling sends all ARP requests to the controller again
+    public synchronized void setEnabled(boolean enabled) {
+        if (this.enabled == enabled) return;
+        this.enabled = enabled;
+
+        for (Map.Entry<NetworkId, NetworkTargets> entry : networkTargets.entrySet()) {
+            if (enabled) {
+                refresh(entry.getKey());
+            } else {
+                removeRules(entry.getValue());
+            }
+        }
+    }
+
+    public synchronized void removeNetwork(NetworkId networkId) {
+        NetworkTargets targets = networkTargets.remove(networkId);
+        if (targets != null) removeRules(targets);
+    }
+
+    private synchronized void addTarget(NetworkId networkId, Ip4Address ipAddress, MacAddress macAddress) {
+        NetworkTargets targets = networkTargets.computeIfAbsent(networkId, k -> new NetworkTargets());
+        if (macAddress.equals(targets.macs.put(ipAddress, macAddress)) || !enabled) return;
+
+        List<ConnectPoint> edgePorts = ingressPortIndex.getEdgePorts(networkId);
+        Map<DeviceId, ExtensionTreatment[]> moves = resolveMoves(edgePorts);
+        installProbeRules(targets, edgePorts, moves);
+        install(targets, ipAddress, macAddress, edgePorts, moves);
+    }
+
+    // Unless the address was taken over by another MAC meanwhile
+    private synchronized void removeTarget(NetworkId networkId, Ip4Address ipAddress, MacAddress macAddress) {
+        NetworkTargets targets = networkTargets.get(networkId);
+        if (targets == null || !targets.macs.remove(ipAddress, macAddress)) return;
+
+        List<FlowRule> flowRules = targets.rules.remove(ipAddress);
+        if (flowRules != null) replace(flowRules, Collections.emptyList());
+    }
+
+    // Switch ---> the moves building the reply on it, for the switches of the edge ports whose driver has them
+    private Map<DeviceId, ExtensionTreatment[]> resolveMoves(List<ConnectPoint> edgePorts) {
+        Map<DeviceId, ExtensionTreatment[]> moves = new HashMap<>();
+        Set<DeviceId> unsupported = new HashSet<>();
+        for (ConnectPoint edgePort : edgePorts) {
+            DeviceId deviceId = edgePort.deviceId();
+            if (moves.containsKey(deviceId) || unsupported.contains(deviceId)) continue;
+
+            ExtensionTreatment[] deviceMoves = resolveMoves(deviceId);
+            if (deviceMoves != null) moves.put(deviceId, deviceMoves); else unsupported.add(deviceId);
+        }
+        return moves;
+    }
+
+    private ExtensionTreatment[] resolveMoves(DeviceId deviceId) {
+        try {
+            DriverHandler handler = driverService.createHandler(deviceId);
+            if (!handler.hasBehaviour(ExtensionTreatmentResolver.class)) return null;
+
+            ExtensionTreatmentResolver resolver = handler.behaviour(ExtensionTreatmentResolver.class);
+            ExtensionTreatment[] moves = new ExtensionTreatment[MOVES.length];
+            for (int i = 0; i < MOVES.length; i++) {
+                moves[i] = resolver.getExtensionInstruction(MOVES[i].type());
+                if (moves[i] == null) return null;
+            }
+            return moves;
+        } catch (ItemNotFoundException | UnsupportedOperationException e) {
+            // No driver, or one without the Nicira extensions
+            return null;
+        }
+    }
+
+    // Replaces the rules of a target
+    private void install(NetworkTargets targets, Ip4Address ipAddress, MacAddress macAddress,
+                         List<ConnectPoint> edgePorts, Map<DeviceId, ExtensionTreatment[]> moves) {
+        List<FlowRule> flowRules = new ArrayList<>(2 * edgePorts.size());
+        for (ConnectPoint edgePort : edgePorts) {
+            ExtensionTreatment[] deviceMoves = moves.get(edgePort.deviceId());
+            if (deviceMoves == null) continue;
+
+            flowRules.add(responderRule(edgePort, ipAddress, macAddress, deviceMoves));
+            // The target announcing its own address
+            flowRules.add(puntRule(edgePort, ipAddress, ipAddress));
+        }
+        replace(targets.rules.put(ipAddress, flowRules), flowRules);
+    }
+
+    // Address conflict probes carry no sender protocol address, one rule per port covers all targets
+    private void installProbeRules(NetworkTargets targets, List<ConnectPoint> edgePorts,
+                                   Map<DeviceId, ExtensionTreatment[]> moves) {
+        List<FlowRule> flowRules = new ArrayList<>(edgePorts.size());
+        for (ConnectPoint edgePort : edgePorts) {
+            if (moves.containsKey(edgePort.deviceId())) flowRules.add(puntRule(edgePort, UNSPECIFIED_ADDRESS, null));
+        }
+        replace(targets.probeRules, flowRules);
+        targets.probeRules = flowRules;
+    }
+
+    // Touches only the rules that changed
+    private void replace(List<FlowRule> previous, List<FlowRule> flowRules) {
+        Set<FlowRule> removed = previous == null ? Collections.emptySet() : new HashSet<>(previous);
+        List<FlowRule> added = new ArrayList<>();
+        for (FlowRule flowRule : flowRules) {
+            if (!removed.remove(flowRule)) added.add(flowRule);
+        }
+
+        if (!removed.isEmpty()) flowRuleService.removeFlowRules(removed.toArray(new FlowRule[0]));
+        if (!added.isEmpty()) flowRuleService.applyFlowRules(added.toArray(new FlowRule[0]));
+    }
+
+    private void removeRules(NetworkTargets targets) {
+        List<FlowRule> flowRules = new ArrayList<>(targets.probeRules);
+        for (List<FlowRule> rules : targets.rules.values()) flowRules.addAll(rules);
+        targets.rules.clear();
+        targets.probeRules = Collections.emptyList();
+
+        if (!flowRules.isEmpty()) flowRuleService.removeFlowRules(flowRules.toArray(new FlowRule[0]));
+    }
+
+    private FlowRule responderRule(ConnectPoint edgePort, Ip4Address ipAddress, MacAddress macAddress,
+                                   ExtensionTreatment[] moves) {
+        TrafficSelector selector = DefaultTrafficSelector.builder()
+                .matchInPort(edgePort.port())
+                .matchEthType(Ethernet.TYPE_ARP)
+                .matchArpOp(ARP.OP_REQUEST)
+                .matchArpTpa(ipAddress)
+                .build();
+
+        // Moves first, they read the fields of the request that the sets overwrite
+        TrafficTreatment treatment = DefaultTrafficTreatment.builder()
+                .extension(moves[0], edgePort.deviceId())
+                .extension(moves[1], edgePort.deviceId())
+                .extension(moves[2], edgePort.deviceId())
+                .setEthSrc(macAddress)
+                .setArpOp(ARP.OP_REPLY)
+                .setArpSha(macAddress)
+                .setArpSpa(ipAddress)
+                .setOutput(PortNumber.IN_PORT)
+                .build();
+
+        return DefaultFlowRule.builder()
+                .withSelector(selector)
+                .withTreatment(treatment)
+                .withPriority(ARP_RESPONDER_PRIORITY)
+                .makePermanent()
+                .fromApp(appId)
+                .forDevice(edgePort.deviceId())
+                .build();
+    }
+
+    // Requests from the sender protocol address, and for the target one if given, go to the controller
+    private FlowRule puntRule(ConnectPoint edgePort, Ip4Address senderAddress, Ip4Address targetAddress) {
+        TrafficSelector.Builder selector = DefaultTrafficSelector.builder()
+                .matchInPort(edgePort.port())
+                .matchEthType(Ethernet.TYPE_ARP)
+                .matchArpOp(ARP.OP_REQUEST)
+                .matchArpSpa(senderAddress);
+        if (targetAddress != null) selector.matchArpTpa(targetAddress);
+
+        return DefaultFlowRule.builder()
+                .withSelector(selector.build())
+                .withTreatment(DefaultTrafficTreatment.builder().punt().build())
+                .withPriority(ARP_PUNT_PRIORITY)
+                .makePermanent()
+                .fromApp(appId)
+                .forDevice(edgePort.deviceId())
+                .build();
+    }
+
+    private static class NetworkTargets {
+        // Guarded by the responder
+        private final Map<Ip4Address, MacAddress> macs = new HashMap<>();
+        private final Map<Ip4Address, List<FlowRule>> rules = new HashMap<>();
+        private List<FlowRule> probeRules = Collections.emptyList();
+    }
+}
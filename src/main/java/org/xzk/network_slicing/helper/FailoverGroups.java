@@ -0,0 +1,146 @@
+package org.xzk.network_slicing.helper;
+
+import org.onosproject.core.ApplicationId;
+import org.onosproject.core.GroupId;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.group.DefaultGroupDescription;
+import org.onosproject.net.group.DefaultGroupKey;
+import org.onosproject.net.group.GroupBucket;
+import org.onosproject.net.group.GroupBuckets;
+import org.onosproject.net.group.GroupDescription;
+import org.onosproject.net.group.GroupKey;
+import org.onosproject.net.group.GroupService;
+import org.xzk.network_slicing.models.NetworkFlowPair;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Fast failover groups of the flows with a backup path, and the networks whose flows get one.
+// Group ids are handed out per device from a range of their own. Rules pointing at the groups of a flow
+// are held back until all of them are reported added.
+public class FailoverGroups {
+
+    private static final int GROUP_ID_BASE = 0x4E530000;
+
+    private final GroupService groupService;
+    private final ApplicationId appId;
+
+    private final Set<NetworkId> protectedNetworks;
+    private final ConcurrentMap<DeviceId, AtomicInteger> nextGroupIds;
+    private final ConcurrentMap<NetworkFlowPair, List<GroupDescription>> flowGroups;
+    private final ConcurrentMap<GroupKey, PendingGroups> pendingGroups;
+
+    public FailoverGroups(GroupService groupService, ApplicationId appId) {
+        this.groupService = groupService;
+        this.appId = appId;
+        this.protectedNetworks = ConcurrentHashMap.newKeySet();
+        this.nextGroupIds = new ConcurrentHashMap<>();
+        this.flowGroups = new ConcurrentHashMap<>();
+        this.pendingGroups = new ConcurrentHashMap<>();
+    }
+
+    public void setProtected(NetworkId networkId, boolean isProtected) {
+        if (isProtected) {
+            protectedNetworks.add(networkId);
+        } else {
+            protectedNetworks.remove(networkId);
+        }
+    }
+
+    public boolean isProtected(NetworkId networkId) {
+        return protectedNetworks.contains(networkId);
+    }
+
+    public Set<NetworkId> getProtectedNetworks() {
+        return Collections.unmodifiableSet(protectedNetworks);
+    }
+
+    public GroupDescription buildGroup(DeviceId deviceId, List<GroupBucket> buckets) {
+        int groupId = nextGroupIds.computeIfAbsent(deviceId, k -> new AtomicInteger(GROUP_ID_BASE)).getAndIncrement();
+        return new DefaultGroupDescription(deviceId, GroupDescription.Type.FAILOVER, new GroupBuckets(buckets),
+                groupKey(deviceId, groupId), groupId, appId);
+    }
+
+    public static GroupId groupId(GroupDescription group) {
+        return new GroupId(group.givenGroupId());
+    }
+
+    // onAdded runs once every group is in place, onFailed instead if one of them could not be added
+    public void addGroups(NetworkFlowPair networkFlowPair, List<GroupDescription> groups,
+                          Runnable onAdded, Runnable onFailed) {
+        flowGroups.computeIfAbsent(networkFlowPair, k -> new CopyOnWriteArrayList<>()).addAll(groups);
+
+        // Registered first, the events may come back before addGroup returns
+        PendingGroups pending = new PendingGroups(groups.size(), onAdded, onFailed);
+        for (GroupDescription group : groups) {
+            pendingGroups.put(group.appCookie(), pending);
+        }
+        for (GroupDescription group : groups) {
+            groupService.addGroup(group);
+        }
+    }
+
+    public void groupAdded(GroupKey groupKey) {
+        PendingGroups pending = pendingGroups.remove(groupKey);
+        if (pending != null) pending.added();
+    }
+
+    public void groupFailed(GroupKey groupKey) {
+        PendingGroups pending = pendingGroups.remove(groupKey);
+        if (pending != null) pending.failed();
+    }
+
+    // Groups of the flow, no longer tracked afterwards
+    public List<GroupDescription> detachGroups(NetworkFlowPair networkFlowPair) {
+        List<GroupDescription> groups = flowGroups.remove(networkFlowPair);
+        return groups == null ? Collections.emptyList() : groups;
+    }
+
+    public void removeGroups(List<GroupDescription> groups) {
+        for (GroupDescription group : groups) {
+            pendingGroups.remove(group.appCookie());
+            groupService.removeGroup(group.deviceId(), group.appCookie(), appId);
+        }
+    }
+
+    public void removeAll() {
+        for (NetworkFlowPair networkFlowPair : new ArrayList<>(flowGroups.keySet())) {
+            removeGroups(detachGroups(networkFlowPair));
+        }
+    }
+
+    private static GroupKey groupKey(DeviceId deviceId, int groupId) {
+        return new DefaultGroupKey((deviceId + "/" + groupId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static class PendingGroups {
+        private final AtomicInteger remaining;
+        private final AtomicBoolean done;
+        private final Runnable onAdded;
+        private final Runnable onFailed;
+
+        PendingGroups(int count, Runnable onAdded, Runnable onFailed) {
+            this.remaining = new AtomicInteger(count);
+            this.done = new AtomicBoolean();
+            this.onAdded = onAdded;
+            this.onFailed = onFailed;
+        }
+
+        void added() {
+            if (remaining.decrementAndGet() == 0 && done.compareAndSet(false, true)) onAdded.run();
+        }
+
+        void failed() {
+            if (done.compareAndSet(false, true)) onFailed.run();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.xzk.network_slicing.helper;
+
+import org.onlab.packet.IpAddress;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.net.DeviceId;
+import org.xzk.network_slicing.models.DevicePair;
+import org.xzk.network_slicing.models.FecEntry;
+import org.xzk.network_slicing.models.FlowPair;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Per virtual network sink trees, egress device ---> (device ---> FecEntry), and the IP demultiplexing
+// entries at the egress devices. Entries are reference counted by the flows using them.
+public class FecLabelTable {
+
+    private final Map<NetworkId, Map<DeviceId, Map<DeviceId, FecEntry>>> sinkTrees;
+    private final Map<NetworkId, Map<IpAddress, FecEntry>> demuxEntries;
+    private final Map<NetworkId, Map<FlowPair, List<FecEntry>>> flowEntries;
+
+    public FecLabelTable() {
+        this.sinkTrees = new HashMap<>();
+        this.demuxEntries = new HashMap<>();
+        this.flowEntries = new HashMap<>();
+    }
+
+    // Entries from the device down to the egress, acquired for the flow. Empty if the device is not on the tree,
+    // or if the branch crosses an avoided edge or device: other flows may still hold entries over a failure
+    public synchronized List<FecEntry> acquireBranch(NetworkId networkId, FlowPair flowPair,
+                                                     DeviceId egressDeviceId, DeviceId deviceId,
+                                                     Set<DevicePair> avoidedEdges, Set<DeviceId> avoidedDevices) {
+        Map<DeviceId, FecEntry> sinkTree = sinkTrees.getOrDefault(networkId, Collections.emptyMap())
+                .getOrDefault(egressDeviceId, Collections.emptyMap());
+
+        List<FecEntry> branch = new ArrayList<>();
+        FecEntry entry = sinkTree.get(deviceId);
+        while (entry != null) {
+            if (avoidedDevices.contains(entry.getDeviceId())) return Collections.emptyList();
+
+            DeviceId nextHopDeviceId = entry.getNextHopDeviceId();
+            if (nextHopDeviceId != null && (avoidedDevices.contains(nextHopDeviceId) ||
+                    avoidedEdges.contains(new DevicePair(entry.getDeviceId(), nextHopDeviceId)))) {
+                return Collections.emptyList();
+            }
+
+            branch.add(entry);
+            entry = nextHopDeviceId == null ? null : sinkTree.get(nextHopDeviceId);
+        }
+
+        for (FecEntry branchEntry : branch) {
+            acquire(networkId, flowPair, branchEntry);
+        }
+        return branch;
+    }
+
+    public synchronized void addEntry(NetworkId networkId, FlowPair flowPair, FecEntry entry) {
+        sinkTrees.computeIfAbsent(networkId, k -> new HashMap<>())
+                .computeIfAbsent(entry.getEgressDeviceId(), k -> new HashMap<>())
+                .put(entry.getDeviceId(), entry);
+        acquire(networkId, flowPair, entry);
+    }
+
+    public synchronized FecEntry acquireDemuxEntry(NetworkId networkId, FlowPair flowPair) {
+        FecEntry entry = demuxEntries.getOrDefault(networkId, Collections.emptyMap()).get(flowPair.getDst());
+        if (entry != null) acquire(networkId, flowPair, entry);
+        return entry;
+    }
+
+    public synchronized void addDemuxEntry(NetworkId networkId, FlowPair flowPair, FecEntry entry) {
+        demuxEntries.computeIfAbsent(networkId, k -> new HashMap<>()).put(flowPair.getDst(), entry);
+        acquire(networkId, flowPair, entry);
+    }
+
+    // Drops the references held by the flow and returns the entries no other flow uses anymore
+    public synchronized List<FecEntry> release(NetworkId networkId, FlowPair flowPair) {
+        Map<FlowPair, List<FecEntry>> flows = flowEntries.get(networkId);
+        List<FecEntry> entries = flows == null ? null : flows.remove(flowPair);
+        if (entries == null) return Collections.emptyList();
+
+        List<FecEntry> unused = new ArrayList<>();
+        for (FecEntry entry : entries) {
+            if (entry.release() > 0) continue;
+
+            unused.add(entry);
+            if (entry.getMplsLabel() == null) {
+                demuxEntries.get(networkId).remove(flowPair.getDst(), entry);
+            } else {
+                sinkTrees.get(networkId).get(entry.getEgressDeviceId()).remove(entry.getDeviceId(), entry);
+            }
+        }
+        return unused;
+    }
+
+    private void acquire(NetworkId networkId, FlowPair flowPair, FecEntry entry) {
+        entry.acquire();
+        flowEntries.computeIfAbsent(networkId, k -> new HashMap<>())
+                .computeIfAbsent(flowPair, k -> new ArrayList<>())
+                .add(entry);
+    }
+}
@@ -1,46 +1,216 @@
 package org.xzk.network_slicing.helper;
 
+import org.onlab.packet.IpAddress;
 import org.onlab.packet.MplsLabel;
 import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Link;
+import org.onosproject.net.LinkKey;
 import org.onosproject.net.flow.FlowRule;
+import org.xzk.network_slicing.models.DeviceLabel;
 import org.xzk.network_slicing.models.FlowPair;
+import org.xzk.network_slicing.models.FlowPath;
 import org.xzk.network_slicing.models.FlowRuleInformation;
+import org.xzk.network_slicing.models.NetworkFlowPair;
 
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+// Flow rules per (NetworkId, FlowPair), with secondary indexes by device, traversed link and port,
+// (device, label) and host IP. Updates are serialized so the indexes always match the stored flows,
+// lookups are lock free.
 public class FlowRuleStorage {
 
-    private HashMap<NetworkId, HashMap<FlowPair, List<FlowRuleInformation>>> flowRuleStorage;
+    private ConcurrentMap<NetworkId, ConcurrentMap<FlowPair, List<FlowRuleInformation>>> flowRuleStorage;
+    private ConcurrentMap<NetworkId, ConcurrentMap<FlowPair, FlowPath>> flowPaths;
+
+    // Both directions of a bidirectionally provisioned flow point at each other
+    private ConcurrentMap<NetworkId, ConcurrentMap<FlowPair, FlowPair>> reverseFlowPairs;
+
+    // Secondary indexes
+    private ConcurrentMap<DeviceId, Set<NetworkFlowPair>> flowsByDevice;
+    private ConcurrentMap<LinkKey, Set<NetworkFlowPair>> flowsByLink;
+    private ConcurrentMap<ConnectPoint, Set<NetworkFlowPair>> flowsByPort;
+    private ConcurrentMap<DeviceLabel, Set<NetworkFlowPair>> flowsByLabel;
+    private ConcurrentMap<NetworkId, ConcurrentMap<IpAddress, Set<FlowPair>>> flowsByHost;
 
     public FlowRuleStorage() {
-        this.flowRuleStorage = new HashMap<>();
+        this.flowRuleStorage = new ConcurrentHashMap<>();
+        this.flowPaths = new ConcurrentHashMap<>();
+        this.reverseFlowPairs = new ConcurrentHashMap<>();
+        this.flowsByDevice = new ConcurrentHashMap<>();
+        this.flowsByLink = new ConcurrentHashMap<>();
+        this.flowsByPort = new ConcurrentHashMap<>();
+        this.flowsByLabel = new ConcurrentHashMap<>();
+        this.flowsByHost = new ConcurrentHashMap<>();
     }
 
     public void addFlowRule(NetworkId networkId, FlowPair flowPair, FlowRule flowRule, MplsLabel mplsLabel) {
-        if (!flowRuleStorage.containsKey(networkId)) flowRuleStorage.put(networkId, new HashMap<>());
-        if (!flowRuleStorage.get(networkId).containsKey(flowPair))
-            flowRuleStorage.get(networkId).put(flowPair, new LinkedList<>());
+        addFlowRule(networkId, flowPair, new FlowRuleInformation(flowRule, mplsLabel));
+    }
+
+    public void addSharedFlowRule(NetworkId networkId, FlowPair flowPair, FlowRule flowRule, MplsLabel mplsLabel) {
+        addFlowRule(networkId, flowPair, new FlowRuleInformation(flowRule, mplsLabel, true));
+    }
+
+    private synchronized void addFlowRule(NetworkId networkId, FlowPair flowPair, FlowRuleInformation flowRuleInformation) {
+        NetworkFlowPair networkFlowPair = new NetworkFlowPair(networkId, flowPair);
+
+        flowRuleStorage
+                .computeIfAbsent(networkId, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(flowPair, k -> {
+                    indexHosts(networkId, flowPair);
+                    return new CopyOnWriteArrayList<>();
+                })
+                .add(flowRuleInformation);
+
+        index(flowsByDevice, flowRuleInformation.getFlowRuleDeviceId(), networkFlowPair);
+        if (flowRuleInformation.getMplsLabel() != null) {
+            index(flowsByLabel, new DeviceLabel(flowRuleInformation.getFlowRuleDeviceId(),
+                    flowRuleInformation.getMplsLabel()), networkFlowPair);
+        }
+    }
+
+    // Ports and links the flow is forwarded over, replaces the previous path of the flow
+    public synchronized void setFlowPath(NetworkId networkId, FlowPair flowPair, FlowPath flowPath) {
+        NetworkFlowPair networkFlowPair = new NetworkFlowPair(networkId, flowPair);
+
+        FlowPath previous = flowPaths.computeIfAbsent(networkId, k -> new ConcurrentHashMap<>()).put(flowPair, flowPath);
+        if (previous != null) unindexPath(previous, networkFlowPair);
 
-        FlowRuleInformation flowRuleInformation = new FlowRuleInformation(flowRule, mplsLabel);
-        flowRuleStorage.get(networkId).get(flowPair).add(flowRuleInformation);
+        for (Link link : flowPath.getAllLinks()) {
+            index(flowsByLink, LinkKey.linkKey(link), networkFlowPair);
+        }
+        for (ConnectPoint connectPoint : flowPath.getConnectPoints()) {
+            index(flowsByPort, connectPoint, networkFlowPair);
+        }
     }
 
-    public void deleteFlowRules(NetworkId networkId, FlowPair flowPair) {
-        flowRuleStorage.get(networkId).remove(flowPair);
+    // Only one caller gets the removed rules back, so labels are returned at most once
+    public synchronized List<FlowRuleInformation> deleteFlowRules(NetworkId networkId, FlowPair flowPair) {
+        NetworkFlowPair networkFlowPair = new NetworkFlowPair(networkId, flowPair);
+
+        Map<FlowPair, FlowPath> paths = flowPaths.get(networkId);
+        FlowPath flowPath = paths == null ? null : paths.remove(flowPair);
+        if (flowPath != null) unindexPath(flowPath, networkFlowPair);
+
+        Map<FlowPair, List<FlowRuleInformation>> flows = flowRuleStorage.get(networkId);
+        List<FlowRuleInformation> flowRules = flows == null ? null : flows.remove(flowPair);
+        if (flowRules == null) return null;
+
+        unindexHosts(networkId, flowPair);
+        for (FlowRuleInformation f : flowRules) {
+            unindex(flowsByDevice, f.getFlowRuleDeviceId(), networkFlowPair);
+            if (f.getMplsLabel() != null) {
+                unindex(flowsByLabel, new DeviceLabel(f.getFlowRuleDeviceId(), f.getMplsLabel()), networkFlowPair);
+            }
+        }
+        return flowRules;
+    }
+
+    public void linkFlowPairs(NetworkId networkId, FlowPair flowPair, FlowPair reverseFlowPair) {
+        ConcurrentMap<FlowPair, FlowPair> pairs = reverseFlowPairs.computeIfAbsent(networkId, k -> new ConcurrentHashMap<>());
+        pairs.put(flowPair, reverseFlowPair);
+        pairs.put(reverseFlowPair, flowPair);
+    }
+
+    // Returns the other direction of the flow, if it was linked
+    public FlowPair unlinkFlowPair(NetworkId networkId, FlowPair flowPair) {
+        Map<FlowPair, FlowPair> pairs = reverseFlowPairs.get(networkId);
+        if (pairs == null) return null;
+
+        FlowPair reverseFlowPair = pairs.remove(flowPair);
+        if (reverseFlowPair != null) pairs.remove(reverseFlowPair, flowPair);
+        return reverseFlowPair;
+    }
+
+    public FlowPair getReverseFlowPair(NetworkId networkId, FlowPair flowPair) {
+        Map<FlowPair, FlowPair> pairs = reverseFlowPairs.get(networkId);
+        return pairs == null ? null : pairs.get(flowPair);
     }
 
     public List<FlowRuleInformation> getFlowRules(NetworkId networkId, FlowPair flowPair) {
-        return this.flowRuleStorage.get(networkId).get(flowPair);
+        Map<FlowPair, List<FlowRuleInformation>> flows = flowRuleStorage.get(networkId);
+        return flows == null ? null : flows.get(flowPair);
+    }
+
+    public FlowPath getFlowPath(NetworkId networkId, FlowPair flowPair) {
+        Map<FlowPair, FlowPath> paths = flowPaths.get(networkId);
+        return paths == null ? null : paths.get(flowPair);
+    }
+
+    public Set<NetworkFlowPair> getFlowsByDevice(DeviceId deviceId) {
+        return lookup(flowsByDevice, deviceId);
+    }
+
+    public Set<NetworkFlowPair> getFlowsByLink(LinkKey linkKey) {
+        return lookup(flowsByLink, linkKey);
+    }
+
+    // Flows forwarded through the port, host ports included
+    public Set<NetworkFlowPair> getFlowsByPort(ConnectPoint connectPoint) {
+        return lookup(flowsByPort, connectPoint);
+    }
+
+    public Set<NetworkFlowPair> getFlowsByLabel(DeviceId deviceId, MplsLabel mplsLabel) {
+        return lookup(flowsByLabel, new DeviceLabel(deviceId, mplsLabel));
+    }
+
+    // Flows from or to the host
+    public Set<FlowPair> getFlowsByHost(NetworkId networkId, IpAddress ipAddress) {
+        Map<IpAddress, Set<FlowPair>> hosts = flowsByHost.get(networkId);
+        return hosts == null ? Collections.emptySet() : lookup(hosts, ipAddress);
     }
 
-    public HashMap<FlowPair, List<FlowRuleInformation>> getAllFlowsPerNetwork(NetworkId networkId) {
+    public Map<FlowPair, List<FlowRuleInformation>> getAllFlowsPerNetwork(NetworkId networkId) {
         return this.flowRuleStorage.get(networkId);
     }
 
-    public HashMap<NetworkId, HashMap<FlowPair, List<FlowRuleInformation>>> getAllFlows() {
+    public Map<NetworkId, ? extends Map<FlowPair, List<FlowRuleInformation>>> getAllFlows() {
         return this.flowRuleStorage;
     }
 
+    private void unindexPath(FlowPath flowPath, NetworkFlowPair networkFlowPair) {
+        for (Link link : flowPath.getAllLinks()) {
+            unindex(flowsByLink, LinkKey.linkKey(link), networkFlowPair);
+        }
+        for (ConnectPoint connectPoint : flowPath.getConnectPoints()) {
+            unindex(flowsByPort, connectPoint, networkFlowPair);
+        }
+    }
+
+    private void indexHosts(NetworkId networkId, FlowPair flowPair) {
+        ConcurrentMap<IpAddress, Set<FlowPair>> hosts = flowsByHost.computeIfAbsent(networkId, k -> new ConcurrentHashMap<>());
+        index(hosts, flowPair.getSrc(), flowPair);
+        index(hosts, flowPair.getDst(), flowPair);
+    }
+
+    private void unindexHosts(NetworkId networkId, FlowPair flowPair) {
+        ConcurrentMap<IpAddress, Set<FlowPair>> hosts = flowsByHost.get(networkId);
+        if (hosts == null) return;
+        unindex(hosts, flowPair.getSrc(), flowPair);
+        unindex(hosts, flowPair.getDst(), flowPair);
+    }
+
+    private static <K, V> void index(ConcurrentMap<K, Set<V>> index, K key, V value) {
+        index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(value);
+    }
+
+    private static <K, V> void unindex(ConcurrentMap<K, Set<V>> index, K key, V value) {
+        index.computeIfPresent(key, (k, values) -> {
+            values.remove(value);
+            return values.isEmpty() ? null : values;
+        });
+    }
+
+    private static <K, V> Set<V> lookup(Map<K, Set<V>> index, K key) {
+        Set<V> values = index.get(key);
+        return values == null ? Collections.emptySet() : Collections.unmodifiableSet(values);
+    }
 }
@@ -0,0 +1,142 @@
+package org.xzk.network_slicing.helper;
+
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.IpPrefix;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.incubator.net.virtual.VirtualHost;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleService;
+import org.onosproject.net.flow.TrafficSelector;
+import org.xzk.network_slicing.models.FlowPair;
+import org.xzk.network_slicing.models.NetworkFlowPair;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Per virtual network forbidden (src, dst) pairs. Each pair is dropped at the edge port of its source host,
+// so denied packets never come up to the controller. Pairs of a host that is not known yet get their drop
+// rule once the host shows up.
+public class ForbiddenTrafficTable {
+
+    // Above the flow rules of the app and the packet in intercepts
+    public static final int DROP_PRIORITY = 1000;
+
+    private final FlowRuleService flowRuleService;
+    private final ApplicationId appId;
+    private final VirtualHostDirectory virtualHostDirectory;
+
+    private final ConcurrentMap<NetworkId, Set<FlowPair>> forbiddenPairs;
+    private final ConcurrentMap<NetworkFlowPair, FlowRule> dropRules;
+
+    public ForbiddenTrafficTable(FlowRuleService flowRuleService, ApplicationId appId,
+                                 VirtualHostDirectory virtualHostDirectory) {
+        this.flowRuleService = flowRuleService;
+        this.appId = appId;
+        this.virtualHostDirectory = virtualHostDirectory;
+        this.forbiddenPairs = new ConcurrentHashMap<>();
+        this.dropRules = new ConcurrentHashMap<>();
+    }
+
+    // Both directions between the hosts
+    public void add(NetworkId networkId, IpAddress host1, IpAddress host2) {
+        Set<FlowPair> pairs = forbiddenPairs.computeIfAbsent(networkId, k -> ConcurrentHashMap.newKeySet());
+        for (FlowPair flowPair : new FlowPair[]{new FlowPair(host1, host2), new FlowPair(host2, host1)}) {
+            if (pairs.add(flowPair)) installDropRule(networkId, flowPair);
+        }
+    }
+
+    public boolean remove(NetworkId networkId, IpAddress host1, IpAddress host2) {
+        Set<FlowPair> pairs = forbiddenPairs.get(networkId);
+        if (pairs == null) return false;
+
+        boolean removed = false;
+        for (FlowPair flowPair : new FlowPair[]{new FlowPair(host1, host2), new FlowPair(host2, host1)}) {
+            if (!pairs.remove(flowPair)) continue;
+            removed = true;
+
+            FlowRule dropRule = dropRules.remove(new NetworkFlowPair(networkId, flowPair));
+            if (dropRule != null) flowRuleService.removeFlowRules(dropRule);
+        }
+        return removed;
+    }
+
+    public boolean isForbidden(NetworkId networkId, FlowPair flowPair) {
+        Set<FlowPair> pairs = forbiddenPairs.get(networkId);
+        return pairs != null && pairs.contains(flowPair);
+    }
+
+    public Set<FlowPair> getForbiddenPairs(NetworkId networkId) {
+        Set<FlowPair> pairs = forbiddenPairs.get(networkId);
+        return pairs == null ? Collections.emptySet() : Collections.unmodifiableSet(pairs);
+    }
+
+    // Drop rules of the pairs sent by a newly learnt host
+    public void hostAdded(NetworkId networkId, VirtualHost virtualHost) {
+        Set<FlowPair> pairs = forbiddenPairs.get(networkId);
+        if (pairs == null) return;
+
+        for (FlowPair flowPair : pairs) {
+            if (virtualHost.ipAddresses().contains(flowPair.getSrc())) {
+                installDropRule(networkId, flowPair);
+            }
+        }
+    }
+
+    // The pairs sent by the host are dropped again once a host with the address shows up
+    public void hostRemoved(NetworkId networkId, VirtualHost virtualHost) {
+        Set<FlowPair> pairs = forbiddenPairs.get(networkId);
+        if (pairs == null) return;
+
+        for (FlowPair flowPair : pairs) {
+            if (!virtualHost.ipAddresses().contains(flowPair.getSrc())) continue;
+
+            FlowRule dropRule = dropRules.remove(new NetworkFlowPair(networkId, flowPair));
+            if (dropRule != null) flowRuleService.removeFlowRules(dropRule);
+        }
+    }
+
+    public void removeNetwork(NetworkId networkId) {
+        Set<FlowPair> pairs = forbiddenPairs.remove(networkId);
+        if (pairs == null) return;
+
+        for (FlowPair flowPair : pairs) {
+            FlowRule dropRule = dropRules.remove(new NetworkFlowPair(networkId, flowPair));
+            if (dropRule != null) flowRuleService.removeFlowRules(dropRule);
+        }
+    }
+
+    private void installDropRule(NetworkId networkId, FlowPair flowPair) {
+        VirtualHost sourceHost = virtualHostDirectory.getHost(networkId, flowPair.getSrc());
+        if (sourceHost == null) return;
+
+        TrafficSelector.Builder selector = DefaultTrafficSelector.builder();
+        selector.matchInPort(sourceHost.location().port());
+        selector.matchEthType(Ethernet.TYPE_IPV4);
+        selector.matchIPSrc(hostPrefix(flowPair.getSrc()));
+        selector.matchIPDst(hostPrefix(flowPair.getDst()));
+
+        FlowRule dropRule = DefaultFlowRule.builder()
+                .withSelector(selector.build())
+                .withTreatment(DefaultTrafficTreatment.builder().drop().build())
+                .withPriority(DROP_PRIORITY)
+                .makePermanent()
+                .fromApp(appId)
+                .forDevice(sourceHost.location().deviceId())
+                .build();
+
+        FlowRule previous = dropRules.put(new NetworkFlowPair(networkId, flowPair), dropRule);
+        if (previous != null && !previous.equals(dropRule)) flowRuleService.removeFlowRules(previous);
+        flowRuleService.applyFlowRules(dropRule);
+    }
+
+    private static IpPrefix hostPrefix(IpAddress ipAddress) {
+        return IpPrefix.valueOf(ipAddress, ipAddress.isIp4() ? 32 : 128);
+    }
+}
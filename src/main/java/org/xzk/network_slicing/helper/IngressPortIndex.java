@@ -0,0 +1,104 @@
+package org.xzk.network_slicing.helper;
+
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.incubator.net.virtual.TenantId;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DeviceId;
+import org.xzk.network_slicing.models.IngressPortInformation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// ConnectPoint ---> (TenantId, NetworkId, isEdge), kept up to date from listener events
+public class IngressPortIndex {
+
+    private final ConcurrentHashMap<ConnectPoint, IngressPortInformation> ingressPorts;
+    // NetworkId ---> virtual port ---> ConnectPoint realizing it, to find the old binding when a port moves
+    private final ConcurrentHashMap<NetworkId, ConcurrentHashMap<ConnectPoint, ConnectPoint>> realizedPorts;
+
+    public IngressPortIndex() {
+        this.ingressPorts = new ConcurrentHashMap<>();
+        this.realizedPorts = new ConcurrentHashMap<>();
+    }
+
+    // Returns the port information only if it is an edge port bound to a virtual network
+    public IngressPortInformation classify(ConnectPoint connectPoint) {
+        IngressPortInformation info = ingressPorts.get(connectPoint);
+        return info != null && info.isEdge() && info.isBound() ? info : null;
+    }
+
+    public IngressPortInformation get(ConnectPoint connectPoint) {
+        return ingressPorts.get(connectPoint);
+    }
+
+    // Edge ports bound to the network, where its hosts send from
+    public List<ConnectPoint> getEdgePorts(NetworkId networkId) {
+        List<ConnectPoint> edgePorts = new ArrayList<>();
+        for (Map.Entry<ConnectPoint, IngressPortInformation> entry : ingressPorts.entrySet()) {
+            if (entry.getValue().isEdge() && networkId.equals(entry.getValue().getNetworkId())) {
+                edgePorts.add(entry.getKey());
+            }
+        }
+        return edgePorts;
+    }
+
+    public void bindPort(ConnectPoint connectPoint, TenantId tenantId, NetworkId networkId) {
+        ingressPorts.compute(connectPoint, (cp, info) ->
+                new IngressPortInformation(tenantId, networkId, info != null && info.isEdge()));
+    }
+
+    // Binds the ConnectPoint realizing the virtual port, null if not realized any more. Returns the ConnectPoint
+    // which realized the port before and was unbound, null if there was none or it did not change.
+    public ConnectPoint bindVirtualPort(NetworkId networkId, TenantId tenantId, ConnectPoint virtualPort,
+                                        ConnectPoint realizedBy) {
+        ConcurrentHashMap<ConnectPoint, ConnectPoint> networkPorts =
+                realizedPorts.computeIfAbsent(networkId, k -> new ConcurrentHashMap<>());
+        ConnectPoint previous = realizedBy == null ?
+                networkPorts.remove(virtualPort) : networkPorts.put(virtualPort, realizedBy);
+        if (realizedBy != null) bindPort(realizedBy, tenantId, networkId);
+
+        if (previous == null || previous.equals(realizedBy)) return null;
+        unbindPort(previous);
+        return previous;
+    }
+
+    public void unbindPort(ConnectPoint connectPoint) {
+        ingressPorts.computeIfPresent(connectPoint, (cp, info) ->
+                info.isEdge() ? new IngressPortInformation(null, null, true) : null);
+    }
+
+    public void unbindDevice(NetworkId networkId, DeviceId deviceId) {
+        ConcurrentHashMap<ConnectPoint, ConnectPoint> networkPorts = realizedPorts.get(networkId);
+        if (networkPorts != null) networkPorts.keySet().removeIf(virtualPort -> virtualPort.deviceId().equals(deviceId));
+
+        for (Map.Entry<ConnectPoint, IngressPortInformation> entry : ingressPorts.entrySet()) {
+            if (networkId.equals(entry.getValue().getNetworkId()) &&
+                    entry.getKey().deviceId().equals(deviceId)) {
+                unbindPort(entry.getKey());
+            }
+        }
+    }
+
+    public void unbindNetwork(NetworkId networkId) {
+        realizedPorts.remove(networkId);
+        for (Map.Entry<ConnectPoint, IngressPortInformation> entry : ingressPorts.entrySet()) {
+            if (networkId.equals(entry.getValue().getNetworkId())) {
+                unbindPort(entry.getKey());
+            }
+        }
+    }
+
+    public void addEdgePort(ConnectPoint connectPoint) {
+        ingressPorts.compute(connectPoint, (cp, info) -> info == null ?
+                new IngressPortInformation(null, null, true) :
+                new IngressPortInformation(info.getTenantId(), info.getNetworkId(), true));
+    }
+
+    public void removeEdgePort(ConnectPoint connectPoint) {
+        ingressPorts.computeIfPresent(connectPoint, (cp, info) -> info.isBound() ?
+                new IngressPortInformation(info.getTenantId(), info.getNetworkId(), false) :
+                null);
+    }
+}
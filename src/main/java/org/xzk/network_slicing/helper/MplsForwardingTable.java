@@ -4,29 +4,25 @@ import org.onlab.packet.MplsLabel;
 import org.onosproject.incubator.net.virtual.NetworkId;
 import org.onosproject.net.HostId;
 
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MplsForwardingTable {
 
-    private HashMap<NetworkId, HashMap<HostId, MplsLabel>> mplsForwardingTable;
+    private ConcurrentHashMap<NetworkId, ConcurrentHashMap<HostId, MplsLabel>> mplsForwardingTable;
 
     public MplsForwardingTable() {
-        mplsForwardingTable = new HashMap<>();
+        mplsForwardingTable = new ConcurrentHashMap<>();
     }
 
     public void addLabelToHost(NetworkId networkId, HostId hostId, MplsLabel mplsLabel) {
-        if (!this.mplsForwardingTable.containsKey(networkId)) {
-            this.mplsForwardingTable.put(networkId, new HashMap<>());
-        }
-
-        this.mplsForwardingTable.get(networkId).put(hostId, mplsLabel);
+        this.mplsForwardingTable
+                .computeIfAbsent(networkId, k -> new ConcurrentHashMap<>())
+                .put(hostId, mplsLabel);
     }
 
     public MplsLabel getMplsLabel(NetworkId networkId, HostId hostId) {
-        return this.mplsForwardingTable.containsKey(networkId) ?
-                this.mplsForwardingTable.get(networkId).containsKey(hostId) ?
-                        this.mplsForwardingTable.get(networkId).get(hostId) :
-                        null :
-                null;
+        Map<HostId, MplsLabel> labels = this.mplsForwardingTable.get(networkId);
+        return labels == null ? null : labels.get(hostId);
     }
 }
@@ -0,0 +1,154 @@
+package org.xzk.network_slicing.helper;
+
+import org.onosproject.core.ApplicationId;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleService;
+import org.xzk.network_slicing.models.PacketInCounters;
+import org.xzk.network_slicing.models.TokenBucket;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Token buckets on the packet ins of each virtual network and of each edge port, so that one host or one slice
+// cannot take the whole packet processor. Ports that keep overrunning their bucket can be blocked for a while
+// by a drop rule below the flow rules of the app: installed flows carry on, only what would come up to the
+// controller is dropped in the switch.
+public class PacketInRateLimiter {
+
+    // Between the packet in intercepts and the flow rules
+    public static final int BLOCK_PRIORITY = 10;
+
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+
+    private final FlowRuleService flowRuleService;
+    private final ApplicationId appId;
+
+    // 0 turns the limit or the blocking off
+    private volatile int networkRate;
+    private volatile int portRate;
+    private volatile int blockThreshold;
+    private volatile int blockSeconds;
+
+    private final ConcurrentHashMap<NetworkId, TokenBucket> networkBuckets;
+    private final ConcurrentHashMap<ConnectPoint, PortLimiter> portLimiters;
+    private final ConcurrentHashMap<NetworkId, PacketInCounters> counters;
+
+    public PacketInRateLimiter(FlowRuleService flowRuleService, ApplicationId appId) {
+        this.flowRuleService = flowRuleService;
+        this.appId = appId;
+        this.networkBuckets = new ConcurrentHashMap<>();
+        this.portLimiters = new ConcurrentHashMap<>();
+        this.counters = new ConcurrentHashMap<>();
+    }
+
+    // Packets per second per network and per port, and drops per second of a port that block it
+    public void configure(int networkRate, int portRate, int blockThreshold, int blockSeconds) {
+        this.networkRate = networkRate;
+        this.portRate = portRate;
+        this.blockThreshold = blockThreshold;
+        this.blockSeconds = blockSeconds;
+
+        // Network buckets come back with the new rate on the next packet in. Port limiters only get a new bucket,
+        // so that blocked ports stay blocked until their time is up.
+        networkBuckets.clear();
+        if (portRate > 0) {
+            for (PortLimiter portLimiter : portLimiters.values()) {
+                portLimiter.bucket = new TokenBucket(portRate, portRate);
+            }
+        }
+    }
+
+    // The port bucket goes first, so a throttled port does not use up the tokens of its network
+    public boolean tryAcquire(NetworkId networkId, ConnectPoint ingressPort) {
+        PacketInCounters networkCounters = counters.computeIfAbsent(networkId, k -> new PacketInCounters());
+
+        int portRate = this.portRate;
+        if (portRate > 0) {
+            PortLimiter portLimiter = portLimiters.computeIfAbsent(ingressPort,
+                    k -> new PortLimiter(new TokenBucket(portRate, portRate)));
+            if (!portLimiter.bucket.tryConsume()) {
+                networkCounters.portThrottled();
+                if (blockThreshold > 0 && portLimiter.overrun(blockThreshold, blockSeconds)) {
+                    block(ingressPort);
+                    networkCounters.portBlocked();
+                }
+                return false;
+            }
+        }
+
+        int networkRate = this.networkRate;
+        if (networkRate > 0) {
+            TokenBucket networkBucket = networkBuckets.computeIfAbsent(networkId,
+                    k -> new TokenBucket(networkRate, networkRate));
+            if (!networkBucket.tryConsume()) {
+                networkCounters.networkThrottled();
+                return false;
+            }
+        }
+
+        networkCounters.accepted();
+        return true;
+    }
+
+    public Map<NetworkId, PacketInCounters> getCounters() {
+        return Collections.unmodifiableMap(counters);
+    }
+
+    public void removeNetwork(NetworkId networkId) {
+        networkBuckets.remove(networkId);
+        counters.remove(networkId);
+    }
+
+    public void removePort(ConnectPoint connectPoint) {
+        portLimiters.remove(connectPoint);
+    }
+
+    private void block(ConnectPoint ingressPort) {
+        FlowRule blockRule = DefaultFlowRule.builder()
+                .withSelector(DefaultTrafficSelector.builder().matchInPort(ingressPort.port()).build())
+                .withTreatment(DefaultTrafficTreatment.builder().drop().build())
+                .withPriority(BLOCK_PRIORITY)
+                .makeTemporary(blockSeconds)
+                .withHardTimeout(blockSeconds)
+                .fromApp(appId)
+                .forDevice(ingressPort.deviceId())
+                .build();
+        flowRuleService.applyFlowRules(blockRule);
+    }
+
+    private static class PortLimiter {
+        private volatile TokenBucket bucket;
+        private long windowStart;
+        private int windowDrops;
+        private boolean blocked;
+        private long blockedUntil;
+
+        PortLimiter(TokenBucket bucket) {
+            this.bucket = bucket;
+            this.windowStart = System.nanoTime();
+        }
+
+        // Whether this drop makes the port reach the threshold within the current second and it is not blocked yet
+        synchronized boolean overrun(int threshold, int blockSeconds) {
+            long now = System.nanoTime();
+            if (blocked && now - blockedUntil < 0) return false;
+
+            if (now - windowStart >= WINDOW_NANOS) {
+                windowStart = now;
+                windowDrops = 0;
+            }
+            if (++windowDrops < threshold) return false;
+
+            windowDrops = 0;
+            blocked = true;
+            blockedUntil = now + blockSeconds * WINDOW_NANOS;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package org.xzk.network_slicing.helper;
+
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.incubator.net.virtual.TenantId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.onlab.util.Tools.groupedThreads;
+
+// Packet ins queued per virtual network and drained by a pool of workers in deficit round robin order. On its
+// turn a network may run as many packets as the weight of its tenant, so a slice flooding new connections only
+// delays its own flow setups. Each packet costs one, so the deficit is simply what is left of the turn.
+public class PacketInScheduler {
+
+    public static final int DEFAULT_WEIGHT = 1;
+
+    private static final long SHUTDOWN_TIMEOUT_MS = 1000;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final int maxQueued;
+    private final ExecutorService workers;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    // Guarded by the lock
+    private final Map<NetworkId, NetworkQueue> queues = new HashMap<>();
+    private final ArrayDeque<NetworkQueue> activeQueues = new ArrayDeque<>();
+
+    private final ConcurrentHashMap<TenantId, Integer> tenantWeights = new ConcurrentHashMap<>();
+
+    public PacketInScheduler(int workerCount, int maxQueued) {
+        this.maxQueued = maxQueued;
+        this.workers = Executors.newFixedThreadPool(workerCount,
+                groupedThreads("onos/network-slicing", "packet-in-%d", log));
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::drain);
+        }
+    }
+
+    // False if the queue of the network is full and the packet is dropped
+    public boolean submit(NetworkId networkId, TenantId tenantId, Runnable task) {
+        lock.lock();
+        try {
+            NetworkQueue queue = queues.computeIfAbsent(networkId, NetworkQueue::new);
+            queue.tenantId = tenantId;
+            if (queue.tasks.size() >= maxQueued) {
+                queue.dropped++;
+                return false;
+            }
+
+            queue.tasks.add(task);
+            if (!queue.active) {
+                queue.active = true;
+                activeQueues.addLast(queue);
+                notEmpty.signal();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setWeight(TenantId tenantId, int weight) {
+        if (weight <= 0) throw new IllegalArgumentException("Weight must be positive");
+        tenantWeights.put(tenantId, weight);
+    }
+
+    public int getWeight(TenantId tenantId) {
+        return tenantId == null ? DEFAULT_WEIGHT : tenantWeights.getOrDefault(tenantId, DEFAULT_WEIGHT);
+    }
+
+    public Map<TenantId, Integer> getWeights() {
+        return new HashMap<>(tenantWeights);
+    }
+
+    // NetworkId ---> (queued, dropped)
+    public Map<NetworkId, long[]> getQueueStats() {
+        Map<NetworkId, long[]> stats = new HashMap<>();
+        lock.lock();
+        try {
+            for (NetworkQueue queue : queues.values()) {
+                stats.put(queue.networkId, new long[]{queue.tasks.size(), queue.dropped});
+            }
+        } finally {
+            lock.unlock();
+        }
+        return stats;
+    }
+
+    // Queued packets of the network are dropped
+    public void removeNetwork(NetworkId networkId) {
+        lock.lock();
+        try {
+            NetworkQueue queue = queues.remove(networkId);
+            if (queue != null && queue.active) activeQueues.remove(queue);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Waits a little for the packets being processed, queued ones are dropped
+    public void shutdown() {
+        workers.shutdownNow();
+        try {
+            workers.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Runnable task;
+            try {
+                task = take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.warn("Packet in processing failed", e);
+            }
+        }
+    }
+
+    private Runnable take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (activeQueues.isEmpty()) notEmpty.await();
+
+            // Head of the round, a fresh turn starts with the weight of its tenant
+            NetworkQueue queue = activeQueues.peekFirst();
+            if (queue.deficit == 0) queue.deficit = getWeight(queue.tenantId);
+
+            Runnable task = queue.tasks.pollFirst();
+            queue.deficit--;
+
+            if (queue.tasks.isEmpty()) {
+                // An idle network does not save up its turn
+                activeQueues.pollFirst();
+                queue.active = false;
+                queue.deficit = 0;
+            } else if (queue.deficit == 0) {
+                activeQueues.addLast(activeQueues.pollFirst());
+            }
+
+            // Other workers can serve the remaining networks meanwhile
+            if (!activeQueues.isEmpty()) notEmpty.signal();
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class NetworkQueue {
+        private final NetworkId networkId;
+        private TenantId tenantId;
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private boolean active;
+        private int deficit;
+        private long dropped;
+
+        NetworkQueue(NetworkId networkId) {
+            this.networkId = networkId;
+        }
+    }
+}
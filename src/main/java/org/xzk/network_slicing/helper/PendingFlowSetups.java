@@ -0,0 +1,68 @@
+package org.xzk.network_slicing.helper;
+
+import org.xzk.network_slicing.models.NetworkFlowPair;
+import org.xzk.network_slicing.models.PendingFlowSetup;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// (NetworkId, FlowPair) ---> setup in flight, so that a burst of the same flow is only set up once.
+// Finished setups are kept until they time out, to serve packets that were punted before the rules took effect.
+public class PendingFlowSetups {
+
+    private static final int PURGE_INTERVAL = 1024;
+
+    private final ConcurrentHashMap<NetworkFlowPair, PendingFlowSetup> pendingFlowSetups;
+    private final int maxQueuedPackets;
+    private final long timeoutMillis;
+    private final AtomicInteger calls = new AtomicInteger();
+
+    public PendingFlowSetups(int maxQueuedPackets, long timeoutMillis) {
+        this.pendingFlowSetups = new ConcurrentHashMap<>();
+        this.maxQueuedPackets = maxQueuedPackets;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public PendingFlowSetup newSetup() {
+        return new PendingFlowSetup(maxQueuedPackets);
+    }
+
+    // Returns null if the given setup is now in charge of the flow, otherwise the setup already in flight
+    public PendingFlowSetup putIfAbsent(NetworkFlowPair networkFlowPair, PendingFlowSetup setup) {
+        if (calls.incrementAndGet() % PURGE_INTERVAL == 0) purgeExpired();
+
+        while (true) {
+            PendingFlowSetup inFlight = pendingFlowSetups.putIfAbsent(networkFlowPair, setup);
+            if (inFlight == null) return null;
+
+            // A setup that never completed is given up, the current packet starts over
+            if (System.currentTimeMillis() - inFlight.getCreatedAt() <= timeoutMillis) return inFlight;
+            if (pendingFlowSetups.replace(networkFlowPair, inFlight, setup)) {
+                inFlight.finish();
+                return null;
+            }
+        }
+    }
+
+    public void remove(NetworkFlowPair networkFlowPair, PendingFlowSetup setup) {
+        pendingFlowSetups.remove(networkFlowPair, setup);
+    }
+
+    // Used when the rules of a flow are retracted, a setup still in progress is left alone
+    public void removeFinished(NetworkFlowPair networkFlowPair) {
+        pendingFlowSetups.computeIfPresent(networkFlowPair, (k, setup) -> setup.isFinished() ? null : setup);
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        pendingFlowSetups.entrySet().removeIf(e -> now - e.getValue().getCreatedAt() > timeoutMillis);
+    }
+
+    public int size() {
+        return pendingFlowSetups.size();
+    }
+
+    public void clear() {
+        pendingFlowSetups.clear();
+    }
+}
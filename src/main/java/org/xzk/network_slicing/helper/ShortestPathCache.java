@@ -0,0 +1,112 @@
+package org.xzk.network_slicing.helper;
+
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.net.Link;
+import org.xzk.network_slicing.models.DevicePair;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Per virtual network (srcDevice, dstDevice) ---> path links, kept only if computed on the current topology version
+public class ShortestPathCache {
+
+    private final ConcurrentHashMap<NetworkId, NetworkPaths> networkPaths;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong invalidations;
+
+    public ShortestPathCache() {
+        this.networkPaths = new ConcurrentHashMap<>();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.invalidations = new AtomicLong();
+    }
+
+    public List<Link> getPath(NetworkId networkId, DevicePair devicePair) {
+        NetworkPaths paths = networkPaths.get(networkId);
+        List<Link> path = paths == null ? null : paths.paths.get(devicePair);
+        if (path == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return path;
+    }
+
+    // Paths computed on an outdated topology are not cached
+    public void putPath(NetworkId networkId, DevicePair devicePair, List<Link> path, long version) {
+        NetworkPaths paths = networkPaths.computeIfAbsent(networkId, k -> new NetworkPaths());
+        synchronized (paths) {
+            if (paths.version != version) return;
+
+            paths.paths.put(devicePair, Collections.unmodifiableList(path));
+            for (Link link : path) {
+                paths.pathsByEdge
+                        .computeIfAbsent(new DevicePair(link.src().deviceId(), link.dst().deviceId()), k -> new HashSet<>())
+                        .add(devicePair);
+            }
+        }
+    }
+
+    public void topologyChanged(NetworkId networkId, long version, Set<DevicePair> removedEdges, Set<DevicePair> addedEdges) {
+        NetworkPaths paths = networkPaths.computeIfAbsent(networkId, k -> new NetworkPaths());
+        synchronized (paths) {
+            paths.version = version;
+
+            // New edges can shorten (or create) any path
+            if (!addedEdges.isEmpty()) {
+                invalidations.addAndGet(paths.paths.size());
+                paths.paths.clear();
+                paths.pathsByEdge.clear();
+                return;
+            }
+
+            // Removed edges only affect the paths crossing them
+            for (DevicePair removedEdge : removedEdges) {
+                Set<DevicePair> affected = paths.pathsByEdge.remove(removedEdge);
+                if (affected == null) continue;
+                for (DevicePair devicePair : affected) {
+                    if (paths.paths.remove(devicePair) != null) {
+                        invalidations.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    public void removeNetwork(NetworkId networkId) {
+        networkPaths.remove(networkId);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    public int getCachedPathCount(NetworkId networkId) {
+        NetworkPaths paths = networkPaths.get(networkId);
+        return paths == null ? 0 : paths.paths.size();
+    }
+
+    public Set<NetworkId> getNetworkIds() {
+        return Collections.unmodifiableSet(networkPaths.keySet());
+    }
+
+    private static class NetworkPaths {
+        private final Map<DevicePair, List<Link>> paths = new ConcurrentHashMap<>();
+        private final Map<DevicePair, Set<DevicePair>> pathsByEdge = new ConcurrentHashMap<>();
+        private long version = -1;
+    }
+}
@@ -0,0 +1,297 @@
+package org.xzk.network_slicing.helper;
+
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.IPv4;
+import org.onlab.packet.Ip4Prefix;
+import org.onlab.packet.TpPort;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleService;
+import org.onosproject.net.flow.TrafficSelector;
+import org.xzk.network_slicing.models.AclRule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.xzk.network_slicing.models.AclRule.mask;
+
+// Per virtual network ordered ACLs, the classifier used on packet in, and the drop rules the ACLs compile into
+// at the edge ports of the network. Only deny entries become rules: packets matching no drop rule carry on to
+// the flow rules or the controller anyway. Earlier entries are cut out of each deny, so the drop rules are exact
+// whatever their priority, and port ranges become masked port matches.
+public class SliceAclTable {
+
+    // Above the forbidden traffic drop rules, so that both never share a flow id
+    public static final int ACL_PRIORITY = ForbiddenTrafficTable.DROP_PRIORITY + 1;
+
+    // Drop rules the ACL of a network may take in the table of each edge port
+    public static final int MAX_RULES_PER_PORT = 256;
+
+    private final FlowRuleService flowRuleService;
+    private final ApplicationId appId;
+    private final IngressPortIndex ingressPortIndex;
+
+    private final ConcurrentHashMap<NetworkId, NetworkAcls> networkAcls;
+
+    public SliceAclTable(FlowRuleService flowRuleService, ApplicationId appId, IngressPortIndex ingressPortIndex) {
+        this.flowRuleService = flowRuleService;
+        this.appId = appId;
+        this.ingressPortIndex = ingressPortIndex;
+        this.networkAcls = new ConcurrentHashMap<>();
+    }
+
+    // Appended at the end of the ACL. Fails if the entry is invalid, cannot be compiled into exact drop rules or
+    // takes the ACL over the rule budget of the edge ports.
+    public synchronized AclRule addRule(NetworkId networkId, Ip4Prefix srcPrefix, Ip4Prefix dstPrefix, byte protocol,
+                                        int srcPortMin, int srcPortMax, int dstPortMin, int dstPortMax,
+                                        AclRule.Action action) {
+        NetworkAcls acls = networkAcls.computeIfAbsent(networkId, k -> new NetworkAcls());
+        AclRule rule = new AclRule(acls.nextId, srcPrefix.address().toInt(), srcPrefix.prefixLength(),
+                dstPrefix.address().toInt(), dstPrefix.prefixLength(), protocol,
+                srcPortMin, srcPortMax, dstPortMin, dstPortMax, action);
+
+        List<AclRule> rules = new ArrayList<>(acls.rules);
+        rules.add(rule);
+        List<AclRule> dropRegions = compile(rules);
+
+        int ruleCount = ruleCount(dropRegions);
+        if (ruleCount > MAX_RULES_PER_PORT) {
+            throw new IllegalArgumentException("The ACL would need " + ruleCount + " drop rules per edge port, " +
+                    "more than " + MAX_RULES_PER_PORT + ". Use port ranges aligned to powers of two");
+        }
+
+        acls.nextId++;
+        acls.rules = rules;
+        acls.classifier = new AclClassifier(rules);
+        install(networkId, acls, dropRegions);
+        return rule;
+    }
+
+    public synchronized boolean removeRule(NetworkId networkId, int id) {
+        NetworkAcls acls = networkAcls.get(networkId);
+        if (acls == null) return false;
+
+        List<AclRule> rules = new ArrayList<>(acls.rules);
+        if (!rules.removeIf(rule -> rule.getId() == id)) return false;
+
+        // Removing an allow entry can only make the remaining denies simpler, this does not fail
+        acls.rules = rules;
+        acls.classifier = new AclClassifier(rules);
+        install(networkId, acls, compile(rules));
+        return true;
+    }
+
+    public List<AclRule> getRules(NetworkId networkId) {
+        NetworkAcls acls = networkAcls.get(networkId);
+        return acls == null ? Collections.emptyList() : Collections.unmodifiableList(acls.rules);
+    }
+
+    public int getInstalledRuleCount(NetworkId networkId) {
+        NetworkAcls acls = networkAcls.get(networkId);
+        return acls == null ? 0 : acls.installed.size();
+    }
+
+    // First matching entry, or null if none matches. Lock free.
+    public AclRule classify(NetworkId networkId, int srcAddress, int dstAddress, byte protocol,
+                            int srcPort, int dstPort) {
+        NetworkAcls acls = networkAcls.get(networkId);
+        return acls == null ? null : acls.classifier.classify(srcAddress, dstAddress, protocol, srcPort, dstPort);
+    }
+
+    // Edge ports of the network changed
+    public synchronized void recompile(NetworkId networkId) {
+        NetworkAcls acls = networkAcls.get(networkId);
+        if (acls != null) install(networkId, acls, compile(acls.rules));
+    }
+
+    public synchronized void removeNetwork(NetworkId networkId) {
+        NetworkAcls acls = networkAcls.remove(networkId);
+        if (acls != null && !acls.installed.isEmpty()) {
+            flowRuleService.removeFlowRules(acls.installed.toArray(new FlowRule[0]));
+        }
+    }
+
+    // Parts of each deny entry not matched by an earlier entry
+    static List<AclRule> compile(List<AclRule> rules) {
+        List<AclRule> dropRegions = new ArrayList<>();
+        for (int i = 0; i < rules.size(); i++) {
+            AclRule rule = rules.get(i);
+            if (rule.getAction() != AclRule.Action.DENY) continue;
+
+            List<AclRule> regions = Collections.singletonList(rule);
+            for (int j = 0; j < i && !regions.isEmpty(); j++) {
+                AclRule earlier = rules.get(j);
+                List<AclRule> remaining = new ArrayList<>();
+                for (AclRule region : regions) {
+                    List<AclRule> rest = subtract(region, earlier);
+                    if (rest == null) {
+                        if (earlier.getAction() == AclRule.Action.ALLOW) {
+                            throw new IllegalArgumentException("Entry " + rule.getId() + " denies any protocol over " +
+                                    "entry " + earlier.getId() + " allowing a single one, split it per protocol");
+                        }
+                        // Two drop rules overlapping is harmless
+                        rest = Collections.singletonList(region);
+                    }
+                    remaining.addAll(rest);
+                }
+                regions = remaining;
+            }
+            dropRegions.addAll(regions);
+        }
+        return dropRegions;
+    }
+
+    // Parts of a not matched by b, or null if they cannot be written as prefix and port range matches
+    private static List<AclRule> subtract(AclRule a, AclRule b) {
+        if (!a.overlaps(b)) return Collections.singletonList(a);
+        if (b.covers(a)) return Collections.emptyList();
+        if (a.getProtocol() == AclRule.ANY_PROTOCOL && b.getProtocol() != AclRule.ANY_PROTOCOL) return null;
+
+        List<AclRule> pieces = new ArrayList<>();
+        int srcAddress = a.getSrcAddress();
+        int srcLength = a.getSrcLength();
+        int dstAddress = a.getDstAddress();
+        int dstLength = a.getDstLength();
+        int srcPortMin = a.getSrcPortMin();
+        int srcPortMax = a.getSrcPortMax();
+        int dstPortMin = a.getDstPortMin();
+        int dstPortMax = a.getDstPortMax();
+
+        // Overlapping prefixes are nested, the siblings on the way down to the longer one are outside of b
+        if (b.getSrcLength() > srcLength) {
+            for (int length = srcLength; length < b.getSrcLength(); length++) {
+                int sibling = (b.getSrcAddress() & mask(length + 1)) ^ (1 << (31 - length));
+                pieces.add(a.narrow(sibling, length + 1, dstAddress, dstLength,
+                        srcPortMin, srcPortMax, dstPortMin, dstPortMax));
+            }
+            srcAddress = b.getSrcAddress();
+            srcLength = b.getSrcLength();
+        }
+        if (b.getDstLength() > dstLength) {
+            for (int length = dstLength; length < b.getDstLength(); length++) {
+                int sibling = (b.getDstAddress() & mask(length + 1)) ^ (1 << (31 - length));
+                pieces.add(a.narrow(srcAddress, srcLength, sibling, length + 1,
+                        srcPortMin, srcPortMax, dstPortMin, dstPortMax));
+            }
+            dstAddress = b.getDstAddress();
+            dstLength = b.getDstLength();
+        }
+
+        if (b.getSrcPortMin() > srcPortMin) {
+            pieces.add(a.narrow(srcAddress, srcLength, dstAddress, dstLength,
+                    srcPortMin, b.getSrcPortMin() - 1, dstPortMin, dstPortMax));
+            srcPortMin = b.getSrcPortMin();
+        }
+        if (b.getSrcPortMax() < srcPortMax) {
+            pieces.add(a.narrow(srcAddress, srcLength, dstAddress, dstLength,
+                    b.getSrcPortMax() + 1, srcPortMax, dstPortMin, dstPortMax));
+            srcPortMax = b.getSrcPortMax();
+        }
+        if (b.getDstPortMin() > dstPortMin) {
+            pieces.add(a.narrow(srcAddress, srcLength, dstAddress, dstLength,
+                    srcPortMin, srcPortMax, dstPortMin, b.getDstPortMin() - 1));
+            dstPortMin = b.getDstPortMin();
+        }
+        if (b.getDstPortMax() < dstPortMax) {
+            pieces.add(a.narrow(srcAddress, srcLength, dstAddress, dstLength,
+                    srcPortMin, srcPortMax, b.getDstPortMax() + 1, dstPortMax));
+        }
+        return pieces;
+    }
+
+    // Replaces the drop rules of the network with the ones of the regions, touching only what changed
+    private void install(NetworkId networkId, NetworkAcls acls, List<AclRule> dropRegions) {
+        Set<FlowRule> flowRules = new HashSet<>();
+        for (ConnectPoint edgePort : ingressPortIndex.getEdgePorts(networkId)) {
+            for (AclRule region : dropRegions) {
+                for (TrafficSelector selector : selectors(edgePort, region)) {
+                    flowRules.add(DefaultFlowRule.builder()
+                            .withSelector(selector)
+                            .withTreatment(DefaultTrafficTreatment.builder().drop().build())
+                            .withPriority(ACL_PRIORITY)
+                            .makePermanent()
+                            .fromApp(appId)
+                            .forDevice(edgePort.deviceId())
+                            .build());
+                }
+            }
+        }
+
+        List<FlowRule> removed = new ArrayList<>(acls.installed);
+        removed.removeAll(flowRules);
+        List<FlowRule> added = new ArrayList<>(flowRules);
+        added.removeAll(acls.installed);
+
+        if (!removed.isEmpty()) flowRuleService.removeFlowRules(removed.toArray(new FlowRule[0]));
+        if (!added.isEmpty()) flowRuleService.applyFlowRules(added.toArray(new FlowRule[0]));
+        acls.installed = flowRules;
+    }
+
+    // Masked port ranges do not share rules, each region takes one per pair of source and destination mask
+    private static int ruleCount(List<AclRule> dropRegions) {
+        int count = 0;
+        for (AclRule region : dropRegions) {
+            count += portMasks(region.getSrcPortMin(), region.getSrcPortMax()).size() *
+                    portMasks(region.getDstPortMin(), region.getDstPortMax()).size();
+        }
+        return count;
+    }
+
+    // One selector per combination of masked source and destination port
+    private static List<TrafficSelector> selectors(ConnectPoint edgePort, AclRule region) {
+        List<TrafficSelector> selectors = new ArrayList<>();
+        for (int[] srcPort : portMasks(region.getSrcPortMin(), region.getSrcPortMax())) {
+            for (int[] dstPort : portMasks(region.getDstPortMin(), region.getDstPortMax())) {
+                TrafficSelector.Builder selector = DefaultTrafficSelector.builder();
+                selector.matchInPort(edgePort.port());
+                selector.matchEthType(Ethernet.TYPE_IPV4);
+                if (region.getSrcLength() > 0) selector.matchIPSrc(region.getSrcPrefix());
+                if (region.getDstLength() > 0) selector.matchIPDst(region.getDstPrefix());
+                if (region.getProtocol() != AclRule.ANY_PROTOCOL) selector.matchIPProtocol(region.getProtocol());
+
+                boolean tcp = region.getProtocol() == IPv4.PROTOCOL_TCP;
+                if (srcPort[1] != 0) {
+                    TpPort port = TpPort.tpPort(srcPort[0]);
+                    TpPort mask = TpPort.tpPort(srcPort[1]);
+                    if (tcp) selector.matchTcpSrcMasked(port, mask); else selector.matchUdpSrcMasked(port, mask);
+                }
+                if (dstPort[1] != 0) {
+                    TpPort port = TpPort.tpPort(dstPort[0]);
+                    TpPort mask = TpPort.tpPort(dstPort[1]);
+                    if (tcp) selector.matchTcpDstMasked(port, mask); else selector.matchUdpDstMasked(port, mask);
+                }
+                selectors.add(selector.build());
+            }
+        }
+        return selectors;
+    }
+
+    // Fewest (value, mask) pairs covering [min, max], mask 0 for the full range
+    static List<int[]> portMasks(int min, int max) {
+        List<int[]> masks = new ArrayList<>();
+        int port = min;
+        while (port <= max) {
+            int size = port == 0 ? 0x10000 : Integer.lowestOneBit(port);
+            while (port + size - 1 > max) size >>= 1;
+            masks.add(new int[]{port, ~(size - 1) & 0xFFFF});
+            port += size;
+        }
+        return masks;
+    }
+
+    private static class NetworkAcls {
+        private volatile List<AclRule> rules = Collections.emptyList();
+        private volatile AclClassifier classifier = new AclClassifier(Collections.emptyList());
+        private Set<FlowRule> installed = Collections.emptySet();
+        private int nextId = 1;
+    }
+}
@@ -0,0 +1,115 @@
+package org.xzk.network_slicing.helper;
+
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.net.DeviceId;
+import org.xzk.network_slicing.models.FlowPair;
+import org.xzk.network_slicing.models.ResourceUsage;
+import org.xzk.network_slicing.models.TenantQuota;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Per virtual network usage of each device, charged when a flow is admitted and given back when it is retracted
+public class TenantQuotaManager {
+
+    private final Map<NetworkId, TenantQuota> quotas;
+    private final Map<NetworkId, Map<DeviceId, ResourceUsage>> usage;
+    private final Map<NetworkId, Map<FlowPair, Map<DeviceId, ResourceUsage>>> charges;
+    private final ConcurrentHashMap<NetworkId, AtomicLong> admitted;
+    private final ConcurrentHashMap<NetworkId, AtomicLong> rejected;
+
+    public TenantQuotaManager() {
+        this.quotas = new ConcurrentHashMap<>();
+        this.usage = new HashMap<>();
+        this.charges = new HashMap<>();
+        this.admitted = new ConcurrentHashMap<>();
+        this.rejected = new ConcurrentHashMap<>();
+    }
+
+    public void setQuota(NetworkId networkId, TenantQuota quota) {
+        quotas.put(networkId, quota);
+    }
+
+    public void removeQuota(NetworkId networkId) {
+        quotas.remove(networkId);
+    }
+
+    // Quota, usage and counters of a removed network, its flows are retracted by the caller
+    public synchronized void removeNetwork(NetworkId networkId) {
+        quotas.remove(networkId);
+        usage.remove(networkId);
+        charges.remove(networkId);
+        admitted.remove(networkId);
+        rejected.remove(networkId);
+    }
+
+    public TenantQuota getQuota(NetworkId networkId) {
+        return quotas.get(networkId);
+    }
+
+    // Charges the demand of the flow if every device stays within the quota of the network. A flow set up again
+    // or rerouted replaces its current charge, so that charge does not count against the new demand.
+    public synchronized boolean tryAdmit(NetworkId networkId, FlowPair flowPair, Map<DeviceId, ResourceUsage> demand) {
+        TenantQuota quota = quotas.get(networkId);
+        Map<DeviceId, ResourceUsage> networkUsage = usage.computeIfAbsent(networkId, k -> new HashMap<>());
+        Map<DeviceId, ResourceUsage> currentCharge = charges.getOrDefault(networkId, Collections.emptyMap())
+                .getOrDefault(flowPair, Collections.emptyMap());
+
+        if (quota != null) {
+            for (Map.Entry<DeviceId, ResourceUsage> entry : demand.entrySet()) {
+                ResourceUsage deviceUsage = new ResourceUsage();
+                deviceUsage.add(networkUsage.getOrDefault(entry.getKey(), new ResourceUsage()));
+                deviceUsage.subtract(currentCharge.getOrDefault(entry.getKey(), new ResourceUsage()));
+                if (!quota.allows(deviceUsage, entry.getValue())) {
+                    rejected.computeIfAbsent(networkId, k -> new AtomicLong()).incrementAndGet();
+                    return false;
+                }
+            }
+        }
+
+        release(networkId, flowPair);
+        for (Map.Entry<DeviceId, ResourceUsage> entry : demand.entrySet()) {
+            networkUsage.computeIfAbsent(entry.getKey(), k -> new ResourceUsage()).add(entry.getValue());
+        }
+        charges.computeIfAbsent(networkId, k -> new HashMap<>()).put(flowPair, demand);
+        admitted.computeIfAbsent(networkId, k -> new AtomicLong()).incrementAndGet();
+        return true;
+    }
+
+    public synchronized void release(NetworkId networkId, FlowPair flowPair) {
+        Map<FlowPair, Map<DeviceId, ResourceUsage>> networkCharges = charges.get(networkId);
+        Map<DeviceId, ResourceUsage> charge = networkCharges == null ? null : networkCharges.remove(flowPair);
+        if (charge == null) return;
+
+        Map<DeviceId, ResourceUsage> networkUsage = usage.get(networkId);
+        for (Map.Entry<DeviceId, ResourceUsage> entry : charge.entrySet()) {
+            ResourceUsage deviceUsage = networkUsage.get(entry.getKey());
+            deviceUsage.subtract(entry.getValue());
+            if (deviceUsage.isEmpty()) networkUsage.remove(entry.getKey());
+        }
+    }
+
+    public synchronized Map<DeviceId, ResourceUsage> getUsage(NetworkId networkId) {
+        Map<DeviceId, ResourceUsage> snapshot = new HashMap<>();
+        for (Map.Entry<DeviceId, ResourceUsage> entry :
+                usage.getOrDefault(networkId, Collections.emptyMap()).entrySet()) {
+            ResourceUsage copy = new ResourceUsage();
+            copy.add(entry.getValue());
+            snapshot.put(entry.getKey(), copy);
+        }
+        return snapshot;
+    }
+
+    public long getAdmitted(NetworkId networkId) {
+        AtomicLong counter = admitted.get(networkId);
+        return counter == null ? 0 : counter.get();
+    }
+
+    public long getRejected(NetworkId networkId) {
+        AtomicLong counter = rejected.get(networkId);
+        return counter == null ? 0 : counter.get();
+    }
+}
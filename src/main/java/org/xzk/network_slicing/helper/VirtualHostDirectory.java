@@ -0,0 +1,137 @@
+package org.xzk.network_slicing.helper;
+
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.MacAddress;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.incubator.net.virtual.VirtualHost;
+import org.onosproject.incubator.net.virtual.VirtualNetworkAdminService;
+import org.onosproject.net.HostId;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+// Per virtual network host lookups by MAC, HostId and IP address. ONOS 1.14 emits no virtual host events, so a
+// network's hosts are read again from the store on a miss, and on a hit once the last read is older than a
+// second. Hosts created or removed through the vnet CLI show up or go away without a per packet store scan.
+public class VirtualHostDirectory {
+
+    // A hit is trusted this long after the hosts of its network were read
+    private static final long HIT_SYNC_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // Misses read the store at most this often per network
+    private static final long MISS_SYNC_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final VirtualNetworkAdminService virtualNetworkAdminService;
+    private final BiConsumer<NetworkId, VirtualHost> hostAdded;
+    private final BiConsumer<NetworkId, VirtualHost> hostRemoved;
+
+    private final ConcurrentHashMap<NetworkId, HostTable> hostTables;
+
+    // The callbacks see the hosts that appeared in or disappeared from the store between two reads
+    public VirtualHostDirectory(VirtualNetworkAdminService virtualNetworkAdminService,
+                                BiConsumer<NetworkId, VirtualHost> hostAdded,
+                                BiConsumer<NetworkId, VirtualHost> hostRemoved) {
+        this.virtualNetworkAdminService = virtualNetworkAdminService;
+        this.hostAdded = hostAdded;
+        this.hostRemoved = hostRemoved;
+        this.hostTables = new ConcurrentHashMap<>();
+    }
+
+    public void addHost(NetworkId networkId, VirtualHost virtualHost) {
+        hostTables.computeIfAbsent(networkId, k -> new HostTable()).add(virtualHost);
+    }
+
+    public void removeHost(NetworkId networkId, VirtualHost virtualHost) {
+        HostTable hostTable = hostTables.get(networkId);
+        if (hostTable != null) hostTable.remove(virtualHost);
+    }
+
+    public void removeNetwork(NetworkId networkId) {
+        hostTables.remove(networkId);
+    }
+
+    public VirtualHost getHost(NetworkId networkId, HostId hostId) {
+        return lookup(networkId, hostTable -> hostTable.hostsById.get(hostId));
+    }
+
+    public VirtualHost getHost(NetworkId networkId, MacAddress macAddress) {
+        return lookup(networkId, hostTable -> hostTable.hostsByMac.get(macAddress));
+    }
+
+    public VirtualHost getHost(NetworkId networkId, IpAddress ipAddress) {
+        return lookup(networkId, hostTable -> hostTable.hostsByIp.get(ipAddress));
+    }
+
+    private VirtualHost lookup(NetworkId networkId, Function<HostTable, VirtualHost> index) {
+        HostTable hostTable = hostTables.get(networkId);
+        VirtualHost virtualHost = hostTable == null ? null : index.apply(hostTable);
+        if (hostTable != null && isFresh(hostTable, virtualHost != null)) return virtualHost;
+
+        return index.apply(sync(networkId, virtualHost != null));
+    }
+
+    private static boolean isFresh(HostTable hostTable, boolean hit) {
+        return hostTable.synced && System.nanoTime() - hostTable.syncedAt < (hit ? HIT_SYNC_NANOS : MISS_SYNC_NANOS);
+    }
+
+    // Brings the hosts of the network in line with the store
+    private synchronized HostTable sync(NetworkId networkId, boolean hit) {
+        HostTable hostTable = hostTables.computeIfAbsent(networkId, k -> new HostTable());
+        // Another lookup read the store meanwhile
+        if (isFresh(hostTable, hit)) return hostTable;
+
+        Map<HostId, VirtualHost> stored = new HashMap<>();
+        for (VirtualHost virtualHost : virtualNetworkAdminService.getVirtualHosts(networkId)) {
+            stored.put(virtualHost.id(), virtualHost);
+        }
+
+        // A host whose addresses or location changed is removed and added again
+        List<VirtualHost> removed = new ArrayList<>();
+        for (VirtualHost virtualHost : hostTable.hostsById.values()) {
+            if (!virtualHost.equals(stored.get(virtualHost.id()))) removed.add(virtualHost);
+        }
+        List<VirtualHost> added = new ArrayList<>();
+        for (VirtualHost virtualHost : stored.values()) {
+            if (!virtualHost.equals(hostTable.hostsById.get(virtualHost.id()))) added.add(virtualHost);
+        }
+
+        for (VirtualHost virtualHost : removed) removeHost(networkId, virtualHost);
+        for (VirtualHost virtualHost : added) addHost(networkId, virtualHost);
+        hostTable.syncedAt = System.nanoTime();
+        hostTable.synced = true;
+
+        // The callbacks may look hosts up again
+        for (VirtualHost virtualHost : removed) hostRemoved.accept(networkId, virtualHost);
+        for (VirtualHost virtualHost : added) hostAdded.accept(networkId, virtualHost);
+        return hostTable;
+    }
+
+    private static class HostTable {
+        private final ConcurrentHashMap<HostId, VirtualHost> hostsById = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<MacAddress, VirtualHost> hostsByMac = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<IpAddress, VirtualHost> hostsByIp = new ConcurrentHashMap<>();
+        private volatile boolean synced;
+        private volatile long syncedAt;
+
+        void add(VirtualHost virtualHost) {
+            hostsById.put(virtualHost.id(), virtualHost);
+            hostsByMac.put(virtualHost.mac(), virtualHost);
+            for (IpAddress ipAddress : virtualHost.ipAddresses()) {
+                hostsByIp.put(ipAddress, virtualHost);
+            }
+        }
+
+        void remove(VirtualHost virtualHost) {
+            hostsById.remove(virtualHost.id(), virtualHost);
+            hostsByMac.remove(virtualHost.mac(), virtualHost);
+            for (IpAddress ipAddress : virtualHost.ipAddresses()) {
+                hostsByIp.remove(ipAddress, virtualHost);
+            }
+        }
+    }
+}
@@ -1,84 +1,202 @@
 package org.xzk.network_slicing.helper;
 
 import org.onosproject.net.DeviceId;
+import org.xzk.network_slicing.models.DevicePair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
 
 
+// Devices are mapped to int indices and the adjacency is kept in CSR arrays (offsets/ targets).
+// Once compiled the graph is read-only and may be searched from several threads at once.
 public class VirtualNetworkGraph {
 
+    private static final int[] NO_PATH = new int[0];
+    private static final ThreadLocal<BfsScratch> SCRATCH = ThreadLocal.withInitial(BfsScratch::new);
+
     private final Logger log = LoggerFactory.getLogger(getClass());
-    private HashMap<DeviceId, LinkedList<DeviceId>> adj;
+
+    private final HashMap<DeviceId, Integer> deviceIndices;
+    private final ArrayList<DeviceId> devices;
+
+    // Edge list, only used until the graph is compiled
+    private int[] edgeSources;
+    private int[] edgeTargets;
+    private int edgeCount;
+
+    // CSR adjacency: neighbours of device i are targets[offsets[i]] ... targets[offsets[i + 1] - 1]
+    private int[] offsets;
+    private int[] targets;
+    private volatile boolean compiled;
 
     public VirtualNetworkGraph() {
-        adj = new HashMap<>();
+        deviceIndices = new HashMap<>();
+        devices = new ArrayList<>();
+        edgeSources = new int[16];
+        edgeTargets = new int[16];
     }
 
-    public void addEdge(DeviceId sourceDeviceId, DeviceId destinationDeviceId) {
-        if (!adj.containsKey(sourceDeviceId)) {
-            adj.put(sourceDeviceId, new LinkedList<>());
+    public synchronized void addEdge(DeviceId sourceDeviceId, DeviceId destinationDeviceId) {
+        int source = indexOrAdd(sourceDeviceId);
+        int target = indexOrAdd(destinationDeviceId);
+
+        if (edgeCount == edgeSources.length) {
+            edgeSources = Arrays.copyOf(edgeSources, edgeCount * 2);
+            edgeTargets = Arrays.copyOf(edgeTargets, edgeCount * 2);
         }
-        adj.get(sourceDeviceId).add(destinationDeviceId);
+        edgeSources[edgeCount] = source;
+        edgeTargets[edgeCount] = target;
+        edgeCount++;
+        compiled = false;
     }
 
+    public int indexOf(DeviceId deviceId) {
+        Integer index = deviceIndices.get(deviceId);
+        return index == null ? -1 : index;
+    }
+
+    public DeviceId deviceAt(int index) {
+        return devices.get(index);
+    }
+
+    public int deviceCount() {
+        return devices.size();
+    }
+
+    // If it's A->B->C, it will return C, B, A. Order is reversed
     public ArrayList<DeviceId> bfsForShortestPath(DeviceId sourceDeviceId, DeviceId destinationDeviceId) {
-        HashMap<DeviceId, Boolean> visited = new HashMap<>();
-        HashMap<DeviceId, DeviceId> visitedFrom = new HashMap<>();
         ArrayList<DeviceId> shortestPathList = new ArrayList<>();
 
         if (sourceDeviceId.equals(destinationDeviceId)) {
             return shortestPathList;
         }
 
-        Queue<DeviceId> queue = new LinkedList<>();
-        Stack<DeviceId> pathStack = new Stack<>();
-
-        queue.add(sourceDeviceId);
-        pathStack.add(sourceDeviceId);
-        visited.put(sourceDeviceId, true);
-
-        while (!queue.isEmpty()) {
-            DeviceId currentDevice = queue.poll();
-            LinkedList<DeviceId> adjList = this.adj.get(currentDevice) == null ? new LinkedList<>() : this.adj.get(currentDevice);
-
-            for (DeviceId deviceId : adjList) {
-                if (!visited.containsKey(deviceId)) {
-                    if (deviceId.equals(destinationDeviceId)) {
-                        visited.put(deviceId, true);
-                        visitedFrom.put(deviceId, currentDevice);
-                        pathStack.add(deviceId);
-                        break;
-                    } else {
-                        queue.add(deviceId);
-                        visited.put(deviceId, true);
-                        visitedFrom.put(deviceId, currentDevice);
-                        pathStack.add(deviceId);
-                    }
+        int[] path = shortestPath(indexOf(sourceDeviceId), indexOf(destinationDeviceId));
+        for (int i = path.length - 1; i >= 0; i--) {
+            shortestPathList.add(devices.get(path[i]));
+        }
+        return shortestPathList;
+    }
+
+    // Returns the device indices from source to destination, or an empty array if there is no path
+    public int[] shortestPath(int source, int destination) {
+        return shortestPath(source, destination, Collections.emptySet(), Collections.emptySet());
+    }
+
+    // Same search, without entering the given devices or following the given edges
+    public int[] shortestPath(int source, int destination, Set<DevicePair> avoidedEdges, Set<DeviceId> avoidedDevices) {
+        if (source < 0 || destination < 0 || source == destination) {
+            return NO_PATH;
+        }
+        if (!compiled) compile();
+
+        int deviceCount = offsets.length - 1;
+        BfsScratch scratch = SCRATCH.get();
+        scratch.prepare(deviceCount);
+        int[] parent = scratch.parent;
+        int[] queue = scratch.queue;
+        int[] visited = scratch.visited;
+        int stamp = scratch.stamp;
+
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = source;
+        visited[source] = stamp;
+        parent[source] = -1;
+
+        boolean avoiding = !avoidedEdges.isEmpty() || !avoidedDevices.isEmpty();
+        boolean found = false;
+        while (head < tail && !found) {
+            int current = queue[head++];
+            for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                int next = targets[e];
+                if (visited[next] == stamp) continue;
+                if (avoiding && (avoidedDevices.contains(devices.get(next)) ||
+                        avoidedEdges.contains(new DevicePair(devices.get(current), devices.get(next))))) continue;
+
+                visited[next] = stamp;
+                parent[next] = current;
+                if (next == destination) {
+                    found = true;
+                    break;
                 }
+                queue[tail++] = next;
             }
         }
 
-        // If impossible to start BFS
-        if (!pathStack.contains(sourceDeviceId) || !pathStack.contains(destinationDeviceId)) {
-            return shortestPathList;
+        if (!found) {
+            return NO_PATH;
         }
 
-        DeviceId currentSrc = destinationDeviceId;
-        shortestPathList.add(currentSrc);
+        int hops = 1;
+        for (int v = destination; v != source; v = parent[v]) hops++;
 
-        // Quick hack to fix the algorithm to make sure that the shortest path is returned
-        DeviceId previousDevice;
-        while (true) {
-            previousDevice = visitedFrom.get(currentSrc);
-            shortestPathList.add(previousDevice);
-            if (previousDevice.equals(sourceDeviceId)) {
-                break;
-            }
-            currentSrc = previousDevice;
+        int[] path = new int[hops];
+        int v = destination;
+        for (int i = hops - 1; i >= 0; i--) {
+            path[i] = v;
+            v = parent[v];
         }
+        return path;
+    }
 
-        return shortestPathList;
+    private int indexOrAdd(DeviceId deviceId) {
+        Integer index = deviceIndices.get(deviceId);
+        if (index == null) {
+            index = devices.size();
+            deviceIndices.put(deviceId, index);
+            devices.add(deviceId);
+        }
+        return index;
+    }
+
+    private synchronized void compile() {
+        if (compiled) return;
+
+        int deviceCount = devices.size();
+        int[] newOffsets = new int[deviceCount + 1];
+        int[] newTargets = new int[edgeCount];
+
+        for (int e = 0; e < edgeCount; e++) {
+            newOffsets[edgeSources[e] + 1]++;
+        }
+        for (int i = 0; i < deviceCount; i++) {
+            newOffsets[i + 1] += newOffsets[i];
+        }
+
+        // Fill in insertion order so that ties are broken the same way as before
+        int[] fill = Arrays.copyOf(newOffsets, deviceCount);
+        for (int e = 0; e < edgeCount; e++) {
+            newTargets[fill[edgeSources[e]]++] = edgeTargets[e];
+        }
+
+        offsets = newOffsets;
+        targets = newTargets;
+        compiled = true;
+    }
+
+    // Per thread BFS working arrays, reused across searches and graphs
+    private static class BfsScratch {
+        private int[] parent = new int[0];
+        private int[] queue = new int[0];
+        private int[] visited = new int[0];
+        private int stamp;
+
+        void prepare(int deviceCount) {
+            if (parent.length < deviceCount) {
+                int capacity = Math.max(deviceCount, parent.length * 2);
+                parent = new int[capacity];
+                queue = new int[capacity];
+                visited = new int[capacity];
+                stamp = 0;
+            }
+
+            // Bumping the stamp clears the visited marks without touching the array
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(visited, 0);
+                stamp = 1;
+            }
+        }
     }
 }
@@ -0,0 +1,83 @@
+package org.xzk.network_slicing.helper;
+
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.net.Link;
+import org.xzk.network_slicing.models.DevicePair;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// Per virtual network graph and link index snapshots, rebuilt only after the virtual links of the network changed
+public class VirtualTopologyCache {
+
+    public interface TopologyChangeHandler {
+        void topologyChanged(NetworkId networkId, long version, Set<DevicePair> removedEdges, Set<DevicePair> addedEdges);
+    }
+
+    private final ConcurrentHashMap<NetworkId, VirtualTopologySnapshot> snapshots;
+    private final ConcurrentHashMap<NetworkId, Map<DevicePair, Link>> previousLinks;
+    private final AtomicLong versions;
+    private final TopologyChangeHandler changeHandler;
+
+    public VirtualTopologyCache(TopologyChangeHandler changeHandler) {
+        this.snapshots = new ConcurrentHashMap<>();
+        this.previousLinks = new ConcurrentHashMap<>();
+        this.versions = new AtomicLong();
+        this.changeHandler = changeHandler;
+    }
+
+    // The returned snapshot must not be modified, it is shared by all concurrent readers
+    public VirtualTopologySnapshot getSnapshot(NetworkId networkId, Function<NetworkId, Map<DevicePair, Link>> linkLoader) {
+        return snapshots.computeIfAbsent(networkId, id -> build(id, linkLoader.apply(id)));
+    }
+
+    public VirtualNetworkGraph getGraph(NetworkId networkId, Function<NetworkId, Map<DevicePair, Link>> linkLoader) {
+        return getSnapshot(networkId, linkLoader).getGraph();
+    }
+
+    public void invalidate(NetworkId networkId) {
+        snapshots.remove(networkId);
+    }
+
+    public void invalidateAll() {
+        snapshots.clear();
+    }
+
+    public void removeNetwork(NetworkId networkId) {
+        snapshots.remove(networkId);
+        previousLinks.remove(networkId);
+    }
+
+    private VirtualTopologySnapshot build(NetworkId networkId, Map<DevicePair, Link> links) {
+        long version = versions.incrementAndGet();
+
+        VirtualNetworkGraph graph = new VirtualNetworkGraph();
+        for (DevicePair edge : links.keySet()) {
+            graph.addEdge(edge.getSrc(), edge.getDst());
+        }
+
+        // Report only what differs from the last snapshot of this network, a link moved to other ports counts as both
+        Map<DevicePair, Link> previous = previousLinks.put(networkId, links);
+        if (previous == null) previous = Collections.emptyMap();
+
+        Set<DevicePair> removedEdges = new HashSet<>();
+        for (Map.Entry<DevicePair, Link> entry : previous.entrySet()) {
+            if (!Objects.equals(entry.getValue(), links.get(entry.getKey()))) removedEdges.add(entry.getKey());
+        }
+        Set<DevicePair> addedEdges = new HashSet<>();
+        for (Map.Entry<DevicePair, Link> entry : links.entrySet()) {
+            if (!Objects.equals(entry.getValue(), previous.get(entry.getKey()))) addedEdges.add(entry.getKey());
+        }
+
+        if (changeHandler != null) {
+            changeHandler.topologyChanged(networkId, version, removedEdges, addedEdges);
+        }
+        return new VirtualTopologySnapshot(version, graph, links);
+    }
+}
@@ -0,0 +1,40 @@
+package org.xzk.network_slicing.helper;
+
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Link;
+import org.xzk.network_slicing.models.DevicePair;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+// Immutable view of a virtual network topology at a given version
+public class VirtualTopologySnapshot {
+
+    private final long version;
+    private final VirtualNetworkGraph graph;
+    private final Map<DevicePair, Link> links;
+
+    public VirtualTopologySnapshot(long version, VirtualNetworkGraph graph, Map<DevicePair, Link> links) {
+        this.version = version;
+        this.graph = graph;
+        this.links = Collections.unmodifiableMap(links);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public VirtualNetworkGraph getGraph() {
+        return graph;
+    }
+
+    public Set<DevicePair> getEdges() {
+        return links.keySet();
+    }
+
+    // (srcDevice, dstDevice) ---> VirtualLink
+    public Link getLink(DeviceId src, DeviceId dst) {
+        return links.get(new DevicePair(src, dst));
+    }
+}
@@ -0,0 +1,156 @@
+package org.xzk.network_slicing.models;
+
+import org.onlab.packet.Ip4Prefix;
+import org.onlab.packet.IPv4;
+
+// One slice ACL entry over IPv4 source/ destination prefixes, the IP protocol and inclusive TCP/ UDP port
+// ranges. Protocol 0 matches any protocol, port ranges other than the full one need TCP or UDP.
+public class AclRule {
+
+    public enum Action { ALLOW, DENY }
+
+    public static final byte ANY_PROTOCOL = 0;
+    public static final int MIN_PORT = 0;
+    public static final int MAX_PORT = 65535;
+
+    private final int id;
+    private final int srcAddress;
+    private final int srcLength;
+    private final int dstAddress;
+    private final int dstLength;
+    private final byte protocol;
+    private final int srcPortMin;
+    private final int srcPortMax;
+    private final int dstPortMin;
+    private final int dstPortMax;
+    private final Action action;
+
+    public AclRule(int id, int srcAddress, int srcLength, int dstAddress, int dstLength, byte protocol,
+                   int srcPortMin, int srcPortMax, int dstPortMin, int dstPortMax, Action action) {
+        if (protocol != IPv4.PROTOCOL_TCP && protocol != IPv4.PROTOCOL_UDP &&
+                (!isFullRange(srcPortMin, srcPortMax) || !isFullRange(dstPortMin, dstPortMax))) {
+            throw new IllegalArgumentException("Port ranges need TCP or UDP");
+        }
+        if (srcPortMin > srcPortMax || dstPortMin > dstPortMax ||
+                srcPortMin < MIN_PORT || dstPortMin < MIN_PORT || srcPortMax > MAX_PORT || dstPortMax > MAX_PORT) {
+            throw new IllegalArgumentException("Invalid port range");
+        }
+        this.id = id;
+        this.srcAddress = srcAddress & mask(srcLength);
+        this.srcLength = srcLength;
+        this.dstAddress = dstAddress & mask(dstLength);
+        this.dstLength = dstLength;
+        this.protocol = protocol;
+        this.srcPortMin = srcPortMin;
+        this.srcPortMax = srcPortMax;
+        this.dstPortMin = dstPortMin;
+        this.dstPortMax = dstPortMax;
+        this.action = action;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getSrcAddress() {
+        return srcAddress;
+    }
+
+    public int getSrcLength() {
+        return srcLength;
+    }
+
+    public int getDstAddress() {
+        return dstAddress;
+    }
+
+    public int getDstLength() {
+        return dstLength;
+    }
+
+    public Ip4Prefix getSrcPrefix() {
+        return Ip4Prefix.valueOf(srcAddress, srcLength);
+    }
+
+    public Ip4Prefix getDstPrefix() {
+        return Ip4Prefix.valueOf(dstAddress, dstLength);
+    }
+
+    public byte getProtocol() {
+        return protocol;
+    }
+
+    public int getSrcPortMin() {
+        return srcPortMin;
+    }
+
+    public int getSrcPortMax() {
+        return srcPortMax;
+    }
+
+    public int getDstPortMin() {
+        return dstPortMin;
+    }
+
+    public int getDstPortMax() {
+        return dstPortMax;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    // Protocol and ports only, the prefixes are matched by the classifier trie
+    public boolean matchesTransport(byte packetProtocol, int srcPort, int dstPort) {
+        return (protocol == ANY_PROTOCOL || protocol == packetProtocol) &&
+                srcPort >= srcPortMin && srcPort <= srcPortMax &&
+                dstPort >= dstPortMin && dstPort <= dstPortMax;
+    }
+
+    // Every packet matched by the other entry is matched by this one
+    public boolean covers(AclRule other) {
+        return srcLength <= other.srcLength && (other.srcAddress & mask(srcLength)) == srcAddress &&
+                dstLength <= other.dstLength && (other.dstAddress & mask(dstLength)) == dstAddress &&
+                (protocol == ANY_PROTOCOL || protocol == other.protocol) &&
+                srcPortMin <= other.srcPortMin && srcPortMax >= other.srcPortMax &&
+                dstPortMin <= other.dstPortMin && dstPortMax >= other.dstPortMax;
+    }
+
+    public boolean overlaps(AclRule other) {
+        int srcMask = mask(Math.min(srcLength, other.srcLength));
+        int dstMask = mask(Math.min(dstLength, other.dstLength));
+        return (srcAddress & srcMask) == (other.srcAddress & srcMask) &&
+                (dstAddress & dstMask) == (other.dstAddress & dstMask) &&
+                (protocol == ANY_PROTOCOL || other.protocol == ANY_PROTOCOL || protocol == other.protocol) &&
+                srcPortMin <= other.srcPortMax && other.srcPortMin <= srcPortMax &&
+                dstPortMin <= other.dstPortMax && other.dstPortMin <= dstPortMax;
+    }
+
+    // Same entry narrowed down to part of its match
+    public AclRule narrow(int srcAddress, int srcLength, int dstAddress, int dstLength,
+                          int srcPortMin, int srcPortMax, int dstPortMin, int dstPortMax) {
+        return new AclRule(id, srcAddress, srcLength, dstAddress, dstLength, protocol,
+                srcPortMin, srcPortMax, dstPortMin, dstPortMax, action);
+    }
+
+    public static int mask(int length) {
+        return length == 0 ? 0 : -1 << (32 - length);
+    }
+
+    private static boolean isFullRange(int min, int max) {
+        return min == MIN_PORT && max == MAX_PORT;
+    }
+
+    @Override
+    public String toString() {
+        return "AclRule{" +
+                "id=" + id +
+                ", src=" + getSrcPrefix() +
+                ", dst=" + getDstPrefix() +
+                ", protocol=" + (protocol == ANY_PROTOCOL ? "any" : Integer.toString(protocol & 0xFF)) +
+                ", srcPorts=" + srcPortMin + "-" + srcPortMax +
+                ", dstPorts=" + dstPortMin + "-" + dstPortMax +
+                ", action=" + action +
+                '}';
+    }
+}
@@ -0,0 +1,44 @@
+package org.xzk.network_slicing.models;
+
+import org.onlab.packet.MplsLabel;
+import org.onosproject.net.DeviceId;
+
+import java.util.Objects;
+
+public class DeviceLabel {
+
+    private final DeviceId deviceId;
+    private final MplsLabel mplsLabel;
+
+    public DeviceLabel(DeviceId deviceId, MplsLabel mplsLabel) {
+        this.deviceId = deviceId;
+        this.mplsLabel = mplsLabel;
+    }
+
+    public DeviceId getDeviceId() {
+        return deviceId;
+    }
+
+    public MplsLabel getMplsLabel() {
+        return mplsLabel;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        DeviceLabel that = (DeviceLabel) o;
+        return Objects.equals(deviceId, that.deviceId) &&
+                Objects.equals(mplsLabel, that.mplsLabel);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * deviceId.hashCode() + mplsLabel.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return deviceId + " / " + mplsLabel;
+    }
+}
@@ -0,0 +1,47 @@
+package org.xzk.network_slicing.models;
+
+import org.onosproject.net.DeviceId;
+
+import java.util.Objects;
+
+public class DevicePair {
+
+    private final DeviceId src;
+    private final DeviceId dst;
+
+    public DevicePair(DeviceId src, DeviceId dst) {
+        this.src = src;
+        this.dst = dst;
+    }
+
+    public DeviceId getSrc() {
+        return src;
+    }
+
+    public DeviceId getDst() {
+        return dst;
+    }
+
+    public DevicePair reverse() {
+        return new DevicePair(dst, src);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        DevicePair devicePair = (DevicePair) o;
+        return Objects.equals(src, devicePair.src) &&
+                Objects.equals(dst, devicePair.dst);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * src.hashCode() + dst.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return src + " -> " + dst;
+    }
+}
@@ -0,0 +1,73 @@
+package org.xzk.network_slicing.models;
+
+import org.onlab.packet.MplsLabel;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Link;
+import org.onosproject.net.flow.FlowRule;
+
+// One hop of a sink tree towards an egress device, shared by every flow crossing it.
+// The IP demultiplexing rules at the egress carry no label and no next hop.
+public class FecEntry {
+
+    private final DeviceId deviceId;
+    private final DeviceId egressDeviceId;
+    private final Link nextHopLink;
+    private final MplsLabel mplsLabel;
+    private final FlowRule flowRule;
+    private int refCount;
+
+    public FecEntry(DeviceId deviceId, DeviceId egressDeviceId, Link nextHopLink,
+                    MplsLabel mplsLabel, FlowRule flowRule) {
+        this.deviceId = deviceId;
+        this.egressDeviceId = egressDeviceId;
+        this.nextHopLink = nextHopLink;
+        this.mplsLabel = mplsLabel;
+        this.flowRule = flowRule;
+    }
+
+    public DeviceId getDeviceId() {
+        return deviceId;
+    }
+
+    public DeviceId getEgressDeviceId() {
+        return egressDeviceId;
+    }
+
+    public Link getNextHopLink() {
+        return nextHopLink;
+    }
+
+    public DeviceId getNextHopDeviceId() {
+        return nextHopLink == null ? null : nextHopLink.dst().deviceId();
+    }
+
+    public MplsLabel getMplsLabel() {
+        return mplsLabel;
+    }
+
+    public FlowRule getFlowRule() {
+        return flowRule;
+    }
+
+    public int getRefCount() {
+        return refCount;
+    }
+
+    public int acquire() {
+        return ++refCount;
+    }
+
+    public int release() {
+        return --refCount;
+    }
+
+    @Override
+    public String toString() {
+        return "FecEntry{" +
+                "deviceId=" + deviceId +
+                ", egressDeviceId=" + egressDeviceId +
+                ", mplsLabel=" + mplsLabel +
+                ", refCount=" + refCount +
+                '}';
+    }
+}
@@ -2,16 +2,27 @@ package org.xzk.network_slicing.models;
 
 import org.onlab.packet.IpAddress;
 
-import java.util.Objects;
+// Source and destination host of a flow. IPv4 pairs are compared and hashed through both addresses packed
+// into one long, other pairs fall back to the addresses themselves.
+public final class FlowPair {
 
-public class FlowPair {
+    private final IpAddress src;
+    private final IpAddress dst;
 
-    private IpAddress src;
-    private IpAddress dst;
+    private final boolean packed;
+    private final long key;
+    private final int hash;
 
     public FlowPair(IpAddress src, IpAddress dst) {
         this.src = src;
         this.dst = dst;
+        this.packed = src.isIp4() && dst.isIp4();
+        this.key = packed ? pack(src.getIp4Address().toInt(), dst.getIp4Address().toInt()) : 0;
+        this.hash = packed ? mix(key) : 31 * src.hashCode() + dst.hashCode();
+    }
+
+    public static long pack(int src, int dst) {
+        return ((long) src << 32) | (dst & 0xFFFFFFFFL);
     }
 
     public IpAddress getSrc() {
@@ -22,17 +33,41 @@ public class FlowPair {
         return dst;
     }
 
+    // Only meaningful for IPv4 pairs
+    public boolean isPacked() {
+        return packed;
+    }
+
+    public long getKey() {
+        return key;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         FlowPair flowPair = (FlowPair) o;
-        return Objects.equals(src, flowPair.src) &&
-                Objects.equals(dst, flowPair.dst);
+        if (packed != flowPair.packed) return false;
+        return packed ? key == flowPair.key : src.equals(flowPair.src) && dst.equals(flowPair.dst);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(src.toString() + dst.toString());
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return src + " --> " + dst;
+    }
+
+    // Finalizer of MurmurHash3, spreads both addresses over all bits of the hash
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
     }
 }
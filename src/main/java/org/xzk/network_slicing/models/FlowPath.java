@@ -0,0 +1,72 @@
+package org.xzk.network_slicing.models;
+
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.Link;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Ports and links a flow is forwarded over, from the source host port to the destination host port.
+// Routed flows get the destination MAC rewritten at the ingress. Protected flows also hold their backup links.
+public class FlowPath {
+
+    private final ConnectPoint source;
+    private final List<Link> links;
+    private final ConnectPoint destination;
+    private final boolean routed;
+    private final List<Link> backupLinks;
+
+    public FlowPath(ConnectPoint source, List<Link> links, ConnectPoint destination, boolean routed) {
+        this(source, links, destination, routed, Collections.emptyList());
+    }
+
+    public FlowPath(ConnectPoint source, List<Link> links, ConnectPoint destination, boolean routed,
+                    List<Link> backupLinks) {
+        this.source = source;
+        this.links = links;
+        this.destination = destination;
+        this.routed = routed;
+        this.backupLinks = backupLinks;
+    }
+
+    public ConnectPoint getSource() {
+        return source;
+    }
+
+    public List<Link> getLinks() {
+        return links;
+    }
+
+    public ConnectPoint getDestination() {
+        return destination;
+    }
+
+    public boolean isRouted() {
+        return routed;
+    }
+
+    public List<Link> getBackupLinks() {
+        return backupLinks;
+    }
+
+    // Primary and backup links
+    public List<Link> getAllLinks() {
+        if (backupLinks.isEmpty()) return links;
+        List<Link> allLinks = new ArrayList<>(links);
+        allLinks.addAll(backupLinks);
+        return allLinks;
+    }
+
+    public List<ConnectPoint> getConnectPoints() {
+        List<Link> allLinks = getAllLinks();
+        List<ConnectPoint> connectPoints = new ArrayList<>(allLinks.size() * 2 + 2);
+        connectPoints.add(source);
+        for (Link link : allLinks) {
+            connectPoints.add(link.src());
+            connectPoints.add(link.dst());
+        }
+        connectPoints.add(destination);
+        return connectPoints;
+    }
+}
@@ -8,10 +8,17 @@ public class FlowRuleInformation {
 
     private FlowRule flowRule;
     private MplsLabel mplsLabel;
+    // Sink tree rule owned by the FecLabelTable, not removed along with the flow
+    private boolean shared;
 
     public FlowRuleInformation(FlowRule flowRule, MplsLabel mplsLabel) {
+        this(flowRule, mplsLabel, false);
+    }
+
+    public FlowRuleInformation(FlowRule flowRule, MplsLabel mplsLabel, boolean shared) {
         this.flowRule = flowRule;
         this.mplsLabel = mplsLabel;
+        this.shared = shared;
     }
 
     public DeviceId getFlowRuleDeviceId() {
@@ -25,4 +32,8 @@ public class FlowRuleInformation {
     public MplsLabel getMplsLabel() {
         return this.mplsLabel;
     }
+
+    public boolean isShared() {
+        return this.shared;
+    }
 }
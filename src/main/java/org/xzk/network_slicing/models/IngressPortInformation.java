@@ -0,0 +1,42 @@
+package org.xzk.network_slicing.models;
+
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.incubator.net.virtual.TenantId;
+
+public class IngressPortInformation {
+
+    private final TenantId tenantId;
+    private final NetworkId networkId;
+    private final boolean edge;
+
+    public IngressPortInformation(TenantId tenantId, NetworkId networkId, boolean edge) {
+        this.tenantId = tenantId;
+        this.networkId = networkId;
+        this.edge = edge;
+    }
+
+    public TenantId getTenantId() {
+        return tenantId;
+    }
+
+    public NetworkId getNetworkId() {
+        return networkId;
+    }
+
+    public boolean isEdge() {
+        return edge;
+    }
+
+    public boolean isBound() {
+        return networkId != null;
+    }
+
+    @Override
+    public String toString() {
+        return "IngressPortInformation{" +
+                "tenantId=" + tenantId +
+                ", networkId=" + networkId +
+                ", edge=" + edge +
+                '}';
+    }
+}
@@ -1,32 +1,204 @@
 package org.xzk.network_slicing.models;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Labels of one device, tracked as bits over the 20 bit label space. Ranges can be set aside for static
+// labels or handed to a single virtual network, everything else is shared by all networks on the device.
 public class MplsLabelPool {
 
-    private final int MIN_LABEL = 1;
-    private final int MAX_LABEL = 1048576;
+    // 0 - 15 are reserved labels
+    public static final int MIN_LABEL = 16;
+    public static final int MAX_LABEL = 1048575;
 
-    private int currentLabel = 0;
+    private final Logger log = LoggerFactory.getLogger(getClass());
 
-    private Queue<Integer> withdrawedLabels = new LinkedList<>();
+    private final LabelBitmap sharedLabels;
+    private final Map<NetworkId, LabelBitmap> networkLabels;
+    private final List<int[]> staticRanges;
 
     public MplsLabelPool() {
-        currentLabel = 1;
+        sharedLabels = new LabelBitmap(MIN_LABEL, MAX_LABEL);
+        networkLabels = new HashMap<>();
+        staticRanges = new ArrayList<>();
+    }
+
+    public synchronized int getNextLabel() {
+        return allocate(sharedLabels);
     }
 
-    public int getNextLabel() {
-        if (!withdrawedLabels.isEmpty()) {
-            return withdrawedLabels.poll();
-        } else {
-            // TODO: currentLabel++ < MAX_LABEL ?
-            return currentLabel++;
+    // Taken from the range of the network if it has one
+    public synchronized int getNextLabel(NetworkId networkId) {
+        LabelBitmap labels = networkLabels.get(networkId);
+        return allocate(labels != null ? labels : sharedLabels);
+    }
+
+    // Returns false if the label was not handed out, e.g. returned twice
+    public synchronized boolean returnLabel(int mplsLabel) {
+        boolean returned = false;
+        LabelBitmap labels = getOwner(mplsLabel);
+        if (labels != null && !isStatic(mplsLabel)) {
+            returned = labels.free(mplsLabel);
         }
+
+        if (!returned) {
+            log.warn("MPLS label {} returned but was not allocated", mplsLabel);
+        }
+        return returned;
+    }
+
+    // Static labels are never handed out. Fails if part of the range is already in use.
+    public synchronized boolean reserveStaticRange(int from, int to) {
+        if (!sharedLabels.reserve(from, to)) return false;
+        staticRanges.add(new int[]{from, to});
+        return true;
+    }
+
+    public synchronized boolean reserveNetworkRange(NetworkId networkId, int from, int to) {
+        if (networkLabels.containsKey(networkId)) return false;
+        if (!sharedLabels.reserve(from, to)) return false;
+        networkLabels.put(networkId, new LabelBitmap(from, to));
+        return true;
     }
 
-    public void returnLabel(int MplsLabel) {
-        withdrawedLabels.add(MplsLabel);
+    public synchronized int getAllocatedCount() {
+        int count = sharedLabels.allocated;
+        for (LabelBitmap labels : networkLabels.values()) {
+            count += labels.allocated;
+        }
+        return count;
+    }
+
+    private int allocate(LabelBitmap labels) {
+        int label = labels.allocate();
+        if (label < 0) {
+            throw new IllegalStateException("MPLS label space exhausted");
+        }
+        return label;
+    }
+
+    private LabelBitmap getOwner(int mplsLabel) {
+        for (LabelBitmap labels : networkLabels.values()) {
+            if (labels.contains(mplsLabel)) return labels;
+        }
+        return sharedLabels.contains(mplsLabel) ? sharedLabels : null;
+    }
+
+    private boolean isStatic(int mplsLabel) {
+        for (int[] range : staticRanges) {
+            if (mplsLabel >= range[0] && mplsLabel <= range[1]) return true;
+        }
+        return false;
     }
 
+    // Set bit = label in use. Words are grouped in chunks of 64 (4096 labels), allocated on first use and
+    // dropped once empty. freeWords has a bit per word that still has a free label, freeChunks a bit per
+    // chunk with such a word, so a free label is found with a handful of trailing zero counts.
+    private static class LabelBitmap {
+        private final int base;
+        private final int size;
+        private final int wordCount;
+
+        private final long[][] chunks;
+        private final int[] chunkUsage;
+        private final long[] freeWords;
+        private final long[] freeChunks;
+        private int allocated;
+
+        LabelBitmap(int min, int max) {
+            base = min;
+            size = max - min + 1;
+            wordCount = (size + 63) >>> 6;
+
+            int chunkCount = (wordCount + 63) >>> 6;
+            chunks = new long[chunkCount][];
+            chunkUsage = new int[chunkCount];
+            freeWords = new long[chunkCount];
+            freeChunks = new long[(chunkCount + 63) >>> 6];
+
+            for (int word = 0; word < wordCount; word++) {
+                freeWords[word >>> 6] |= 1L << (word & 63);
+            }
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                freeChunks[chunk >>> 6] |= 1L << (chunk & 63);
+            }
+        }
+
+        boolean contains(int label) {
+            return label >= base && label - base < size;
+        }
+
+        int allocate() {
+            for (int i = 0; i < freeChunks.length; i++) {
+                if (freeChunks[i] == 0) continue;
+
+                int chunk = (i << 6) + Long.numberOfTrailingZeros(freeChunks[i]);
+                int word = (chunk << 6) + Long.numberOfTrailingZeros(freeWords[chunk]);
+                int bit = Long.numberOfTrailingZeros(~chunk(chunk)[word & 63]);
+                set((word << 6) + bit);
+                return base + (word << 6) + bit;
+            }
+            return -1;
+        }
+
+        boolean free(int label) {
+            int index = label - base;
+            int chunk = index >>> 12;
+            long mask = 1L << (index & 63);
+            if (chunks[chunk] == null || (chunks[chunk][(index >>> 6) & 63] & mask) == 0) return false;
+
+            chunks[chunk][(index >>> 6) & 63] &= ~mask;
+            freeWords[chunk] |= 1L << ((index >>> 6) & 63);
+            freeChunks[chunk >>> 6] |= 1L << (chunk & 63);
+            allocated--;
+            if (--chunkUsage[chunk] == 0) chunks[chunk] = null;
+            return true;
+        }
+
+        // All or nothing, the range must be fully free
+        boolean reserve(int from, int to) {
+            if (from > to || !contains(from) || !contains(to)) return false;
+            for (int label = from; label <= to; label++) {
+                int index = label - base;
+                long[] words = chunks[index >>> 12];
+                if (words != null && (words[(index >>> 6) & 63] & (1L << (index & 63))) != 0) return false;
+            }
+            for (int label = from; label <= to; label++) {
+                set(label - base);
+            }
+            return true;
+        }
+
+        private void set(int index) {
+            int chunk = index >>> 12;
+            int word = (index >>> 6) & 63;
+            long[] words = chunk(chunk);
+
+            words[word] |= 1L << (index & 63);
+            allocated++;
+            chunkUsage[chunk]++;
+            if (words[word] == -1L) {
+                freeWords[chunk] &= ~(1L << word);
+                if (freeWords[chunk] == 0) freeChunks[chunk >>> 6] &= ~(1L << (chunk & 63));
+            }
+        }
+
+        private long[] chunk(int chunk) {
+            if (chunks[chunk] == null) {
+                chunks[chunk] = new long[64];
+                // Bits past the end of the range are never free
+                int lastWord = wordCount - 1;
+                if (lastWord >>> 6 == chunk && (size & 63) != 0) {
+                    chunks[chunk][lastWord & 63] = -1L << (size & 63);
+                }
+            }
+            return chunks[chunk];
+        }
+    }
 }
@@ -0,0 +1,47 @@
+package org.xzk.network_slicing.models;
+
+import org.onosproject.incubator.net.virtual.NetworkId;
+
+import java.util.Objects;
+
+public class NetworkFlowPair {
+
+    private final NetworkId networkId;
+    private final FlowPair flowPair;
+
+    public NetworkFlowPair(NetworkId networkId, FlowPair flowPair) {
+        this.networkId = networkId;
+        this.flowPair = flowPair;
+    }
+
+    public NetworkId getNetworkId() {
+        return networkId;
+    }
+
+    public FlowPair getFlowPair() {
+        return flowPair;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NetworkFlowPair that = (NetworkFlowPair) o;
+        return Objects.equals(networkId, that.networkId) &&
+                Objects.equals(flowPair, that.flowPair);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * networkId.hashCode() + flowPair.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "NetworkFlowPair{" +
+                "networkId=" + networkId +
+                ", src=" + flowPair.getSrc() +
+                ", dst=" + flowPair.getDst() +
+                '}';
+    }
+}
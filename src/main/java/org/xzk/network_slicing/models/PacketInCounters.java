@@ -0,0 +1,44 @@
+package org.xzk.network_slicing.models;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Packet ins of one virtual network, by what the rate limiter did with them
+public class PacketInCounters {
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder networkThrottled = new LongAdder();
+    private final LongAdder portThrottled = new LongAdder();
+    private final LongAdder portsBlocked = new LongAdder();
+
+    public void accepted() {
+        accepted.increment();
+    }
+
+    public void networkThrottled() {
+        networkThrottled.increment();
+    }
+
+    public void portThrottled() {
+        portThrottled.increment();
+    }
+
+    public void portBlocked() {
+        portsBlocked.increment();
+    }
+
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    public long getNetworkThrottled() {
+        return networkThrottled.sum();
+    }
+
+    public long getPortThrottled() {
+        return portThrottled.sum();
+    }
+
+    public long getPortsBlocked() {
+        return portsBlocked.sum();
+    }
+}
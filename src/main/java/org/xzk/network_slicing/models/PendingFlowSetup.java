@@ -0,0 +1,76 @@
+package org.xzk.network_slicing.models;
+
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.packet.InboundPacket;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// A flow setup in progress, packets of the same flow are held back until the rules are in place
+public class PendingFlowSetup {
+
+    private final int maxQueuedPackets;
+    private final long createdAt;
+    private final List<InboundPacket> queuedPackets;
+
+    private DeviceId ingressDeviceId;
+    private TrafficTreatment ingressTreatment;
+    private int remainingRules;
+    private boolean finished;
+
+    public PendingFlowSetup(int maxQueuedPackets) {
+        this.maxQueuedPackets = maxQueuedPackets;
+        this.createdAt = System.currentTimeMillis();
+        this.queuedPackets = new ArrayList<>();
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    // Returns false once the setup is finished, the caller has to send the packet itself
+    public synchronized boolean enqueue(InboundPacket inboundPacket) {
+        if (finished) return false;
+        if (queuedPackets.size() < maxQueuedPackets) {
+            queuedPackets.add(inboundPacket);
+        }
+        return true;
+    }
+
+    public synchronized void setIngress(DeviceId ingressDeviceId, TrafficTreatment ingressTreatment) {
+        this.ingressDeviceId = ingressDeviceId;
+        this.ingressTreatment = ingressTreatment;
+    }
+
+    public synchronized DeviceId getIngressDeviceId() {
+        return ingressDeviceId;
+    }
+
+    public synchronized TrafficTreatment getIngressTreatment() {
+        return ingressTreatment;
+    }
+
+    public synchronized void expectRules(int rules) {
+        this.remainingRules += rules;
+    }
+
+    // Returns true when the last expected rule has been installed
+    public synchronized boolean ruleInstalled() {
+        return --remainingRules == 0 && !finished;
+    }
+
+    // Marks the setup as finished and hands out the packets held back so far
+    public synchronized List<InboundPacket> finish() {
+        if (finished) return Collections.emptyList();
+        finished = true;
+        List<InboundPacket> packets = new ArrayList<>(queuedPackets);
+        queuedPackets.clear();
+        return packets;
+    }
+
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+}
@@ -0,0 +1,51 @@
+package org.xzk.network_slicing.models;
+
+// Labels, rules and flows of one virtual network on one device
+public class ResourceUsage {
+
+    private int labels;
+    private int rules;
+    private int flows;
+
+    public ResourceUsage() {
+    }
+
+    public ResourceUsage(int labels, int rules, int flows) {
+        this.labels = labels;
+        this.rules = rules;
+        this.flows = flows;
+    }
+
+    public int getLabels() {
+        return labels;
+    }
+
+    public int getRules() {
+        return rules;
+    }
+
+    public int getFlows() {
+        return flows;
+    }
+
+    public void add(ResourceUsage usage) {
+        labels += usage.labels;
+        rules += usage.rules;
+        flows += usage.flows;
+    }
+
+    public void subtract(ResourceUsage usage) {
+        labels -= usage.labels;
+        rules -= usage.rules;
+        flows -= usage.flows;
+    }
+
+    public boolean isEmpty() {
+        return labels == 0 && rules == 0 && flows == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "labels=" + labels + ", rules=" + rules + ", flows=" + flows;
+    }
+}
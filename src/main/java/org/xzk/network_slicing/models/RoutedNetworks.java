@@ -3,18 +3,215 @@ package org.xzk.network_slicing.models;
 import org.onlab.packet.IpAddress;
 import org.onlab.packet.IpPrefix;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+// Routed subnets of a virtual network and their gateways. Subnets sit in a path compressed binary trie per IP
+// version, so the longest match of an address walks at most one node per prefix bit, and the gateway addresses
+// are kept in a hash set for the ARP checks.
 public class RoutedNetworks {
 
-    public HashMap<IpPrefix, IpAddress> networkGateway;
+    private final Node ip4Root = new Node(IpPrefix.valueOf("0.0.0.0/0"), null);
+    private final Node ip6Root = new Node(IpPrefix.valueOf("::/0"), null);
 
-    public RoutedNetworks() {
-        networkGateway = new HashMap<>();
+    // Gateway ---> number of subnets using it
+    private final ConcurrentHashMap<IpAddress, Integer> gateways = new ConcurrentHashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Replaces the gateway if the subnet is already routed
+    public void addRoute(IpPrefix prefix, IpAddress gateway) {
+        lock.writeLock().lock();
+        try {
+            Node root = rootOf(prefix);
+            byte[] address = prefix.address().toOctets();
+            Node node = root;
+            while (true) {
+                if (node.prefix.prefixLength() == prefix.prefixLength()) {
+                    setGateway(node, gateway);
+                    return;
+                }
+
+                int branch = bit(address, node.prefix.prefixLength());
+                Node child = node.children[branch];
+                if (child == null) {
+                    node.children[branch] = newRoute(prefix, gateway);
+                    return;
+                }
+
+                int common = commonLength(address, child.octets,
+                        Math.min(prefix.prefixLength(), child.prefix.prefixLength()));
+                if (common == child.prefix.prefixLength()) {
+                    node = child;
+                    continue;
+                }
+
+                // The new subnet sits between the node and its child, or both hang off a new branching node
+                Node split;
+                if (common == prefix.prefixLength()) {
+                    split = newRoute(prefix, gateway);
+                } else {
+                    split = new Node(IpPrefix.valueOf(prefix.address(), common), null);
+                    split.children[bit(address, common)] = newRoute(prefix, gateway);
+                }
+                split.children[bit(child.octets, common)] = child;
+                node.children[branch] = split;
+                return;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean removeRoute(IpPrefix prefix) {
+        lock.writeLock().lock();
+        try {
+            byte[] address = prefix.address().toOctets();
+            Node grandParent = null;
+            Node parent = null;
+            Node node = rootOf(prefix);
+            while (node != null && node.prefix.prefixLength() < prefix.prefixLength()) {
+                grandParent = parent;
+                parent = node;
+                node = node.children[bit(address, node.prefix.prefixLength())];
+            }
+            if (node == null || !node.prefix.equals(prefix) || node.gateway == null) return false;
+
+            setGateway(node, null);
+            if (parent == null) return true;
+
+            // Drop the node if it no longer branches, and its parent if that one stops branching because of it
+            replace(parent, node, collapse(node));
+            if (grandParent != null) replace(grandParent, parent, collapse(parent));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     public IpAddress getGateway(IpPrefix ipPrefix) {
-        return this.networkGateway.get(ipPrefix);
+        lock.readLock().lock();
+        try {
+            Node node = find(ipPrefix.address(), ipPrefix.prefixLength());
+            return node != null && node.prefix.equals(ipPrefix) ? node.gateway : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isGateway(IpAddress ipAddress) {
+        return gateways.containsKey(ipAddress);
+    }
+
+    // Most specific routed subnet holding the address, null if none does
+    public IpPrefix getRoutedNetwork(IpAddress ipAddress) {
+        lock.readLock().lock();
+        try {
+            Node node = find(ipAddress, ipAddress.isIp4() ? IpAddress.INET_BIT_LENGTH : IpAddress.INET6_BIT_LENGTH);
+            return node == null ? null : node.prefix;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Subnet ---> gateway, in address order
+    public Map<IpPrefix, IpAddress> getRoutes() {
+        Map<IpPrefix, IpAddress> routes = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            collect(ip4Root, routes);
+            collect(ip6Root, routes);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return routes;
+    }
+
+    public boolean isEmpty() {
+        return gateways.isEmpty();
+    }
+
+    // Deepest routed node whose prefix holds the first length bits of the address
+    private Node find(IpAddress ipAddress, int length) {
+        byte[] address = ipAddress.toOctets();
+        Node best = null;
+        Node node = ipAddress.isIp4() ? ip4Root : ip6Root;
+        while (node != null && node.prefix.prefixLength() <= length &&
+                commonLength(address, node.octets, node.prefix.prefixLength()) == node.prefix.prefixLength()) {
+            if (node.gateway != null) best = node;
+            if (node.prefix.prefixLength() == length) break;
+            node = node.children[bit(address, node.prefix.prefixLength())];
+        }
+        return best;
     }
 
+    private Node rootOf(IpPrefix prefix) {
+        return prefix.isIp4() ? ip4Root : ip6Root;
+    }
+
+    private Node newRoute(IpPrefix prefix, IpAddress gateway) {
+        Node node = new Node(prefix, null);
+        setGateway(node, gateway);
+        return node;
+    }
+
+    private void setGateway(Node node, IpAddress gateway) {
+        if (node.gateway != null) gateways.computeIfPresent(node.gateway, (g, count) -> count == 1 ? null : count - 1);
+        if (gateway != null) gateways.merge(gateway, 1, Integer::sum);
+        node.gateway = gateway;
+    }
+
+    private static void collect(Node node, Map<IpPrefix, IpAddress> routes) {
+        if (node == null) return;
+        if (node.gateway != null) routes.put(node.prefix, node.gateway);
+        collect(node.children[0], routes);
+        collect(node.children[1], routes);
+    }
+
+    // A node kept only for branching needs both children, returns what should take its place
+    private static Node collapse(Node node) {
+        if (node.gateway != null) return node;
+        if (node.children[0] != null && node.children[1] != null) return node;
+        return node.children[0] != null ? node.children[0] : node.children[1];
+    }
+
+    private static void replace(Node parent, Node child, Node replacement) {
+        if (parent.children[0] == child) parent.children[0] = replacement;
+        else parent.children[1] = replacement;
+    }
+
+    private static int bit(byte[] address, int index) {
+        return (address[index >>> 3] >>> (7 - (index & 7))) & 1;
+    }
+
+    // Number of leading bits the addresses share, up to length
+    private static int commonLength(byte[] a, byte[] b, int length) {
+        int common = 0;
+        while (common < length) {
+            int diff = (a[common >>> 3] ^ b[common >>> 3]) & 0xFF;
+            if (diff == 0) {
+                common += 8;
+            } else {
+                common += Integer.numberOfLeadingZeros(diff) - 24;
+                break;
+            }
+        }
+        return Math.min(common, length);
+    }
+
+    private static class Node {
+        private final IpPrefix prefix;
+        private final byte[] octets;
+        private final Node[] children = new Node[2];
+        private IpAddress gateway;
+
+        Node(IpPrefix prefix, IpAddress gateway) {
+            this.prefix = prefix;
+            this.octets = prefix.address().toOctets();
+            this.gateway = gateway;
+        }
+    }
 }
@@ -0,0 +1,46 @@
+package org.xzk.network_slicing.models;
+
+// Per device limits for one virtual network, a limit of 0 means unlimited
+public class TenantQuota {
+
+    private final int maxLabels;
+    private final int maxRules;
+    private final int maxFlows;
+
+    public TenantQuota(int maxLabels, int maxRules, int maxFlows) {
+        this.maxLabels = maxLabels;
+        this.maxRules = maxRules;
+        this.maxFlows = maxFlows;
+    }
+
+    public int getMaxLabels() {
+        return maxLabels;
+    }
+
+    public int getMaxRules() {
+        return maxRules;
+    }
+
+    public int getMaxFlows() {
+        return maxFlows;
+    }
+
+    public boolean allows(ResourceUsage usage, ResourceUsage demand) {
+        return within(maxLabels, usage.getLabels() + demand.getLabels()) &&
+                within(maxRules, usage.getRules() + demand.getRules()) &&
+                within(maxFlows, usage.getFlows() + demand.getFlows());
+    }
+
+    private static boolean within(int limit, int value) {
+        return limit <= 0 || value <= limit;
+    }
+
+    @Override
+    public String toString() {
+        return "TenantQuota{" +
+                "maxLabels=" + maxLabels +
+                ", maxRules=" + maxRules +
+                ", maxFlows=" + maxFlows +
+                '}';
+    }
+}
@@ -0,0 +1,110 @@
+package org.xzk.network_slicing.helper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.packet.ARP;
+import org.onlab.packet.DeserializationException;
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.Ip4Address;
+import org.onlab.packet.MacAddress;
+import org.onosproject.incubator.net.virtual.NetworkId;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ArpReplyCacheTest {
+
+    private static final NetworkId NETWORK = NetworkId.networkId(1);
+
+    private static final Ip4Address TARGET = Ip4Address.valueOf("10.0.0.254");
+    private static final MacAddress TARGET_MAC = MacAddress.valueOf("00:00:00:00:00:fe");
+    private static final MacAddress NEW_TARGET_MAC = MacAddress.valueOf("00:00:00:00:01:fe");
+
+    private static final MacAddress HOST_1_MAC = MacAddress.valueOf("00:00:00:00:00:01");
+    private static final Ip4Address HOST_1 = Ip4Address.valueOf("10.0.0.1");
+    private static final MacAddress HOST_2_MAC = MacAddress.valueOf("00:00:00:00:00:02");
+    private static final Ip4Address HOST_2 = Ip4Address.valueOf("10.0.0.2");
+
+    private ArpReplyCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ArpReplyCache();
+    }
+
+    @Test
+    public void buildsSameReplyAsArp() throws DeserializationException {
+        Ethernet request = request(HOST_1_MAC, HOST_1);
+        assertReply(ARP.buildArpReply(TARGET, TARGET_MAC, request),
+                cache.buildReply(NETWORK, TARGET, TARGET_MAC, request));
+    }
+
+    @Test
+    public void fillsInEachRequester() throws DeserializationException {
+        cache.buildReply(NETWORK, TARGET, TARGET_MAC, request(HOST_1_MAC, HOST_1));
+
+        // Served from the template of the first reply
+        Ethernet request = request(HOST_2_MAC, HOST_2);
+        assertReply(ARP.buildArpReply(TARGET, TARGET_MAC, request),
+                cache.buildReply(NETWORK, TARGET, TARGET_MAC, request));
+    }
+
+    @Test
+    public void rebuildsTemplateOnMacChange() throws DeserializationException {
+        cache.buildReply(NETWORK, TARGET, TARGET_MAC, request(HOST_1_MAC, HOST_1));
+
+        Ethernet request = request(HOST_2_MAC, HOST_2);
+        assertReply(ARP.buildArpReply(TARGET, NEW_TARGET_MAC, request),
+                cache.buildReply(NETWORK, TARGET, NEW_TARGET_MAC, request));
+        assertReply(ARP.buildArpReply(TARGET, NEW_TARGET_MAC, request),
+                cache.buildReply(NETWORK, TARGET, NEW_TARGET_MAC, request));
+    }
+
+    @Test
+    public void leavesTaggedRequestsOut() {
+        Ethernet request = request(HOST_1_MAC, HOST_1);
+        request.setVlanID((short) 10);
+        assertNull(cache.buildReply(NETWORK, TARGET, TARGET_MAC, request));
+    }
+
+    private static Ethernet request(MacAddress senderMac, Ip4Address sender) {
+        ARP arp = new ARP();
+        arp.setHardwareType(ARP.HW_TYPE_ETHERNET)
+                .setProtocolType(ARP.PROTO_TYPE_IP)
+                .setHardwareAddressLength((byte) MacAddress.MAC_ADDRESS_LENGTH)
+                .setProtocolAddressLength((byte) Ip4Address.BYTE_LENGTH)
+                .setOpCode(ARP.OP_REQUEST)
+                .setSenderHardwareAddress(senderMac.toBytes())
+                .setSenderProtocolAddress(sender.toOctets())
+                .setTargetHardwareAddress(MacAddress.ZERO.toBytes())
+                .setTargetProtocolAddress(TARGET.toOctets());
+
+        Ethernet ethernet = new Ethernet();
+        ethernet.setEtherType(Ethernet.TYPE_ARP)
+                .setDestinationMACAddress(MacAddress.BROADCAST)
+                .setSourceMACAddress(senderMac)
+                .setPayload(arp);
+        return ethernet;
+    }
+
+    private static void assertReply(Ethernet expected, byte[] reply) throws DeserializationException {
+        Ethernet ethernet = Ethernet.deserializer().deserialize(reply, 0, reply.length);
+        assertEquals(expected.getDestinationMAC(), ethernet.getDestinationMAC());
+        assertEquals(expected.getSourceMAC(), ethernet.getSourceMAC());
+        assertEquals(expected.getEtherType(), ethernet.getEtherType());
+        assertEquals(expected.getVlanID(), ethernet.getVlanID());
+
+        ARP expectedArp = (ARP) expected.getPayload();
+        ARP arp = (ARP) ethernet.getPayload();
+        assertEquals(expectedArp.getHardwareType(), arp.getHardwareType());
+        assertEquals(expectedArp.getProtocolType(), arp.getProtocolType());
+        assertEquals(expectedArp.getHardwareAddressLength(), arp.getHardwareAddressLength());
+        assertEquals(expectedArp.getProtocolAddressLength(), arp.getProtocolAddressLength());
+        assertEquals(expectedArp.getOpCode(), arp.getOpCode());
+        assertArrayEquals(expectedArp.getSenderHardwareAddress(), arp.getSenderHardwareAddress());
+        assertArrayEquals(expectedArp.getSenderProtocolAddress(), arp.getSenderProtocolAddress());
+        assertArrayEquals(expectedArp.getTargetHardwareAddress(), arp.getTargetHardwareAddress());
+        assertArrayEquals(expectedArp.getTargetProtocolAddress(), arp.getTargetProtocolAddress());
+    }
+}
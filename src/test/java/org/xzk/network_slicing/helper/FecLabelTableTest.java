@@ -0,0 +1,136 @@
+package org.xzk.network_slicing.helper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.MplsLabel;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Link;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowRule;
+import org.xzk.network_slicing.models.DevicePair;
+import org.xzk.network_slicing.models.FecEntry;
+import org.xzk.network_slicing.models.FlowPair;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.onosproject.net.NetTestTools.APP_ID;
+import static org.onosproject.net.NetTestTools.did;
+import static org.onosproject.net.NetTestTools.link;
+
+public class FecLabelTableTest {
+
+    private static final NetworkId NETWORK = NetworkId.networkId(1);
+    private static final IpAddress HOST_1 = IpAddress.valueOf("10.0.0.1");
+    private static final IpAddress HOST_2 = IpAddress.valueOf("10.0.0.2");
+    private static final IpAddress HOST_3 = IpAddress.valueOf("10.0.0.3");
+    private static final FlowPair FLOW_1_3 = new FlowPair(HOST_1, HOST_3);
+    private static final FlowPair FLOW_2_3 = new FlowPair(HOST_2, HOST_3);
+
+    private static final DeviceId DEVICE_1 = did("1");
+    private static final DeviceId DEVICE_2 = did("2");
+    private static final DeviceId DEVICE_3 = did("3");
+
+    // Sink tree towards device 3: 1 ---> 2 ---> 3
+    private FecEntry entry1;
+    private FecEntry entry2;
+    private FecLabelTable table;
+
+    @Before
+    public void setUp() {
+        table = new FecLabelTable();
+        entry1 = entry(DEVICE_1, link("1", 1, "2", 1), 100);
+        entry2 = entry(DEVICE_2, link("2", 2, "3", 1), 200);
+        table.addEntry(NETWORK, FLOW_1_3, entry2);
+        table.addEntry(NETWORK, FLOW_1_3, entry1);
+    }
+
+    @Test
+    public void acquiresBranchDownToEgress() {
+        assertEquals(Arrays.asList(entry1, entry2), table.acquireBranch(NETWORK, FLOW_2_3, DEVICE_3, DEVICE_1,
+                Collections.emptySet(), Collections.emptySet()));
+        assertEquals(Collections.singletonList(entry2), table.acquireBranch(NETWORK, FLOW_2_3, DEVICE_3, DEVICE_2,
+                Collections.emptySet(), Collections.emptySet()));
+        assertEquals(2, entry1.getRefCount());
+        assertEquals(3, entry2.getRefCount());
+
+        // Not on the tree
+        assertTrue(table.acquireBranch(NETWORK, FLOW_2_3, DEVICE_3, DEVICE_3,
+                Collections.emptySet(), Collections.emptySet()).isEmpty());
+    }
+
+    @Test
+    public void releasesEntriesOnceUnused() {
+        table.acquireBranch(NETWORK, FLOW_2_3, DEVICE_3, DEVICE_1, Collections.emptySet(), Collections.emptySet());
+
+        assertTrue(table.release(NETWORK, FLOW_1_3).isEmpty());
+        assertEquals(1, entry1.getRefCount());
+        assertEquals(Arrays.asList(entry1, entry2), table.release(NETWORK, FLOW_2_3));
+
+        // Released twice, nothing left to return
+        assertTrue(table.release(NETWORK, FLOW_2_3).isEmpty());
+        assertTrue(table.acquireBranch(NETWORK, FLOW_2_3, DEVICE_3, DEVICE_1,
+                Collections.emptySet(), Collections.emptySet()).isEmpty());
+    }
+
+    @Test
+    public void keepsEntryThatReplacedReleasedOne() {
+        // Rebuilt for another flow while the old entry was still held
+        FecEntry newEntry1 = entry(DEVICE_1, link("1", 1, "2", 1), 101);
+        table.addEntry(NETWORK, FLOW_2_3, newEntry1);
+
+        assertEquals(Arrays.asList(entry2, entry1), table.release(NETWORK, FLOW_1_3));
+        assertEquals(Collections.singletonList(newEntry1), table.acquireBranch(NETWORK, FLOW_1_3, DEVICE_3,
+                DEVICE_1, Collections.emptySet(), Collections.emptySet()));
+    }
+
+    @Test
+    public void sharesDemuxEntryByDestination() {
+        FecEntry demux = entry(DEVICE_3, null, -1);
+        table.addDemuxEntry(NETWORK, FLOW_1_3, demux);
+        assertSame(demux, table.acquireDemuxEntry(NETWORK, FLOW_2_3));
+        assertNull(table.acquireDemuxEntry(NETWORK, new FlowPair(HOST_3, HOST_1)));
+
+        table.release(NETWORK, FLOW_1_3);
+        assertEquals(Collections.singletonList(demux), table.release(NETWORK, FLOW_2_3));
+        assertNull(table.acquireDemuxEntry(NETWORK, FLOW_2_3));
+    }
+
+    @Test
+    public void skipsBranchOverAvoidedEdge() {
+        assertTrue(table.acquireBranch(NETWORK, FLOW_2_3, DEVICE_3, DEVICE_1,
+                Collections.singleton(new DevicePair(DEVICE_2, DEVICE_3)), Collections.emptySet()).isEmpty());
+        assertEquals(1, entry1.getRefCount());
+        assertEquals(1, entry2.getRefCount());
+    }
+
+    @Test
+    public void skipsBranchOverAvoidedDevice() {
+        assertTrue(table.acquireBranch(NETWORK, FLOW_2_3, DEVICE_3, DEVICE_1,
+                Collections.emptySet(), Collections.singleton(DEVICE_2)).isEmpty());
+        assertTrue(table.acquireBranch(NETWORK, FLOW_2_3, DEVICE_3, DEVICE_1,
+                Collections.emptySet(), Collections.singleton(DEVICE_3)).isEmpty());
+        assertEquals(1, entry1.getRefCount());
+    }
+
+    // A negative label makes an IP demultiplexing entry
+    private static FecEntry entry(DeviceId deviceId, Link nextHopLink, int label) {
+        FlowRule flowRule = DefaultFlowRule.builder()
+                .withSelector(DefaultTrafficSelector.emptySelector())
+                .withTreatment(DefaultTrafficTreatment.emptyTreatment())
+                .withPriority(10)
+                .makePermanent()
+                .fromApp(APP_ID)
+                .forDevice(deviceId)
+                .build();
+        return new FecEntry(deviceId, DEVICE_3, nextHopLink, label < 0 ? null : MplsLabel.mplsLabel(label), flowRule);
+    }
+}
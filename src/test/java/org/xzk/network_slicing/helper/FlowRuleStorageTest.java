@@ -0,0 +1,153 @@
+package org.xzk.network_slicing.helper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.MplsLabel;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Link;
+import org.onosproject.net.LinkKey;
+import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.DefaultTrafficSelector;
+import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowRule;
+import org.xzk.network_slicing.models.FlowPair;
+import org.xzk.network_slicing.models.FlowPath;
+import org.xzk.network_slicing.models.NetworkFlowPair;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.onosproject.net.NetTestTools.APP_ID;
+import static org.onosproject.net.NetTestTools.connectPoint;
+import static org.onosproject.net.NetTestTools.did;
+import static org.onosproject.net.NetTestTools.link;
+
+public class FlowRuleStorageTest {
+
+    private static final NetworkId NETWORK = NetworkId.networkId(1);
+    private static final IpAddress HOST_1 = IpAddress.valueOf("10.0.0.1");
+    private static final IpAddress HOST_2 = IpAddress.valueOf("10.0.0.2");
+    private static final FlowPair FLOW = new FlowPair(HOST_1, HOST_2);
+    private static final FlowPair REVERSE_FLOW = new FlowPair(HOST_2, HOST_1);
+    private static final NetworkFlowPair NETWORK_FLOW = new NetworkFlowPair(NETWORK, FLOW);
+
+    private static final DeviceId DEVICE_1 = did("1");
+    private static final DeviceId DEVICE_2 = did("2");
+    private static final MplsLabel LABEL = MplsLabel.mplsLabel(100);
+
+    private static final ConnectPoint HOST_1_PORT = connectPoint("1", 10);
+    private static final ConnectPoint HOST_2_PORT = connectPoint("2", 10);
+    private static final Link LINK_1_2 = link("1", 1, "2", 1);
+
+    private FlowRuleStorage storage;
+
+    @Before
+    public void setUp() {
+        storage = new FlowRuleStorage();
+    }
+
+    @Test
+    public void indexesRulesByDeviceLabelAndHost() {
+        storage.addFlowRule(NETWORK, FLOW, rule(DEVICE_1), null);
+        storage.addFlowRule(NETWORK, FLOW, rule(DEVICE_2), LABEL);
+
+        assertEquals(2, storage.getFlowRules(NETWORK, FLOW).size());
+        assertEquals(Collections.singleton(NETWORK_FLOW), storage.getFlowsByDevice(DEVICE_1));
+        assertEquals(Collections.singleton(NETWORK_FLOW), storage.getFlowsByDevice(DEVICE_2));
+        assertEquals(Collections.singleton(NETWORK_FLOW), storage.getFlowsByLabel(DEVICE_2, LABEL));
+        assertTrue(storage.getFlowsByLabel(DEVICE_1, LABEL).isEmpty());
+
+        // Both hosts of the flow
+        assertEquals(Collections.singleton(FLOW), storage.getFlowsByHost(NETWORK, HOST_1));
+        assertEquals(Collections.singleton(FLOW), storage.getFlowsByHost(NETWORK, HOST_2));
+        assertTrue(storage.getFlowsByHost(NetworkId.networkId(2), HOST_1).isEmpty());
+    }
+
+    @Test
+    public void indexesPathByLinkAndPort() {
+        storage.addFlowRule(NETWORK, FLOW, rule(DEVICE_1), null);
+        storage.setFlowPath(NETWORK, FLOW, path(Collections.singletonList(LINK_1_2)));
+
+        assertEquals(Collections.singleton(NETWORK_FLOW), storage.getFlowsByLink(LinkKey.linkKey(LINK_1_2)));
+        assertEquals(Collections.singleton(NETWORK_FLOW), storage.getFlowsByPort(HOST_1_PORT));
+        assertEquals(Collections.singleton(NETWORK_FLOW), storage.getFlowsByPort(LINK_1_2.src()));
+        assertEquals(Collections.singleton(NETWORK_FLOW), storage.getFlowsByPort(LINK_1_2.dst()));
+        assertEquals(Collections.singleton(NETWORK_FLOW), storage.getFlowsByPort(HOST_2_PORT));
+    }
+
+    @Test
+    public void newPathReplacesPreviousOne() {
+        storage.addFlowRule(NETWORK, FLOW, rule(DEVICE_1), null);
+        storage.setFlowPath(NETWORK, FLOW, path(Collections.singletonList(LINK_1_2)));
+        storage.setFlowPath(NETWORK, FLOW, path(Collections.emptyList()));
+
+        assertTrue(storage.getFlowsByLink(LinkKey.linkKey(LINK_1_2)).isEmpty());
+        assertTrue(storage.getFlowsByPort(LINK_1_2.src()).isEmpty());
+        assertEquals(Collections.singleton(NETWORK_FLOW), storage.getFlowsByPort(HOST_1_PORT));
+    }
+
+    @Test
+    public void deleteUnindexesFlow() {
+        storage.addFlowRule(NETWORK, FLOW, rule(DEVICE_1), null);
+        storage.addFlowRule(NETWORK, FLOW, rule(DEVICE_2), LABEL);
+        storage.setFlowPath(NETWORK, FLOW, path(Collections.singletonList(LINK_1_2)));
+
+        assertEquals(2, storage.deleteFlowRules(NETWORK, FLOW).size());
+        assertNull(storage.getFlowRules(NETWORK, FLOW));
+        assertNull(storage.getFlowPath(NETWORK, FLOW));
+        assertTrue(storage.getFlowsByDevice(DEVICE_1).isEmpty());
+        assertTrue(storage.getFlowsByDevice(DEVICE_2).isEmpty());
+        assertTrue(storage.getFlowsByLabel(DEVICE_2, LABEL).isEmpty());
+        assertTrue(storage.getFlowsByLink(LinkKey.linkKey(LINK_1_2)).isEmpty());
+        assertTrue(storage.getFlowsByPort(HOST_1_PORT).isEmpty());
+        assertTrue(storage.getFlowsByHost(NETWORK, HOST_1).isEmpty());
+
+        // Only the first caller gets the rules back
+        assertNull(storage.deleteFlowRules(NETWORK, FLOW));
+    }
+
+    @Test
+    public void keepsIndexOfOtherFlowOnSameDevice() {
+        storage.addFlowRule(NETWORK, FLOW, rule(DEVICE_1), null);
+        storage.addFlowRule(NETWORK, REVERSE_FLOW, rule(DEVICE_1), null);
+        storage.deleteFlowRules(NETWORK, FLOW);
+
+        assertEquals(Collections.singleton(new NetworkFlowPair(NETWORK, REVERSE_FLOW)),
+                storage.getFlowsByDevice(DEVICE_1));
+        assertEquals(Collections.singleton(REVERSE_FLOW), storage.getFlowsByHost(NETWORK, HOST_1));
+    }
+
+    @Test
+    public void linksBothDirections() {
+        storage.linkFlowPairs(NETWORK, FLOW, REVERSE_FLOW);
+        assertEquals(REVERSE_FLOW, storage.getReverseFlowPair(NETWORK, FLOW));
+        assertEquals(FLOW, storage.getReverseFlowPair(NETWORK, REVERSE_FLOW));
+
+        // Unlinked from either side, both directions are gone
+        assertEquals(FLOW, storage.unlinkFlowPair(NETWORK, REVERSE_FLOW));
+        assertNull(storage.getReverseFlowPair(NETWORK, FLOW));
+        assertNull(storage.getReverseFlowPair(NETWORK, REVERSE_FLOW));
+        assertNull(storage.unlinkFlowPair(NETWORK, FLOW));
+    }
+
+    private static FlowRule rule(DeviceId deviceId) {
+        return DefaultFlowRule.builder()
+                .withSelector(DefaultTrafficSelector.emptySelector())
+                .withTreatment(DefaultTrafficTreatment.emptyTreatment())
+                .withPriority(10)
+                .makePermanent()
+                .fromApp(APP_ID)
+                .forDevice(deviceId)
+                .build();
+    }
+
+    private static FlowPath path(List<Link> links) {
+        return new FlowPath(HOST_1_PORT, links, HOST_2_PORT, false);
+    }
+}
@@ -0,0 +1,144 @@
+package org.xzk.network_slicing.helper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.incubator.net.virtual.TenantId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PacketInSchedulerTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private static final NetworkId NETWORK_A = NetworkId.networkId(1);
+    private static final NetworkId NETWORK_B = NetworkId.networkId(2);
+    private static final NetworkId NETWORK_C = NetworkId.networkId(3);
+    private static final TenantId TENANT_A = TenantId.tenantId("a");
+    private static final TenantId TENANT_B = TenantId.tenantId("b");
+    private static final TenantId TENANT_C = TenantId.tenantId("c");
+
+    private PacketInScheduler scheduler;
+    private CountDownLatch started;
+    private CountDownLatch release;
+
+    @Before
+    public void setUp() {
+        // A single worker runs the tasks one at a time in scheduling order
+        scheduler = new PacketInScheduler(1, 3);
+        started = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void servesNetworksByTenantWeight() throws InterruptedException {
+        scheduler.setWeight(TENANT_A, 2);
+        blockWorker();
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(5);
+        for (int i = 1; i <= 3; i++) submit(NETWORK_A, TENANT_A, "a" + i, order, done);
+        for (int i = 1; i <= 2; i++) submit(NETWORK_B, TENANT_B, "b" + i, order, done);
+
+        release.countDown();
+        assertTrue(done.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(Arrays.asList("a1", "a2", "b1", "a3", "b2"), order);
+    }
+
+    @Test
+    public void rotatesAfterEachTurn() throws InterruptedException {
+        scheduler.setWeight(TENANT_A, 3);
+        blockWorker();
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(4);
+        submit(NETWORK_B, TENANT_B, "b1", order, done);
+        submit(NETWORK_A, TENANT_A, "a1", order, done);
+        submit(NETWORK_B, TENANT_B, "b2", order, done);
+        submit(NETWORK_B, TENANT_B, "b3", order, done);
+
+        release.countDown();
+        assertTrue(done.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(Arrays.asList("b1", "a1", "b2", "b3"), order);
+    }
+
+    @Test
+    public void dropsPacketsOverTheQueueLimit() throws InterruptedException {
+        blockWorker();
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(scheduler.submit(NETWORK_A, TENANT_A, () -> { }));
+        }
+        assertFalse(scheduler.submit(NETWORK_A, TENANT_A, () -> { }));
+        assertArrayEquals(new long[]{3, 1}, scheduler.getQueueStats().get(NETWORK_A));
+
+        // Other networks have queues of their own
+        assertTrue(scheduler.submit(NETWORK_B, TENANT_B, () -> { }));
+    }
+
+    @Test
+    public void dropsQueueOfRemovedNetwork() throws InterruptedException {
+        blockWorker();
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+        submit(NETWORK_A, TENANT_A, "a1", order, done);
+        submit(NETWORK_B, TENANT_B, "b1", order, done);
+        scheduler.removeNetwork(NETWORK_A);
+
+        release.countDown();
+        assertTrue(done.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(Collections.singletonList("b1"), order);
+        assertFalse(scheduler.getQueueStats().containsKey(NETWORK_A));
+    }
+
+    @Test
+    public void rejectsNonPositiveWeight() {
+        assertEquals(PacketInScheduler.DEFAULT_WEIGHT, scheduler.getWeight(TENANT_A));
+        try {
+            scheduler.setWeight(TENANT_A, 0);
+            fail("Weight must be positive");
+        } catch (IllegalArgumentException e) {
+            assertEquals(PacketInScheduler.DEFAULT_WEIGHT, scheduler.getWeight(TENANT_A));
+        }
+    }
+
+    // Keeps the worker busy until released, so the following submits queue up
+    private void blockWorker() throws InterruptedException {
+        scheduler.submit(NETWORK_C, TENANT_C, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    private void submit(NetworkId networkId, TenantId tenantId, String name, List<String> order,
+                        CountDownLatch done) {
+        assertTrue(scheduler.submit(networkId, tenantId, () -> {
+            order.add(name);
+            done.countDown();
+        }));
+    }
+}
@@ -0,0 +1,92 @@
+package org.xzk.network_slicing.helper;
+
+import org.junit.Test;
+import org.onlab.packet.Ethernet;
+import org.onlab.packet.IpAddress;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.net.packet.DefaultInboundPacket;
+import org.onosproject.net.packet.InboundPacket;
+import org.xzk.network_slicing.models.FlowPair;
+import org.xzk.network_slicing.models.NetworkFlowPair;
+import org.xzk.network_slicing.models.PendingFlowSetup;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.onosproject.net.NetTestTools.connectPoint;
+
+public class PendingFlowSetupsTest {
+
+    private static final NetworkFlowPair FLOW = new NetworkFlowPair(NetworkId.networkId(1),
+            new FlowPair(IpAddress.valueOf("10.0.0.1"), IpAddress.valueOf("10.0.0.2")));
+
+    @Test
+    public void sharesSetupInFlight() {
+        PendingFlowSetups setups = new PendingFlowSetups(4, 1000);
+        PendingFlowSetup setup = setups.newSetup();
+        assertNull(setups.putIfAbsent(FLOW, setup));
+        assertSame(setup, setups.putIfAbsent(FLOW, setups.newSetup()));
+        assertEquals(1, setups.size());
+    }
+
+    @Test
+    public void replacesTimedOutSetup() throws InterruptedException {
+        PendingFlowSetups setups = new PendingFlowSetups(4, 10);
+        PendingFlowSetup stale = setups.newSetup();
+        assertNull(setups.putIfAbsent(FLOW, stale));
+        Thread.sleep(50);
+
+        // The packet that finds the stale setup takes over the flow
+        PendingFlowSetup setup = setups.newSetup();
+        assertNull(setups.putIfAbsent(FLOW, setup));
+        assertTrue(stale.isFinished());
+        assertSame(setup, setups.putIfAbsent(FLOW, setups.newSetup()));
+    }
+
+    @Test
+    public void capsQueuedPackets() {
+        PendingFlowSetup setup = new PendingFlowSetups(2, 1000).newSetup();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(setup.enqueue(packet()));
+        }
+        assertEquals(2, setup.finish().size());
+
+        // Packets arriving after the setup finished are sent by the caller
+        assertFalse(setup.enqueue(packet()));
+        assertTrue(setup.finish().isEmpty());
+    }
+
+    @Test
+    public void removesFinishedSetupsOnly() {
+        PendingFlowSetups setups = new PendingFlowSetups(4, 1000);
+        PendingFlowSetup setup = setups.newSetup();
+        setups.putIfAbsent(FLOW, setup);
+
+        setups.removeFinished(FLOW);
+        assertEquals(1, setups.size());
+
+        setup.finish();
+        setups.removeFinished(FLOW);
+        assertEquals(0, setups.size());
+    }
+
+    @Test
+    public void removesOnlyTheGivenSetup() {
+        PendingFlowSetups setups = new PendingFlowSetups(4, 1000);
+        PendingFlowSetup setup = setups.newSetup();
+        setups.putIfAbsent(FLOW, setup);
+
+        setups.remove(FLOW, setups.newSetup());
+        assertEquals(1, setups.size());
+        setups.remove(FLOW, setup);
+        assertEquals(0, setups.size());
+    }
+
+    private static InboundPacket packet() {
+        return new DefaultInboundPacket(connectPoint("1", 1), new Ethernet(), ByteBuffer.allocate(0));
+    }
+}
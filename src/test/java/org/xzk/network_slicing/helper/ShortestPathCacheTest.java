@@ -0,0 +1,80 @@
+package org.xzk.network_slicing.helper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.net.Link;
+import org.xzk.network_slicing.models.DevicePair;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.onosproject.net.NetTestTools.did;
+import static org.onosproject.net.NetTestTools.link;
+
+public class ShortestPathCacheTest {
+
+    private static final NetworkId NETWORK = NetworkId.networkId(1);
+
+    private static final Link LINK_1_2 = link("1", 1, "2", 1);
+    private static final Link LINK_2_3 = link("2", 2, "3", 1);
+    private static final Link LINK_1_4 = link("1", 2, "4", 1);
+
+    private static final DevicePair PAIR_1_3 = new DevicePair(did("1"), did("3"));
+    private static final DevicePair PAIR_1_4 = new DevicePair(did("1"), did("4"));
+
+    private ShortestPathCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ShortestPathCache();
+        cache.topologyChanged(NETWORK, 1, Collections.emptySet(), Collections.emptySet());
+    }
+
+    @Test
+    public void cachesPathOfCurrentVersion() {
+        List<Link> path = Arrays.asList(LINK_1_2, LINK_2_3);
+        assertNull(cache.getPath(NETWORK, PAIR_1_3));
+        cache.putPath(NETWORK, PAIR_1_3, path, 1);
+
+        assertEquals(path, cache.getPath(NETWORK, PAIR_1_3));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void dropsPathOfStaleVersion() {
+        // Computed before the topology changed, put afterwards
+        cache.topologyChanged(NETWORK, 2, Collections.emptySet(), Collections.emptySet());
+        cache.putPath(NETWORK, PAIR_1_3, Arrays.asList(LINK_1_2, LINK_2_3), 1);
+
+        assertNull(cache.getPath(NETWORK, PAIR_1_3));
+        assertEquals(0, cache.getCachedPathCount(NETWORK));
+    }
+
+    @Test
+    public void invalidatesPathsCrossingRemovedLink() {
+        cache.putPath(NETWORK, PAIR_1_3, Arrays.asList(LINK_1_2, LINK_2_3), 1);
+        cache.putPath(NETWORK, PAIR_1_4, Collections.singletonList(LINK_1_4), 1);
+
+        cache.topologyChanged(NETWORK, 2,
+                Collections.singleton(new DevicePair(did("2"), did("3"))), Collections.emptySet());
+        assertNull(cache.getPath(NETWORK, PAIR_1_3));
+        assertEquals(Collections.singletonList(LINK_1_4), cache.getPath(NETWORK, PAIR_1_4));
+        assertEquals(1, cache.getInvalidations());
+    }
+
+    @Test
+    public void invalidatesAllPathsOnAddedLink() {
+        cache.putPath(NETWORK, PAIR_1_3, Arrays.asList(LINK_1_2, LINK_2_3), 1);
+        cache.putPath(NETWORK, PAIR_1_4, Collections.singletonList(LINK_1_4), 1);
+
+        cache.topologyChanged(NETWORK, 2,
+                Collections.emptySet(), Collections.singleton(new DevicePair(did("3"), did("4"))));
+        assertEquals(0, cache.getCachedPathCount(NETWORK));
+        assertEquals(2, cache.getInvalidations());
+    }
+}
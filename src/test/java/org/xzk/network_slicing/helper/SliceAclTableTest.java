@@ -0,0 +1,145 @@
+package org.xzk.network_slicing.helper;
+
+import org.junit.Test;
+import org.onlab.packet.IPv4;
+import org.xzk.network_slicing.models.AclRule;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.xzk.network_slicing.models.AclRule.MAX_PORT;
+import static org.xzk.network_slicing.models.AclRule.MIN_PORT;
+import static org.xzk.network_slicing.models.AclRule.mask;
+
+public class SliceAclTableTest {
+
+    private static final int NET_10_0_0 = 0x0A000000;
+    private static final int NET_10_0_1 = 0x0A000100;
+    private static final int NET_10_1_0 = 0x0A010000;
+
+    @Test
+    public void keepsDenyBeforeAllow() {
+        AclRule deny = rule(1, NET_10_0_0, 16, 0, 0, IPv4.PROTOCOL_TCP, 80, AclRule.Action.DENY);
+        AclRule allow = rule(2, NET_10_0_0, 24, 0, 0, IPv4.PROTOCOL_TCP, 80, AclRule.Action.ALLOW);
+        assertEquals(Collections.singletonList(deny), SliceAclTable.compile(Arrays.asList(deny, allow)));
+    }
+
+    @Test
+    public void cutsAllowOutOfLaterDeny() {
+        List<AclRule> rules = Arrays.asList(
+                rule(1, NET_10_0_0, 24, 0, 0, IPv4.PROTOCOL_TCP, 80, AclRule.Action.ALLOW),
+                rule(2, NET_10_0_0, 16, 0, 0, IPv4.PROTOCOL_TCP, -1, AclRule.Action.DENY));
+        List<AclRule> dropRegions = SliceAclTable.compile(rules);
+
+        assertFalse(dropped(dropRegions, NET_10_0_0 + 5, 0x0B000001, IPv4.PROTOCOL_TCP, 1234, 80));
+        assertTrue(dropped(dropRegions, NET_10_0_0 + 5, 0x0B000001, IPv4.PROTOCOL_TCP, 1234, 81));
+        assertTrue(dropped(dropRegions, NET_10_0_1 + 5, 0x0B000001, IPv4.PROTOCOL_TCP, 1234, 80));
+        assertFalse(dropped(dropRegions, NET_10_1_0 + 5, 0x0B000001, IPv4.PROTOCOL_TCP, 1234, 81));
+        assertFalse(dropped(dropRegions, NET_10_0_1 + 5, 0x0B000001, IPv4.PROTOCOL_UDP, 1234, 81));
+    }
+
+    @Test
+    public void dropsExactlyWhatTheAclDenies() {
+        List<AclRule> rules = Arrays.asList(
+                rule(1, NET_10_0_0, 24, NET_10_0_1, 24, IPv4.PROTOCOL_TCP, 22, AclRule.Action.ALLOW),
+                new AclRule(2, NET_10_0_0, 25, 0, 0, IPv4.PROTOCOL_TCP,
+                        1000, 2000, MIN_PORT, MAX_PORT, AclRule.Action.ALLOW),
+                rule(3, NET_10_0_1, 24, NET_10_0_0, 23, IPv4.PROTOCOL_ICMP, -1, AclRule.Action.ALLOW),
+                rule(4, NET_10_0_0, 16, 0, 0, IPv4.PROTOCOL_TCP, -1, AclRule.Action.DENY),
+                new AclRule(5, 0, 0, NET_10_0_0, 22, IPv4.PROTOCOL_UDP,
+                        MIN_PORT, MAX_PORT, 5000, 6000, AclRule.Action.DENY),
+                rule(6, NET_10_0_1, 24, 0, 0, IPv4.PROTOCOL_ICMP, -1, AclRule.Action.DENY));
+        List<AclRule> dropRegions = SliceAclTable.compile(rules);
+
+        Random random = new Random(42);
+        int[] addresses = {NET_10_0_0, NET_10_0_1, NET_10_1_0, NET_10_0_0 + 127, NET_10_0_0 + 128, 0x0B000001};
+        byte[] protocols = {IPv4.PROTOCOL_TCP, IPv4.PROTOCOL_UDP, IPv4.PROTOCOL_ICMP};
+        int[] ports = {0, 22, 999, 1000, 2000, 2001, 4999, 5000, 6000, 6001, 65535};
+        for (int i = 0; i < 20000; i++) {
+            int src = addresses[random.nextInt(addresses.length)] + random.nextInt(4);
+            int dst = addresses[random.nextInt(addresses.length)] + random.nextInt(4);
+            byte protocol = protocols[random.nextInt(protocols.length)];
+            boolean transport = protocol != IPv4.PROTOCOL_ICMP;
+            int srcPort = transport ? ports[random.nextInt(ports.length)] : 0;
+            int dstPort = transport ? ports[random.nextInt(ports.length)] : 0;
+
+            AclRule first = null;
+            for (AclRule rule : rules) {
+                if (matches(rule, src, dst, protocol, srcPort, dstPort)) {
+                    first = rule;
+                    break;
+                }
+            }
+            boolean denied = first != null && first.getAction() == AclRule.Action.DENY;
+            assertEquals(denied, dropped(dropRegions, src, dst, protocol, srcPort, dstPort));
+        }
+    }
+
+    @Test
+    public void rejectsAnyProtocolDenyOverSingleProtocolAllow() {
+        List<AclRule> rules = Arrays.asList(
+                rule(1, NET_10_0_0, 24, 0, 0, IPv4.PROTOCOL_TCP, -1, AclRule.Action.ALLOW),
+                rule(2, NET_10_0_0, 16, 0, 0, AclRule.ANY_PROTOCOL, -1, AclRule.Action.DENY));
+        try {
+            SliceAclTable.compile(rules);
+            fail("Deny over any protocol cannot be cut by a single protocol allow");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void coversPortRangesExactly() {
+        int[][] ranges = {{0, 65535}, {1, 65535}, {80, 80}, {1000, 2000}, {1024, 65535}, {0, 1023}, {5, 6}};
+        for (int[] range : ranges) {
+            boolean[] covered = new boolean[MAX_PORT + 1];
+            for (int[] portMask : SliceAclTable.portMasks(range[0], range[1])) {
+                for (int port = MIN_PORT; port <= MAX_PORT; port++) {
+                    if ((port & portMask[1]) != portMask[0]) continue;
+                    assertFalse("Masks overlap at " + port, covered[port]);
+                    covered[port] = true;
+                }
+            }
+            for (int port = MIN_PORT; port <= MAX_PORT; port++) {
+                assertEquals(port >= range[0] && port <= range[1], covered[port]);
+            }
+        }
+    }
+
+    @Test
+    public void usesFewestPortMasks() {
+        assertEquals(1, SliceAclTable.portMasks(MIN_PORT, MAX_PORT).size());
+        assertEquals(0, SliceAclTable.portMasks(MIN_PORT, MAX_PORT).get(0)[1]);
+        assertEquals(1, SliceAclTable.portMasks(80, 80).size());
+        assertEquals(0xFFFF, SliceAclTable.portMasks(80, 80).get(0)[1]);
+        assertEquals(6, SliceAclTable.portMasks(1024, MAX_PORT).size());
+        assertEquals(16, SliceAclTable.portMasks(1, MAX_PORT).size());
+    }
+
+    // Destination port -1 for any port
+    private static AclRule rule(int id, int src, int srcLength, int dst, int dstLength, byte protocol,
+                                int dstPort, AclRule.Action action) {
+        return new AclRule(id, src, srcLength, dst, dstLength, protocol, MIN_PORT, MAX_PORT,
+                dstPort < 0 ? MIN_PORT : dstPort, dstPort < 0 ? MAX_PORT : dstPort, action);
+    }
+
+    private static boolean matches(AclRule rule, int src, int dst, byte protocol, int srcPort, int dstPort) {
+        return (src & mask(rule.getSrcLength())) == rule.getSrcAddress() &&
+                (dst & mask(rule.getDstLength())) == rule.getDstAddress() &&
+                rule.matchesTransport(protocol, srcPort, dstPort);
+    }
+
+    private static boolean dropped(List<AclRule> dropRegions, int src, int dst, byte protocol,
+                                   int srcPort, int dstPort) {
+        for (AclRule region : dropRegions) {
+            if (matches(region, src, dst, protocol, srcPort, dstPort)) return true;
+        }
+        return false;
+    }
+}
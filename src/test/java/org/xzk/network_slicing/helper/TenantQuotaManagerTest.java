@@ -0,0 +1,98 @@
+package org.xzk.network_slicing.helper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.packet.IpAddress;
+import org.onosproject.incubator.net.virtual.NetworkId;
+import org.onosproject.net.DeviceId;
+import org.xzk.network_slicing.models.FlowPair;
+import org.xzk.network_slicing.models.ResourceUsage;
+import org.xzk.network_slicing.models.TenantQuota;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.onosproject.net.NetTestTools.did;
+
+public class TenantQuotaManagerTest {
+
+    private static final NetworkId NETWORK = NetworkId.networkId(1);
+    private static final DeviceId DEVICE_1 = did("1");
+    private static final DeviceId DEVICE_2 = did("2");
+    private static final FlowPair FLOW_1 = new FlowPair(IpAddress.valueOf("10.0.0.1"), IpAddress.valueOf("10.0.0.2"));
+    private static final FlowPair FLOW_2 = new FlowPair(IpAddress.valueOf("10.0.0.2"), IpAddress.valueOf("10.0.0.1"));
+
+    private TenantQuotaManager quotaManager;
+
+    @Before
+    public void setUp() {
+        quotaManager = new TenantQuotaManager();
+    }
+
+    @Test
+    public void admitsAnyFlowWithoutQuota() {
+        assertTrue(quotaManager.tryAdmit(NETWORK, FLOW_1, demand(DEVICE_1, 100, 100, 100)));
+        assertEquals(1, quotaManager.getAdmitted(NETWORK));
+    }
+
+    @Test
+    public void rejectsFlowOverQuota() {
+        quotaManager.setQuota(NETWORK, new TenantQuota(0, 0, 1));
+        assertTrue(quotaManager.tryAdmit(NETWORK, FLOW_1, demand(DEVICE_1, 0, 1, 1)));
+        assertFalse(quotaManager.tryAdmit(NETWORK, FLOW_2, demand(DEVICE_1, 0, 1, 1)));
+        assertEquals(1, quotaManager.getAdmitted(NETWORK));
+        assertEquals(1, quotaManager.getRejected(NETWORK));
+
+        // Other devices have room of their own
+        assertTrue(quotaManager.tryAdmit(NETWORK, FLOW_2, demand(DEVICE_2, 0, 1, 1)));
+    }
+
+    @Test
+    public void releaseReturnsCharge() {
+        quotaManager.setQuota(NETWORK, new TenantQuota(0, 0, 1));
+        quotaManager.tryAdmit(NETWORK, FLOW_1, demand(DEVICE_1, 1, 1, 1));
+        quotaManager.release(NETWORK, FLOW_1);
+        assertTrue(quotaManager.getUsage(NETWORK).isEmpty());
+
+        // Released twice, the charge is only returned once
+        quotaManager.release(NETWORK, FLOW_1);
+        assertTrue(quotaManager.tryAdmit(NETWORK, FLOW_2, demand(DEVICE_1, 0, 1, 1)));
+    }
+
+    @Test
+    public void readmissionReplacesCurrentCharge() {
+        quotaManager.setQuota(NETWORK, new TenantQuota(0, 0, 1));
+        assertTrue(quotaManager.tryAdmit(NETWORK, FLOW_1, demand(DEVICE_1, 0, 1, 1)));
+
+        // The flow set up again on a full device only counts once
+        assertTrue(quotaManager.tryAdmit(NETWORK, FLOW_1, demand(DEVICE_1, 0, 1, 1)));
+        assertEquals(1, quotaManager.getUsage(NETWORK).get(DEVICE_1).getFlows());
+
+        // Rerouted, the charge moves along with the flow
+        assertTrue(quotaManager.tryAdmit(NETWORK, FLOW_1, demand(DEVICE_2, 0, 1, 1)));
+        assertFalse(quotaManager.getUsage(NETWORK).containsKey(DEVICE_1));
+        assertTrue(quotaManager.tryAdmit(NETWORK, FLOW_2, demand(DEVICE_1, 0, 1, 1)));
+    }
+
+    @Test
+    public void sumsUsagePerDevice() {
+        Map<DeviceId, ResourceUsage> demand = new HashMap<>();
+        demand.put(DEVICE_1, new ResourceUsage(0, 1, 1));
+        demand.put(DEVICE_2, new ResourceUsage(1, 1, 1));
+        quotaManager.tryAdmit(NETWORK, FLOW_1, demand);
+        quotaManager.tryAdmit(NETWORK, FLOW_2, demand(DEVICE_2, 1, 1, 1));
+
+        Map<DeviceId, ResourceUsage> usage = quotaManager.getUsage(NETWORK);
+        assertEquals(1, usage.get(DEVICE_1).getRules());
+        assertEquals(2, usage.get(DEVICE_2).getLabels());
+        assertEquals(2, usage.get(DEVICE_2).getFlows());
+    }
+
+    private static Map<DeviceId, ResourceUsage> demand(DeviceId deviceId, int labels, int rules, int flows) {
+        return Collections.singletonMap(deviceId, new ResourceUsage(labels, rules, flows));
+    }
+}
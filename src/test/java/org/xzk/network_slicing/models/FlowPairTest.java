@@ -0,0 +1,54 @@
+package org.xzk.network_slicing.models;
+
+import org.junit.Test;
+import org.onlab.packet.IpAddress;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FlowPairTest {
+
+    private static final IpAddress HOST_1 = IpAddress.valueOf("10.0.0.1");
+    private static final IpAddress HOST_2 = IpAddress.valueOf("10.0.0.2");
+    private static final IpAddress HOST_6 = IpAddress.valueOf("2001:db8::1");
+
+    @Test
+    public void packsIp4Pairs() {
+        FlowPair flowPair = new FlowPair(HOST_1, HOST_2);
+        assertTrue(flowPair.isPacked());
+        assertEquals(0x0A0000010A000002L, flowPair.getKey());
+        assertEquals(FlowPair.pack(0x0A000001, 0x0A000002), flowPair.getKey());
+    }
+
+    @Test
+    public void keepsHighDestinationBits() {
+        // A negative destination must not sign extend over the source
+        assertEquals(0x00000001FFFFFFFEL, FlowPair.pack(1, 0xFFFFFFFE));
+    }
+
+    @Test
+    public void equalPairsShareHash() {
+        FlowPair flowPair = new FlowPair(HOST_1, HOST_2);
+        FlowPair same = new FlowPair(IpAddress.valueOf("10.0.0.1"), IpAddress.valueOf("10.0.0.2"));
+        assertEquals(flowPair, same);
+        assertEquals(flowPair.hashCode(), same.hashCode());
+    }
+
+    @Test
+    public void isDirected() {
+        FlowPair flowPair = new FlowPair(HOST_1, HOST_2);
+        FlowPair reverse = new FlowPair(HOST_2, HOST_1);
+        assertNotEquals(flowPair, reverse);
+    }
+
+    @Test
+    public void comparesIp6PairsByAddress() {
+        FlowPair flowPair = new FlowPair(HOST_6, HOST_1);
+        assertFalse(flowPair.isPacked());
+        assertEquals(flowPair, new FlowPair(IpAddress.valueOf("2001:db8::1"), HOST_1));
+        assertNotEquals(flowPair, new FlowPair(HOST_1, HOST_6));
+        assertNotEquals(flowPair, new FlowPair(HOST_2, HOST_1));
+    }
+}
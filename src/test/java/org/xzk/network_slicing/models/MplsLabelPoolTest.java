@@ -0,0 +1,128 @@
+package org.xzk.network_slicing.models;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.onosproject.incubator.net.virtual.NetworkId;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MplsLabelPoolTest {
+
+    // Labels per chunk of the bitmap
+    private static final int CHUNK_LABELS = 4096;
+
+    private MplsLabelPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new MplsLabelPool();
+    }
+
+    @Test
+    public void allocatesLowestFreeLabel() {
+        assertEquals(MplsLabelPool.MIN_LABEL, pool.getNextLabel());
+        assertEquals(MplsLabelPool.MIN_LABEL + 1, pool.getNextLabel());
+        assertEquals(2, pool.getAllocatedCount());
+    }
+
+    @Test
+    public void allocatesAcrossChunkBoundary() {
+        Set<Integer> labels = new HashSet<>();
+        for (int i = 0; i < CHUNK_LABELS + 10; i++) {
+            assertEquals(MplsLabelPool.MIN_LABEL + i, pool.getNextLabel());
+            labels.add(MplsLabelPool.MIN_LABEL + i);
+        }
+        assertEquals(CHUNK_LABELS + 10, labels.size());
+        assertEquals(CHUNK_LABELS + 10, pool.getAllocatedCount());
+    }
+
+    @Test
+    public void reusesReturnedLabelsLowestFirst() {
+        for (int i = 0; i < CHUNK_LABELS + 100; i++) pool.getNextLabel();
+
+        int inSecondChunk = MplsLabelPool.MIN_LABEL + CHUNK_LABELS + 50;
+        int inFirstChunk = MplsLabelPool.MIN_LABEL + 7;
+        assertTrue(pool.returnLabel(inSecondChunk));
+        assertTrue(pool.returnLabel(inFirstChunk));
+
+        assertEquals(inFirstChunk, pool.getNextLabel());
+        assertEquals(inSecondChunk, pool.getNextLabel());
+        assertEquals(MplsLabelPool.MIN_LABEL + CHUNK_LABELS + 100, pool.getNextLabel());
+    }
+
+    @Test
+    public void reusesDroppedChunk() {
+        for (int i = 0; i < CHUNK_LABELS; i++) pool.getNextLabel();
+        int label = pool.getNextLabel();
+
+        // The only label of the second chunk, which is dropped once empty
+        assertTrue(pool.returnLabel(label));
+        assertEquals(CHUNK_LABELS, pool.getAllocatedCount());
+        assertEquals(label, pool.getNextLabel());
+    }
+
+    @Test
+    public void rejectsLabelsNotHandedOut() {
+        int label = pool.getNextLabel();
+        assertTrue(pool.returnLabel(label));
+        assertFalse(pool.returnLabel(label));
+        assertFalse(pool.returnLabel(MplsLabelPool.MIN_LABEL + CHUNK_LABELS * 3));
+        assertFalse(pool.returnLabel(MplsLabelPool.MIN_LABEL - 1));
+        assertEquals(0, pool.getAllocatedCount());
+    }
+
+    @Test
+    public void neverHandsOutStaticLabels() {
+        assertTrue(pool.reserveStaticRange(MplsLabelPool.MIN_LABEL, 99));
+        assertEquals(100, pool.getNextLabel());
+        assertFalse(pool.returnLabel(50));
+        assertFalse(pool.reserveStaticRange(90, 110));
+    }
+
+    @Test
+    public void exhaustsNetworkRange() {
+        NetworkId networkId = NetworkId.networkId(1);
+        assertTrue(pool.reserveNetworkRange(networkId, 200, 203));
+        assertFalse(pool.reserveNetworkRange(networkId, 300, 303));
+
+        for (int label = 200; label <= 203; label++) {
+            assertEquals(label, pool.getNextLabel(networkId));
+        }
+        try {
+            pool.getNextLabel(networkId);
+            fail("Network range should be exhausted");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+
+        // Other networks share the rest of the label space
+        assertEquals(MplsLabelPool.MIN_LABEL, pool.getNextLabel(NetworkId.networkId(2)));
+        assertTrue(pool.returnLabel(201));
+        assertEquals(201, pool.getNextLabel(networkId));
+    }
+
+    @Test
+    public void exhaustsSharedLabels() {
+        int last = -1;
+        for (int i = MplsLabelPool.MIN_LABEL; i <= MplsLabelPool.MAX_LABEL; i++) {
+            last = pool.getNextLabel();
+        }
+        assertEquals(MplsLabelPool.MAX_LABEL, last);
+
+        try {
+            pool.getNextLabel();
+            fail("Label space should be exhausted");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+
+        assertTrue(pool.returnLabel(12345));
+        assertEquals(12345, pool.getNextLabel());
+    }
+}
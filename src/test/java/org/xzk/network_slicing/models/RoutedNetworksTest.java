@@ -0,0 +1,140 @@
+package org.xzk.network_slicing.models;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.IpPrefix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RoutedNetworksTest {
+
+    private static final IpAddress GATEWAY_1 = IpAddress.valueOf("10.0.0.1");
+    private static final IpAddress GATEWAY_2 = IpAddress.valueOf("10.0.1.1");
+    private static final IpAddress GATEWAY_3 = IpAddress.valueOf("10.0.2.1");
+
+    private RoutedNetworks routedNetworks;
+
+    @Before
+    public void setUp() {
+        routedNetworks = new RoutedNetworks();
+    }
+
+    @Test
+    public void matchesLongestPrefix() {
+        routedNetworks.addRoute(prefix("10.0.0.0/8"), GATEWAY_1);
+        routedNetworks.addRoute(prefix("10.0.0.0/16"), GATEWAY_2);
+        routedNetworks.addRoute(prefix("10.0.1.0/24"), GATEWAY_3);
+
+        assertEquals(prefix("10.0.1.0/24"), routedNetworks.getRoutedNetwork(address("10.0.1.9")));
+        assertEquals(prefix("10.0.0.0/16"), routedNetworks.getRoutedNetwork(address("10.0.2.9")));
+        assertEquals(prefix("10.0.0.0/8"), routedNetworks.getRoutedNetwork(address("10.1.0.9")));
+        assertNull(routedNetworks.getRoutedNetwork(address("11.0.0.1")));
+    }
+
+    @Test
+    public void splitsOnDivergingPrefixes() {
+        // Neither holds the other, both hang off a branching node at 10.0.0.0/22
+        routedNetworks.addRoute(prefix("10.0.1.0/24"), GATEWAY_2);
+        routedNetworks.addRoute(prefix("10.0.2.0/24"), GATEWAY_3);
+
+        assertEquals(prefix("10.0.1.0/24"), routedNetworks.getRoutedNetwork(address("10.0.1.5")));
+        assertEquals(prefix("10.0.2.0/24"), routedNetworks.getRoutedNetwork(address("10.0.2.5")));
+        assertNull(routedNetworks.getRoutedNetwork(address("10.0.0.5")));
+        assertNull(routedNetworks.getRoutedNetwork(address("10.0.3.5")));
+
+        // Lands on the branching node
+        routedNetworks.addRoute(prefix("10.0.0.0/22"), GATEWAY_1);
+        assertEquals(prefix("10.0.0.0/22"), routedNetworks.getRoutedNetwork(address("10.0.3.5")));
+        assertEquals(prefix("10.0.2.0/24"), routedNetworks.getRoutedNetwork(address("10.0.2.5")));
+    }
+
+    @Test
+    public void insertsBetweenNodeAndChild() {
+        routedNetworks.addRoute(prefix("10.0.1.0/24"), GATEWAY_2);
+        routedNetworks.addRoute(prefix("10.0.0.0/16"), GATEWAY_1);
+
+        assertEquals(prefix("10.0.1.0/24"), routedNetworks.getRoutedNetwork(address("10.0.1.5")));
+        assertEquals(prefix("10.0.0.0/16"), routedNetworks.getRoutedNetwork(address("10.0.7.5")));
+    }
+
+    @Test
+    public void replacesGateway() {
+        routedNetworks.addRoute(prefix("10.0.0.0/24"), GATEWAY_1);
+        routedNetworks.addRoute(prefix("10.0.0.0/24"), GATEWAY_2);
+
+        assertEquals(GATEWAY_2, routedNetworks.getGateway(prefix("10.0.0.0/24")));
+        assertFalse(routedNetworks.isGateway(GATEWAY_1));
+        assertTrue(routedNetworks.isGateway(GATEWAY_2));
+    }
+
+    @Test
+    public void removesAndCollapses() {
+        routedNetworks.addRoute(prefix("10.0.1.0/24"), GATEWAY_2);
+        routedNetworks.addRoute(prefix("10.0.2.0/24"), GATEWAY_3);
+        routedNetworks.addRoute(prefix("10.0.2.128/25"), GATEWAY_3);
+
+        assertFalse(routedNetworks.removeRoute(prefix("10.0.0.0/22")));
+        assertFalse(routedNetworks.removeRoute(prefix("10.0.3.0/24")));
+
+        // The branching node above both /24 goes away with one of them
+        assertTrue(routedNetworks.removeRoute(prefix("10.0.1.0/24")));
+        assertNull(routedNetworks.getRoutedNetwork(address("10.0.1.5")));
+        assertEquals(prefix("10.0.2.0/24"), routedNetworks.getRoutedNetwork(address("10.0.2.5")));
+        assertEquals(prefix("10.0.2.128/25"), routedNetworks.getRoutedNetwork(address("10.0.2.200")));
+        assertFalse(routedNetworks.isGateway(GATEWAY_2));
+
+        // A routed node with a child stays as a plain branching node
+        assertTrue(routedNetworks.removeRoute(prefix("10.0.2.0/24")));
+        assertNull(routedNetworks.getRoutedNetwork(address("10.0.2.5")));
+        assertEquals(prefix("10.0.2.128/25"), routedNetworks.getRoutedNetwork(address("10.0.2.200")));
+        assertTrue(routedNetworks.isGateway(GATEWAY_3));
+
+        assertTrue(routedNetworks.removeRoute(prefix("10.0.2.128/25")));
+        assertFalse(routedNetworks.removeRoute(prefix("10.0.2.128/25")));
+        assertTrue(routedNetworks.isEmpty());
+        assertTrue(routedNetworks.getRoutes().isEmpty());
+
+        // Still usable once emptied
+        routedNetworks.addRoute(prefix("10.0.2.0/24"), GATEWAY_3);
+        assertEquals(prefix("10.0.2.0/24"), routedNetworks.getRoutedNetwork(address("10.0.2.200")));
+    }
+
+    @Test
+    public void listsRoutesInAddressOrder() {
+        routedNetworks.addRoute(prefix("10.0.2.0/24"), GATEWAY_3);
+        routedNetworks.addRoute(prefix("10.0.0.0/16"), GATEWAY_1);
+        routedNetworks.addRoute(prefix("10.0.1.0/24"), GATEWAY_2);
+        routedNetworks.addRoute(prefix("2001:db8::/32"), IpAddress.valueOf("2001:db8::1"));
+
+        Map<IpPrefix, IpAddress> routes = routedNetworks.getRoutes();
+        assertEquals(Arrays.asList(prefix("10.0.0.0/16"), prefix("10.0.1.0/24"), prefix("10.0.2.0/24"),
+                prefix("2001:db8::/32")), new ArrayList<>(routes.keySet()));
+        assertEquals(GATEWAY_2, routes.get(prefix("10.0.1.0/24")));
+    }
+
+    @Test
+    public void keepsIpVersionsApart() {
+        routedNetworks.addRoute(prefix("0.0.0.0/1"), GATEWAY_1);
+        routedNetworks.addRoute(prefix("2001:db8::/32"), IpAddress.valueOf("2001:db8::1"));
+
+        assertEquals(prefix("2001:db8::/32"), routedNetworks.getRoutedNetwork(address("2001:db8::5")));
+        assertNull(routedNetworks.getRoutedNetwork(address("::1")));
+        assertEquals(prefix("0.0.0.0/1"), routedNetworks.getRoutedNetwork(address("10.0.0.5")));
+    }
+
+    private static IpPrefix prefix(String prefix) {
+        return IpPrefix.valueOf(prefix);
+    }
+
+    private static IpAddress address(String address) {
+        return IpAddress.valueOf(address);
+    }
+}
@@ -0,0 +1,39 @@
+package org.xzk.network_slicing.models;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketTest {
+
+    @Test
+    public void startsWithFullBurst() {
+        TokenBucket bucket = new TokenBucket(0, 3);
+        assertTrue(bucket.tryConsume());
+        assertTrue(bucket.tryConsume());
+        assertTrue(bucket.tryConsume());
+        assertFalse(bucket.tryConsume());
+    }
+
+    @Test
+    public void refillsOverTime() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000, 1);
+        assertTrue(bucket.tryConsume());
+
+        // One token per millisecond
+        Thread.sleep(20);
+        assertTrue(bucket.tryConsume());
+    }
+
+    @Test
+    public void refillsUpToBurstOnly() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000, 2);
+
+        // Long enough for 50 tokens
+        Thread.sleep(50);
+        assertTrue(bucket.tryConsume());
+        assertTrue(bucket.tryConsume());
+        assertFalse(bucket.tryConsume());
+    }
+}